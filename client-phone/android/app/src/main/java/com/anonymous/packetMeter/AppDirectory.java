@@ -0,0 +1,65 @@
+package com.anonymous.packetMeter;
+
+import android.util.Log;
+
+import com.anonymous.packetMeter.core.PackageDirectory;
+
+/**
+ * {@link PackageDirectory} over the process-wide {@link PackageIndex} and {@link IconCache}.
+ */
+final class AppDirectory implements PackageDirectory<PackageIndex.Entry> {
+    private static final String TAG = "NetworkUsage";
+
+    private final PackageIndex packageIndex;
+    private final IconCache iconCache;
+
+    AppDirectory(PackageIndex packageIndex, IconCache iconCache) {
+        this.packageIndex = packageIndex;
+        this.iconCache = iconCache;
+    }
+
+    @Override
+    public PackageIndex.Entry listedPackage(int uid, boolean detailed) {
+        for (PackageIndex.Entry entry : packageIndex.packagesForUid(uid)) {
+            // The uid is reported under its first listed package; system packages without a
+            // launcher entry are listed only in detailed mode, so their traffic is left out
+            // of the default list
+            if (entry.isListed(detailed)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String packageName(PackageIndex.Entry entry) {
+        return entry.packageName;
+    }
+
+    // A package removed mid-scan keeps its row under its package name
+    @Override
+    public String label(PackageIndex.Entry entry) {
+        try {
+            return packageIndex.getLabel(entry);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Error loading label for " + entry.packageName + ": " + e.getMessage());
+            return entry.packageName;
+        }
+    }
+
+    // The icon itself is fetched separately via getAppIcons
+    @Override
+    public String iconHash(PackageIndex.Entry entry) {
+        try {
+            return iconCache.getIconHash(entry.packageName);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Error loading icon for " + entry.packageName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public int uid(PackageIndex.Entry entry) {
+        return entry.uid;
+    }
+}
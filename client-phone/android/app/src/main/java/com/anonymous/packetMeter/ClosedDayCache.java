@@ -0,0 +1,187 @@
+package com.anonymous.packetMeter;
+
+import android.app.usage.NetworkStatsManager;
+import android.content.Context;
+import android.util.Log;
+
+import com.anonymous.packetMeter.core.QueryToken;
+import com.anonymous.packetMeter.core.UidUsageTable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-day, per-uid usage for days that can no longer change.
+ *
+ * A range is split at local midnights: completed days are read from memory or
+ * {@code filesDir/usage-days}, and only the partial head and the still-open tail are
+ * queried from {@link NetworkStatsManager}. Days are keyed by their start instant, so a
+ * timezone change simply produces new keys.
+ */
+final class ClosedDayCache {
+    private static final String TAG = "NetworkUsage";
+    private static final String DAY_DIR = "usage-days";
+    private static final int FILE_VERSION = 1;
+    private static final int MEMORY_DAYS = 40;
+    private static final long RETENTION_MS = TimeUnit.DAYS.toMillis(62);
+
+    // NetworkStats persists buckets of up to two hours; give the last one time to land.
+    private static final long SETTLE_MS = TimeUnit.HOURS.toMillis(3);
+
+    private static ClosedDayCache instance;
+
+    private final File dayDir;
+    private final Map<Long, UidUsageTable> memory =
+            new LinkedHashMap<Long, UidUsageTable>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, UidUsageTable> eldest) {
+                    return size() > MEMORY_DAYS;
+                }
+            };
+
+    static synchronized ClosedDayCache get(Context context) {
+        if (instance == null) {
+            instance = new ClosedDayCache(new File(context.getFilesDir(), DAY_DIR));
+        }
+        return instance;
+    }
+
+    private ClosedDayCache(File dayDir) {
+        this.dayDir = dayDir;
+    }
+
+    /**
+     * Aggregate per-uid usage for [startTime, endTime), reusing cached closed days.
+     */
+    UidUsageTable aggregate(NetworkStatsManager nsm, long startTime, long endTime, QueryToken token)
+            throws IOException {
+        long closedBefore = System.currentTimeMillis() - SETTLE_MS;
+        UidUsageTable result = new UidUsageTable();
+
+        long cursor = startTime;
+        while (cursor < endTime) {
+            token.throwIfCancelled();
+            long dayStart = startOfDay(cursor);
+            long dayEnd = nextDay(dayStart);
+            long pieceEnd = Math.min(dayEnd, endTime);
+
+            if (cursor == dayStart && pieceEnd == dayEnd && dayEnd <= closedBefore) {
+                result.addAll(getClosedDay(nsm, dayStart, dayEnd, token));
+            } else {
+                result.addAll(UsageAggregator.aggregate(nsm, cursor, pieceEnd, token));
+            }
+            cursor = pieceEnd;
+        }
+        return result;
+    }
+
+    private UidUsageTable getClosedDay(NetworkStatsManager nsm, long dayStart, long dayEnd,
+            QueryToken token) throws IOException {
+        synchronized (memory) {
+            UidUsageTable cached = memory.get(dayStart);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        UidUsageTable day = readDay(dayStart);
+        if (day == null) {
+            day = UsageAggregator.aggregate(nsm, dayStart, dayEnd, token);
+            writeDay(dayStart, day);
+        }
+        synchronized (memory) {
+            memory.put(dayStart, day);
+        }
+        return day;
+    }
+
+    private File dayFile(long dayStart) {
+        return new File(dayDir, dayStart + ".bin");
+    }
+
+    private UidUsageTable readDay(long dayStart) {
+        File file = dayFile(dayStart);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION) {
+                return null;
+            }
+            return UidUsageTable.readFrom(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable day cache " + file.getName() + ": " + e.getMessage());
+            file.delete();
+            return null;
+        }
+    }
+
+    private synchronized void writeDay(long dayStart, UidUsageTable day) {
+        if (!dayDir.exists() && !dayDir.mkdirs()) {
+            Log.w(TAG, "Could not create day cache dir " + dayDir);
+            return;
+        }
+        File file = dayFile(dayStart);
+        File tmp = new File(dayDir, dayStart + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(FILE_VERSION);
+            day.writeTo(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Error writing day cache " + file.getName() + ": " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+        pruneExpired();
+    }
+
+    private void pruneExpired() {
+        File[] files = dayDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - RETENTION_MS;
+        for (File file : files) {
+            String name = file.getName();
+            int dot = name.indexOf('.');
+            try {
+                if (dot > 0 && Long.parseLong(name.substring(0, dot)) < cutoff) {
+                    file.delete();
+                }
+            } catch (NumberFormatException e) {
+                file.delete();
+            }
+        }
+    }
+
+    private static long startOfDay(long time) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
+
+    private static long nextDay(long dayStart) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(dayStart);
+        cal.add(Calendar.DAY_OF_MONTH, 1);
+        return cal.getTimeInMillis();
+    }
+}
@@ -0,0 +1,59 @@
+package com.anonymous.packetMeter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Server settings for the native background collector, mirrored from the JS reporter
+ * store through {@code NetworkUsage.configureCollector}.
+ */
+final class CollectorConfig {
+    private static final String PREFS = "packetmeter.collector";
+
+    static final String KEY_SERVER_HOST = "serverHost";
+    static final String KEY_SERVER_PORT = "serverPort";
+    static final String KEY_USE_TLS = "useTls";
+    static final String KEY_DEVICE_TOKEN = "deviceToken";
+    static final String KEY_DETAILED_REPORTS = "detailedReports";
+    // Overrides host/port/TLS when set, e.g. to point the collector at a local mock server
+    static final String KEY_BASE_URL = "baseUrl";
+
+    private final SharedPreferences prefs;
+
+    CollectorConfig(Context context) {
+        this.prefs = context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    String getDeviceToken() {
+        return prefs.getString(KEY_DEVICE_TOKEN, null);
+    }
+
+    boolean isDetailedReports() {
+        return prefs.getBoolean(KEY_DETAILED_REPORTS, false);
+    }
+
+    /**
+     * Returns the absolute URL for an API path, e.g. {@code /api/v1/traffic/total-usage}.
+     */
+    String buildServerUrl(String path) {
+        String baseUrl = prefs.getString(KEY_BASE_URL, null);
+        if (baseUrl != null && !baseUrl.isEmpty()) {
+            return baseUrl + path;
+        }
+        String protocol = prefs.getBoolean(KEY_USE_TLS, false) ? "https" : "http";
+        return protocol + "://" + prefs.getString(KEY_SERVER_HOST, "localhost") + ":"
+                + prefs.getInt(KEY_SERVER_PORT, 8080) + path;
+    }
+
+    void update(String serverHost, int serverPort, boolean useTls, String deviceToken,
+            boolean detailedReports, String baseUrl) {
+        prefs.edit()
+                .putString(KEY_SERVER_HOST, serverHost)
+                .putInt(KEY_SERVER_PORT, serverPort)
+                .putBoolean(KEY_USE_TLS, useTls)
+                .putString(KEY_DEVICE_TOKEN, deviceToken)
+                .putBoolean(KEY_DETAILED_REPORTS, detailedReports)
+                .putString(KEY_BASE_URL, baseUrl)
+                .apply();
+    }
+}
@@ -0,0 +1,154 @@
+package com.anonymous.packetMeter;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.anonymous.packetMeter.core.LatencyHistogram;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide counters and latency histograms for the collector's hot path, so a slow
+ * refresh on a real device can be attributed to a phase. Recording costs two
+ * {@link System#nanoTime()} reads and a few atomic increments.
+ */
+final class CollectorMetrics {
+    private static final String TAG = "NetworkUsage";
+
+    enum Phase {
+        /** One NetworkStats binder call, including the scan of its buckets. */
+        QUERY("query"),
+        /** Package lookup and label resolution for one uid. */
+        METADATA("metadata"),
+        /** Icon hash lookup or icon encoding for one package. */
+        ICONS("icons"),
+        /** Encoding one result into JSON or bridge maps. */
+        SERIALIZATION("serialization"),
+        /** One usage request on the query executor, end to end. */
+        REQUEST("request");
+
+        final String key;
+
+        Phase(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final CollectorMetrics INSTANCE = new CollectorMetrics();
+
+    private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+    final AtomicLong binderCalls = new AtomicLong();
+    final AtomicLong bucketsScanned = new AtomicLong();
+    final AtomicLong rowsReturned = new AtomicLong();
+    // UTF-16 length of JSON payloads; bridge maps and packed columns add an estimate of the
+    // same (see UsagePayloads)
+    final AtomicLong payloadChars = new AtomicLong();
+    final AtomicLong requestsCoalesced = new AtomicLong();
+    final AtomicLong requestsFailed = new AtomicLong();
+    private volatile long sinceMs = System.currentTimeMillis();
+
+    private Handler logHandler;
+    private Runnable logTask;
+
+    static CollectorMetrics get() {
+        return INSTANCE;
+    }
+
+    private CollectorMetrics() {
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+    static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the time since startNanos (from {@link #start()}) under phase, in microseconds.
+     */
+    void record(Phase phase, long startNanos) {
+        phases[phase.ordinal()].record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    void recordQuery(long startNanos, long buckets) {
+        record(Phase.QUERY, startNanos);
+        binderCalls.incrementAndGet();
+        bucketsScanned.addAndGet(buckets);
+    }
+
+    void recordSerialization(long startNanos, int rows, int chars) {
+        record(Phase.SERIALIZATION, startNanos);
+        rowsReturned.addAndGet(rows);
+        payloadChars.addAndGet(chars);
+    }
+
+    LatencyHistogram histogram(Phase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    long sinceMs() {
+        return sinceMs;
+    }
+
+    void reset() {
+        for (LatencyHistogram histogram : phases) {
+            histogram.reset();
+        }
+        binderCalls.set(0);
+        bucketsScanned.set(0);
+        rowsReturned.set(0);
+        payloadChars.set(0);
+        requestsCoalesced.set(0);
+        requestsFailed.set(0);
+        sinceMs = System.currentTimeMillis();
+    }
+
+    /**
+     * Log {@link #summary()} every intervalMs, or stop logging when intervalMs is 0.
+     */
+    synchronized void setLogInterval(long intervalMs) {
+        if (logHandler != null) {
+            logHandler.removeCallbacks(logTask);
+            logHandler = null;
+            logTask = null;
+        }
+        if (intervalMs <= 0) {
+            return;
+        }
+        Handler handler = new Handler(Looper.getMainLooper());
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                Log.i(TAG, summary());
+                handler.postDelayed(this, intervalMs);
+            }
+        };
+        logHandler = handler;
+        logTask = task;
+        handler.postDelayed(task, intervalMs);
+    }
+
+    /**
+     * One-line profile: counters, then count/p50/p99/max in milliseconds per phase.
+     */
+    String summary() {
+        StringBuilder out = new StringBuilder("Collector metrics: binderCalls=")
+                .append(binderCalls.get())
+                .append(" buckets=").append(bucketsScanned.get())
+                .append(" rows=").append(rowsReturned.get())
+                .append(" payloadChars=").append(payloadChars.get())
+                .append(" coalesced=").append(requestsCoalesced.get())
+                .append(" failed=").append(requestsFailed.get());
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = histogram(phase);
+            out.append(String.format(Locale.US, " %s[n=%d p50=%.2f p99=%.2f max=%.2f]",
+                    phase.key, histogram.count(), histogram.percentile(50) / 1000.0,
+                    histogram.percentile(99) / 1000.0, histogram.max() / 1000.0));
+        }
+        return out.toString();
+    }
+}
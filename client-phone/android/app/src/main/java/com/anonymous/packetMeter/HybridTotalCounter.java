@@ -0,0 +1,137 @@
+package com.anonymous.packetMeter;
+
+import android.app.usage.NetworkStatsManager;
+import android.net.TrafficStats;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.anonymous.packetMeter.core.UsagePeriods;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Device totals for windows with a fixed start (the current hour or day), kept current
+ * between NetworkStats queries with TrafficStats counters.
+ *
+ * A window is anchored with one NetworkStats query plus a TrafficStats snapshot; later
+ * reads add the TrafficStats delta since the anchor, which costs a few syscalls. Wi-Fi is
+ * taken as all non-mobile traffic. The anchor is rebuilt when the window rolls over, when
+ * it is older than {@link #MAX_ANCHOR_AGE_MS}, or when counters went backwards (reboot or
+ * interface reset).
+ */
+final class HybridTotalCounter {
+    private static final String TAG = "NetworkUsage";
+    private static final long MAX_ANCHOR_AGE_MS = TimeUnit.HOURS.toMillis(2);
+
+    private static HybridTotalCounter instance;
+
+    private final Map<String, Anchor> anchors = new HashMap<>();
+
+    private static final class Anchor {
+        final long windowStart;
+        final long elapsedAt;
+        // [wifiRx, wifiTx, mobileRx, mobileTx] from NetworkStats at the anchor
+        final long[] totals;
+        final long trafficRx;
+        final long trafficTx;
+        final long trafficMobileRx;
+        final long trafficMobileTx;
+
+        Anchor(long windowStart, long elapsedAt, long[] totals, long[] counters) {
+            this.windowStart = windowStart;
+            this.elapsedAt = elapsedAt;
+            this.totals = totals;
+            this.trafficRx = counters[0];
+            this.trafficTx = counters[1];
+            this.trafficMobileRx = counters[2];
+            this.trafficMobileTx = counters[3];
+        }
+    }
+
+    static synchronized HybridTotalCounter get() {
+        if (instance == null) {
+            instance = new HybridTotalCounter();
+        }
+        return instance;
+    }
+
+    private HybridTotalCounter() {
+    }
+
+    /**
+     * Totals for the period/count window as [wifiRx, wifiTx, mobileRx, mobileTx]. Rolling
+     * windows (week, month) lose data at their start and are always queried directly.
+     */
+    synchronized long[] totals(NetworkStatsManager nsm, String period, int count) throws IOException {
+        long[] range = UsagePeriods.range(period, count);
+        if (!period.equals("hour") && !period.equals("day")) {
+            return UsageAggregator.deviceTotals(nsm, range[0], range[1]);
+        }
+
+        long[] counters = readCounters();
+        if (counters == null) {
+            return UsageAggregator.deviceTotals(nsm, range[0], range[1]);
+        }
+        long now = SystemClock.elapsedRealtime();
+        String key = period + ":" + count;
+        Anchor anchor = anchors.get(key);
+
+        if (anchor == null || !isValid(anchor, range[0], now, counters)) {
+            anchor = new Anchor(range[0], now, UsageAggregator.deviceTotals(nsm, range[0], range[1]),
+                    counters);
+            anchors.put(key, anchor);
+            return anchor.totals.clone();
+        }
+
+        long mobileRx = counters[2] - anchor.trafficMobileRx;
+        long mobileTx = counters[3] - anchor.trafficMobileTx;
+        long otherRx = Math.max(0, counters[0] - anchor.trafficRx - mobileRx);
+        long otherTx = Math.max(0, counters[1] - anchor.trafficTx - mobileTx);
+        return new long[] {
+                anchor.totals[0] + otherRx,
+                anchor.totals[1] + otherTx,
+                anchor.totals[2] + mobileRx,
+                anchor.totals[3] + mobileTx,
+        };
+    }
+
+    private static boolean isValid(Anchor anchor, long windowStart, long now, long[] counters) {
+        if (anchor.windowStart != windowStart) {
+            return false;
+        }
+        if (now < anchor.elapsedAt || now - anchor.elapsedAt > MAX_ANCHOR_AGE_MS) {
+            return false;
+        }
+        if (counters[0] < anchor.trafficRx || counters[1] < anchor.trafficTx
+                || counters[2] < anchor.trafficMobileRx || counters[3] < anchor.trafficMobileTx) {
+            Log.i(TAG, "Traffic counters went backwards, re-anchoring totals");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Current [totalRx, totalTx, mobileRx, mobileTx] counters, or null if the device does
+     * not expose them.
+     */
+    private static long[] readCounters() {
+        long[] counters = {
+                TrafficStats.getTotalRxBytes(),
+                TrafficStats.getTotalTxBytes(),
+                TrafficStats.getMobileRxBytes(),
+                TrafficStats.getMobileTxBytes(),
+        };
+        if (counters[0] == TrafficStats.UNSUPPORTED || counters[1] == TrafficStats.UNSUPPORTED) {
+            return null;
+        }
+        // No mobile interface counts as zero mobile traffic
+        if (counters[2] == TrafficStats.UNSUPPORTED || counters[3] == TrafficStats.UNSUPPORTED) {
+            counters[2] = 0;
+            counters[3] = 0;
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,358 @@
+package com.anonymous.packetMeter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.Base64;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Two-tier cache of encoded app icons.
+ *
+ * Icons are rasterized and PNG-encoded once per (package, versionCode, lastUpdateTime)
+ * as recorded by {@link PackageIndex}, and addressed by the SHA-256 of the encoded bytes.
+ * The hash stays on the device; reports to the server carry the icon itself as a data URI
+ * in {@code IconHash} (see {@link #getIconDataUri}). Encoded bytes live in an in-memory LRU
+ * and under {@code cacheDir/app-icons/<hash>.png}.
+ *
+ * Only each package's current version stays indexed: older entries are dropped when a new
+ * version is encoded or the package is replaced or removed, and once per process for
+ * packages that changed while it was not running. PNGs no index entry refers to are deleted.
+ */
+final class IconCache {
+    private static final String TAG = "NetworkUsage";
+    private static final String INDEX_PREFS = "packetmeter.icon-index";
+    private static final String ICON_DIR = "app-icons";
+    private static final int ICON_SIZE = 64; // 64x64 pixels
+    private static final int MEMORY_BYTES = 512 * 1024;
+
+    private static IconCache instance;
+
+    private final PackageManager packageManager;
+    private final PackageIndex packageIndex;
+    private final SharedPreferences index;
+    private final File iconDir;
+    private final LruCache<String, byte[]> memory;
+    private boolean swept;
+
+    static synchronized IconCache get(Context context) {
+        if (instance == null) {
+            instance = new IconCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private IconCache(Context context) {
+        this.packageManager = context.getPackageManager();
+        this.packageIndex = PackageIndex.get(context);
+        this.index = context.getSharedPreferences(INDEX_PREFS, Context.MODE_PRIVATE);
+        this.iconDir = new File(context.getCacheDir(), ICON_DIR);
+        this.memory = new LruCache<String, byte[]>(MEMORY_BYTES) {
+            @Override
+            protected int sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
+        packageIndex.setListener(this::forget);
+    }
+
+    /**
+     * Returns the content hash of the package's current icon, encoding it only if this
+     * version of the package has never been seen. Returns null if the icon cannot be loaded.
+     */
+    String getIconHash(String packageName) {
+        long started = CollectorMetrics.start();
+        try {
+            return lookUpIconHash(packageName);
+        } finally {
+            CollectorMetrics.get().record(CollectorMetrics.Phase.ICONS, started);
+        }
+    }
+
+    private synchronized String lookUpIconHash(String packageName) {
+        PackageIndex.Entry entry = packageIndex.getPackage(packageName);
+        if (entry == null) {
+            return null;
+        }
+        if (!swept) {
+            sweep();
+            swept = true;
+        }
+        String versionKey = versionKey(packageName, entry.versionCode, entry.lastUpdateTime);
+
+        String hash = index.getString(versionKey, null);
+        if (hash != null && (memory.get(hash) != null || iconFile(hash).exists())) {
+            return hash;
+        }
+
+        byte[] png = encodeIcon(packageName);
+        if (png == null) {
+            return null;
+        }
+        hash = sha256(png);
+        memory.put(hash, png);
+        writeIcon(hash, png);
+        SharedPreferences.Editor editor = index.edit();
+        Set<String> dropped = removeEntries(editor, packageName, versionKey);
+        editor.putString(versionKey, hash).apply();
+        deleteUnreferenced(dropped);
+        return hash;
+    }
+
+    /**
+     * Drop every indexed version of a package that was replaced or removed; the next lookup
+     * encodes the current one.
+     */
+    synchronized void forget(String packageName) {
+        SharedPreferences.Editor editor = index.edit();
+        Set<String> dropped = removeEntries(editor, packageName, null);
+        if (!dropped.isEmpty()) {
+            editor.apply();
+            deleteUnreferenced(dropped);
+        }
+    }
+
+    // Drops index entries for versions that are no longer installed, then any icon file
+    // left without an entry (including those of an interrupted write)
+    private void sweep() {
+        SharedPreferences.Editor editor = index.edit();
+        boolean changed = false;
+        for (String key : index.getAll().keySet()) {
+            String packageName = packageOf(key);
+            PackageIndex.Entry entry = packageIndex.getPackage(packageName);
+            String current = entry != null
+                    ? versionKey(packageName, entry.versionCode, entry.lastUpdateTime)
+                    : null;
+            if (!key.equals(current)) {
+                editor.remove(key);
+                changed = true;
+            }
+        }
+        if (changed) {
+            editor.apply();
+        }
+        File[] files = iconDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> referenced = referencedHashes();
+        for (File file : files) {
+            String name = file.getName();
+            String hash = name.endsWith(".png") ? name.substring(0, name.length() - 4) : name;
+            if (!referenced.contains(hash)) {
+                file.delete();
+            }
+        }
+    }
+
+    // Removes the package's entries other than keep and returns the hashes they referred to
+    private Set<String> removeEntries(SharedPreferences.Editor editor, String packageName,
+            String keep) {
+        Set<String> dropped = new HashSet<>();
+        for (Map.Entry<String, ?> entry : index.getAll().entrySet()) {
+            String key = entry.getKey();
+            if (!key.equals(keep) && packageOf(key).equals(packageName)) {
+                editor.remove(key);
+                dropped.add(String.valueOf(entry.getValue()));
+            }
+        }
+        return dropped;
+    }
+
+    // Call after apply(): getAll then no longer holds the removed entries
+    private void deleteUnreferenced(Set<String> hashes) {
+        if (hashes.isEmpty()) {
+            return;
+        }
+        Set<String> referenced = referencedHashes();
+        for (String hash : hashes) {
+            if (!referenced.contains(hash)) {
+                memory.remove(hash);
+                iconFile(hash).delete();
+            }
+        }
+    }
+
+    private Set<String> referencedHashes() {
+        Set<String> referenced = new HashSet<>();
+        for (Object hash : index.getAll().values()) {
+            referenced.add(String.valueOf(hash));
+        }
+        return referenced;
+    }
+
+    /**
+     * Returns the encoded PNG for a hash produced by {@link #getIconHash}, or null if unknown.
+     * Anything but a 64-character hex hash is treated as unknown without touching the disk.
+     */
+    byte[] getIconBytes(String hash) {
+        if (!isIconHash(hash)) {
+            return null;
+        }
+        byte[] png = memory.get(hash);
+        if (png != null) {
+            return png;
+        }
+        png = readIcon(hash);
+        if (png != null) {
+            memory.put(hash, png);
+        }
+        return png;
+    }
+
+    /**
+     * Returns the icon as a data URI, or null if the hash is unknown.
+     */
+    String getIconDataUri(String hash) {
+        long started = CollectorMetrics.start();
+        byte[] png = hash != null ? getIconBytes(hash) : null;
+        if (png == null) {
+            return null;
+        }
+        String dataUri = "data:image/png;base64," + Base64.encodeToString(png, Base64.NO_WRAP);
+        CollectorMetrics.get().record(CollectorMetrics.Phase.ICONS, started);
+        return dataUri;
+    }
+
+    private byte[] encodeIcon(String packageName) {
+        try {
+            Drawable icon = packageManager.getApplicationIcon(packageName);
+            Bitmap bitmap = drawableToBitmap(icon);
+
+            // Resize bitmap to reduce size
+            Bitmap resizedBitmap = Bitmap.createScaledBitmap(bitmap, ICON_SIZE, ICON_SIZE, true);
+
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            resizedBitmap.compress(Bitmap.CompressFormat.PNG, 100, byteArrayOutputStream);
+            return byteArrayOutputStream.toByteArray();
+        } catch (Exception e) {
+            Log.w(TAG, "Error getting icon for " + packageName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Convert Drawable to Bitmap
+     */
+    private static Bitmap drawableToBitmap(Drawable drawable) {
+        if (drawable instanceof BitmapDrawable) {
+            return ((BitmapDrawable) drawable).getBitmap();
+        }
+
+        int width = drawable.getIntrinsicWidth();
+        int height = drawable.getIntrinsicHeight();
+
+        // Ensure minimum size
+        width = Math.max(width, 1);
+        height = Math.max(height, 1);
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
+        drawable.draw(canvas);
+
+        return bitmap;
+    }
+
+    private File iconFile(String hash) {
+        return new File(iconDir, hash + ".png");
+    }
+
+    private void writeIcon(String hash, byte[] png) {
+        File file = iconFile(hash);
+        if (file.exists()) {
+            return;
+        }
+        if (!iconDir.exists() && !iconDir.mkdirs()) {
+            Log.w(TAG, "Could not create icon cache dir " + iconDir);
+            return;
+        }
+        File tmp = new File(iconDir, hash + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(png);
+        } catch (IOException e) {
+            Log.w(TAG, "Error writing icon " + hash + ": " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+    }
+
+    private byte[] readIcon(String hash) {
+        File file = iconFile(hash);
+        if (!file.exists()) {
+            return null;
+        }
+        byte[] png = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < png.length) {
+                int n = in.read(png, read, png.length - read);
+                if (n < 0) {
+                    return null;
+                }
+                read += n;
+            }
+            return png;
+        } catch (IOException e) {
+            Log.w(TAG, "Error reading icon " + hash + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Lowercase hex SHA-256, as produced by sha256()
+    static boolean isIconHash(String value) {
+        if (value == null || value.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String versionKey(String packageName, long versionCode, long lastUpdateTime) {
+        return packageName + ":" + versionCode + ":" + lastUpdateTime;
+    }
+
+    // Package names cannot contain ':'
+    private static String packageOf(String versionKey) {
+        int colon = versionKey.indexOf(':');
+        return colon >= 0 ? versionKey.substring(0, colon) : versionKey;
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+}
@@ -20,6 +20,9 @@ class MainActivity : ReactActivity() {
     // @generated begin expo-splashscreen - expo prebuild (DO NOT MODIFY) sync-f3ff59a738c56c9a6119210cb55f0b613eb8b6af
     SplashScreenManager.registerOnActivity(this)
     // @generated end expo-splashscreen
+    // Warm the usage snapshot on a background thread while React Native starts. Only UI
+    // launches pay for it, not processes started for the background collector.
+    UsageSnapshots.prefetch(this)
     super.onCreate(null)
   }
 
@@ -0,0 +1,102 @@
+package com.anonymous.packetMeter;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.telephony.SubscriptionInfo;
+import android.telephony.SubscriptionManager;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import androidx.core.app.ActivityCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Active SIM subscriptions and the subscriber ids NetworkStats needs to query them one by one.
+ *
+ * Reading subscriber ids needs READ_PRIVILEGED_PHONE_STATE on Android 10+, which only
+ * carrier and system apps hold. When any id is unreadable the list is marked merged and holds
+ * a single entry with a null subscriber id, i.e. all mobile traffic in one figure.
+ */
+final class MobileSubscriptions {
+    private static final String TAG = "NetworkUsage";
+
+    static final class Subscription {
+        final int subscriptionId;
+        final int slotIndex;
+        final String displayName;
+        final String carrierName;
+        // null queries every subscriber
+        final String subscriberId;
+
+        Subscription(int subscriptionId, int slotIndex, String displayName, String carrierName,
+                String subscriberId) {
+            this.subscriptionId = subscriptionId;
+            this.slotIndex = slotIndex;
+            this.displayName = displayName;
+            this.carrierName = carrierName;
+            this.subscriberId = subscriberId;
+        }
+    }
+
+    final List<Subscription> subscriptions;
+    final boolean merged;
+
+    private MobileSubscriptions(List<Subscription> subscriptions, boolean merged) {
+        this.subscriptions = subscriptions;
+        this.merged = merged;
+    }
+
+    /**
+     * Enumerate active subscriptions once, falling back to one merged entry if they cannot
+     * be told apart.
+     */
+    static MobileSubscriptions active(Context context) {
+        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.READ_PHONE_STATE)
+                != PackageManager.PERMISSION_GRANTED) {
+            return merged();
+        }
+        List<SubscriptionInfo> infos;
+        try {
+            infos = SubscriptionManager.from(context).getActiveSubscriptionInfoList();
+        } catch (SecurityException e) {
+            Log.w(TAG, "Cannot list subscriptions: " + e.getMessage());
+            return merged();
+        }
+        if (infos == null || infos.isEmpty()) {
+            return merged();
+        }
+
+        TelephonyManager telephony = (TelephonyManager) context
+                .getSystemService(Context.TELEPHONY_SERVICE);
+        List<Subscription> subscriptions = new ArrayList<>(infos.size());
+        for (SubscriptionInfo info : infos) {
+            String subscriberId;
+            try {
+                subscriberId = telephony.createForSubscriptionId(info.getSubscriptionId())
+                        .getSubscriberId();
+            } catch (SecurityException e) {
+                Log.d(TAG, "Subscriber ids not readable, reporting merged mobile usage");
+                return merged();
+            }
+            if (subscriberId == null) {
+                return merged();
+            }
+            subscriptions.add(new Subscription(info.getSubscriptionId(), info.getSimSlotIndex(),
+                    toString(info.getDisplayName()), toString(info.getCarrierName()), subscriberId));
+        }
+        return new MobileSubscriptions(subscriptions, false);
+    }
+
+    private static MobileSubscriptions merged() {
+        List<Subscription> all = new ArrayList<>(1);
+        all.add(new Subscription(SubscriptionManager.INVALID_SUBSCRIPTION_ID, -1, null, null, null));
+        return new MobileSubscriptions(all, true);
+    }
+
+    private static String toString(CharSequence value) {
+        return value == null ? null : value.toString();
+    }
+}
@@ -0,0 +1,134 @@
+package com.anonymous.packetMeter;
+
+import android.app.usage.NetworkStats;
+import android.app.usage.NetworkStatsManager;
+import android.net.ConnectivityManager;
+import android.os.Build;
+import android.os.RemoteException;
+
+import com.anonymous.packetMeter.core.BucketSink;
+import com.anonymous.packetMeter.core.QueryToken;
+import com.anonymous.packetMeter.core.UsageBucket;
+import com.anonymous.packetMeter.core.UsageCube;
+import com.anonymous.packetMeter.core.UsageSource;
+
+import java.io.IOException;
+
+/**
+ * {@link UsageSource} backed by {@link NetworkStatsManager}. One {@link NetworkStats.Bucket}
+ * and one {@link UsageBucket} are reused for the whole scan.
+ *
+ * Mobile queries cover every subscriber unless the source was created for one. Only Wi-Fi
+ * and mobile can be queried: the public API rejects templates for other network types.
+ */
+final class NetworkStatsUsageSource implements UsageSource {
+    private final NetworkStatsManager nsm;
+    private final String mobileSubscriberId;
+
+    NetworkStatsUsageSource(NetworkStatsManager nsm) {
+        this(nsm, null);
+    }
+
+    /**
+     * @param mobileSubscriberId subscriber (IMSI) to restrict mobile queries to, or null for all
+     */
+    NetworkStatsUsageSource(NetworkStatsManager nsm, String mobileSubscriberId) {
+        this.nsm = nsm;
+        this.mobileSubscriberId = mobileSubscriberId;
+    }
+
+    @Override
+    public void querySummary(int transport, long startTime, long endTime, BucketSink sink,
+            QueryToken token) throws IOException {
+        long started = CollectorMetrics.start();
+        try {
+            int scanned = scan(nsm.querySummary(networkType(transport), subscriberId(transport),
+                    startTime, endTime), transport, sink, token);
+            CollectorMetrics.get().recordQuery(started, scanned);
+        } catch (RemoteException e) {
+            throw new IOException("NetworkStats summary query failed", e);
+        }
+    }
+
+    @Override
+    public void queryDetails(int transport, long startTime, long endTime, Integer uid,
+            BucketSink sink, QueryToken token) throws IOException {
+        long started = CollectorMetrics.start();
+        try {
+            NetworkStats stats = uid == null
+                    ? nsm.queryDetails(networkType(transport), subscriberId(transport),
+                            startTime, endTime)
+                    : nsm.queryDetailsForUid(networkType(transport), subscriberId(transport),
+                            startTime, endTime, uid);
+            int scanned = scan(stats, transport, sink, token);
+            CollectorMetrics.get().recordQuery(started, scanned);
+        } catch (RemoteException e) {
+            throw new IOException("NetworkStats detail query failed", e);
+        }
+    }
+
+    @Override
+    public long[] queryDeviceTotal(int transport, long startTime, long endTime) throws IOException {
+        long started = CollectorMetrics.start();
+        try {
+            NetworkStats.Bucket bucket = nsm.querySummaryForDevice(networkType(transport),
+                    subscriberId(transport), startTime, endTime);
+            CollectorMetrics.get().recordQuery(started, 1);
+            if (bucket == null) {
+                return new long[2];
+            }
+            return new long[] { bucket.getRxBytes(), bucket.getTxBytes() };
+        } catch (RemoteException e) {
+            throw new IOException("NetworkStats device query failed", e);
+        }
+    }
+
+    private static int scan(NetworkStats stats, int transport, BucketSink sink, QueryToken token) {
+        if (stats == null) {
+            return 0;
+        }
+        NetworkStats.Bucket bucket = new NetworkStats.Bucket();
+        UsageBucket out = new UsageBucket();
+        out.transport = transport;
+        try {
+            int scanned = 0;
+            while (stats.hasNextBucket()) {
+                if ((++scanned & 0xFF) == 0) {
+                    token.throwIfCancelled();
+                }
+                stats.getNextBucket(bucket);
+                long rx = bucket.getRxBytes();
+                long tx = bucket.getTxBytes();
+                if (rx == 0 && tx == 0) {
+                    continue;
+                }
+                out.uid = bucket.getUid();
+                out.state = bucket.getState();
+                out.metered = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                        ? bucket.getMetered() : -1;
+                out.roaming = bucket.getRoaming();
+                out.defaultNetwork = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                        ? bucket.getDefaultNetworkStatus() : -1;
+                out.startTime = bucket.getStartTimeStamp();
+                out.endTime = bucket.getEndTimeStamp();
+                out.rxBytes = rx;
+                out.txBytes = tx;
+                sink.accept(out);
+            }
+            return scanned;
+        } finally {
+            stats.close();
+        }
+    }
+
+    private static int networkType(int transport) {
+        return transport == UsageCube.TRANSPORT_WIFI
+                ? ConnectivityManager.TYPE_WIFI
+                : ConnectivityManager.TYPE_MOBILE;
+    }
+
+    // Wi-Fi is queried with "" and mobile with null unless a subscriber was given
+    private String subscriberId(int transport) {
+        return transport == UsageCube.TRANSPORT_WIFI ? "" : mobileSubscriberId;
+    }
+}
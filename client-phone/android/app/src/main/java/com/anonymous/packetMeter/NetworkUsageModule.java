@@ -1,437 +1,1084 @@
 package com.anonymous.packetMeter;
 
-import android.Manifest;
-import android.app.usage.NetworkStats;
 import android.app.usage.NetworkStatsManager;
 import android.content.Context;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
-import android.net.ConnectivityManager;
-import android.os.RemoteException;
-import android.telephony.SubscriptionManager;
-import android.telephony.TelephonyManager;
-import android.util.Base64;
 import android.util.Log;
 
+import com.anonymous.packetMeter.core.AppUsageDiff;
+import com.anonymous.packetMeter.core.AppUsageJoin;
+import com.anonymous.packetMeter.core.AppUsageRows;
+import com.anonymous.packetMeter.core.QueryToken;
+import com.anonymous.packetMeter.core.SummaryAggregator;
+import com.anonymous.packetMeter.core.UidUsageTable;
+import com.anonymous.packetMeter.core.UsageAlertEvaluator;
+import com.anonymous.packetMeter.core.UsageCube;
+import com.anonymous.packetMeter.core.UsagePeriods;
+import com.anonymous.packetMeter.core.UsageSeries;
+import com.anonymous.packetMeter.core.UsageSource;
+
 import androidx.annotation.NonNull;
-import androidx.core.app.ActivityCompat;
 
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.common.LifecycleState;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class NetworkUsageModule extends ReactContextBaseJavaModule {
+    static final String NAME = "NetworkUsage";
+    static final String EVENT_USAGE_CHUNK = "NetworkUsageChunk";
+    static final String EVENT_THROUGHPUT = "NetworkUsageThroughput";
+    static final String EVENT_ALERT = "NetworkUsageAlert";
+    static final String EVENT_DIFF = "NetworkUsageDiff";
+    private static final int MIN_SAMPLE_INTERVAL_MS = 250;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    // The first chunk is small so the top of the list renders quickly
+    private static final int FIRST_CHUNK_SIZE = 8;
+    private static final int CHUNK_SIZE = 32;
+    // How long later pages keep ranking the table the first page was ranked on
+    private static final long PAGE_SESSION_MS = 60_000;
+    private static final long CUBE_REUSE_MS = 30_000;
+    private static final int[] CUBE_TRANSPORTS = {
+            UsageCube.TRANSPORT_WIFI, UsageCube.TRANSPORT_MOBILE };
+    // Indexed by UsageCube.DIM_*; value names are indexed by the cube's stored values
+    private static final String[] DIMENSION_NAMES = {
+            "transport", "state", "metered", "roaming", "defaultNetwork" };
+    private static final String[][] DIMENSION_VALUES = {
+            { "wifi", "mobile" },
+            { "unknown", "background", "foreground" },
+            { "unknown", "no", "yes" },
+            { "unknown", "no", "yes" },
+            { "unknown", "no", "yes" } };
+
     private final ReactApplicationContext reactContext;
-    private final PackageManager packageManager;
+    // Built on first use from the query threads; see appDirectory()
+    private AppDirectory appDirectory;
+    private CollectorConfig collectorConfig;
+    private final UsageQueryExecutor queryExecutor = new UsageQueryExecutor();
+    private ThroughputSampler throughputSampler;
+    private final Object cubeLock = new Object();
+    private String cubeKey;
+    private long cubeBuiltAt;
+    private UsageCube cube;
+    private final Object pageLock = new Object();
+    private String pageKey;
+    private long pageTableAt;
+    private UidUsageTable pageTable;
+    private final Map<String, DiffSubscription> diffSubscriptions = new HashMap<>();
+    private int diffSubscriptionCount;
+
+    /** Last app list sent to one subscriber of {@link #subscribeAppUsageDiff}. */
+    private static final class DiffSubscription {
+        final String period;
+        final int count;
+        final boolean detailed;
+        // 0 for every app
+        final int limit;
+        AppUsageRows rows;
+
+        DiffSubscription(String period, int count, boolean detailed, int limit) {
+            this.period = period;
+            this.count = count;
+            this.detailed = detailed;
+            this.limit = limit;
+        }
+    }
 
     public NetworkUsageModule(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
-        this.packageManager = reactContext.getPackageManager();
+        // Registering loads nothing; the rules are read when totals are first evaluated
+        UsageAlerts.setListener(this::emitAlert);
+    }
+
+    // The stores below read prefs or disk (and PackageIndex registers a receiver) when first
+    // created, so they are fetched where they are needed, on the query threads, rather than
+    // while React builds the module on first JS access.
+
+    private synchronized AppDirectory appDirectory() {
+        if (appDirectory == null) {
+            appDirectory = new AppDirectory(PackageIndex.get(reactContext), iconCache());
+        }
+        return appDirectory;
+    }
+
+    private synchronized CollectorConfig collectorConfig() {
+        if (collectorConfig == null) {
+            collectorConfig = new CollectorConfig(reactContext);
+        }
+        return collectorConfig;
+    }
+
+    private IconCache iconCache() {
+        return IconCache.get(reactContext);
+    }
+
+    private ClosedDayCache closedDayCache() {
+        return ClosedDayCache.get(reactContext);
+    }
+
+    private UsageTimeSeriesStore timeSeriesStore() {
+        return UsageTimeSeriesStore.get(reactContext);
+    }
+
+    private ReportCursor reportCursor() {
+        return ReportCursor.get(reactContext);
+    }
+
+    private UsageAlerts usageAlerts() {
+        return UsageAlerts.get(reactContext);
+    }
+
+    private UsageSnapshots usageSnapshots() {
+        return UsageSnapshots.get(reactContext);
     }
 
     @NonNull
     @Override
     public String getName() {
-        return "NetworkUsage";
+        return NAME;
+    }
+
+    @Override
+    public void invalidate() {
+        queryExecutor.shutdown();
+        stopSampler();
+        UsageAlerts.setListener(null);
+        super.invalidate();
     }
 
     /**
      * Get network usage per app for a given period type and count.
+     * Options: requestId (for cancelUsageRequest) and timeoutMs, after which the
+     * apps resolved so far are returned.
      */
     @ReactMethod
-    public void getAppNetworkUsage(String period, int count, boolean detailed, Promise promise) {
-        if (!period.equals("hour") && !period.equals("day") && !period.equals("week") && !period.equals("month")) {
-            promise.reject("ERR_INVALID_PERIOD", "Allowed values: hour, day, week, month");
+    public void getAppNetworkUsage(String period, int count, boolean detailed, ReadableMap options,
+            Promise promise) {
+        if (rejectInvalidPeriod(period, count, promise)) {
             return;
         }
 
-        if (period.equals("hour") && count != 1) {
-            promise.reject("ERR_INVALID_COUNT", "Count must be 1 for hour period");
+        queryExecutor.submit("apps:json:" + period + ":" + count + ":" + detailed,
+                getRequestId(options), getTimeoutMs(options), promise,
+                token -> UsagePayloads.toJson(computeAppNetworkUsage(period, count, detailed, token)));
+    }
+
+    /**
+     * Same as {@link #getAppNetworkUsage} but resolves to a native array of app maps,
+     * so no JSON text is built or parsed.
+     */
+    @ReactMethod
+    public void getAppNetworkUsageNative(String period, int count, boolean detailed, ReadableMap options,
+            Promise promise) {
+        if (rejectInvalidPeriod(period, count, promise)) {
             return;
         }
 
-        if (period.equals("day") && (count < 1 || count > 7)) {
-            promise.reject("ERR_INVALID_COUNT", "Count must be between 1 and 7");
+        queryExecutor.submit("apps:native:" + period + ":" + count + ":" + detailed,
+                getRequestId(options), getTimeoutMs(options), promise,
+                token -> UsagePayloads.toWritableArray(computeAppNetworkUsage(period, count, detailed, token)));
+    }
+
+    /**
+     * Same as {@link #getAppNetworkUsage} but resolves to a packed columnar map: parallel
+     * numeric columns per transport plus a string table for names and icon hashes.
+     */
+    @ReactMethod
+    public void getAppNetworkUsagePacked(String period, int count, boolean detailed, ReadableMap options,
+            Promise promise) {
+        if (rejectInvalidPeriod(period, count, promise)) {
             return;
         }
 
-        if (period.equals("week") && (count < 1 || count > 4)) {
-            promise.reject("ERR_INVALID_COUNT", "Count must be between 1 and 4");
+        queryExecutor.submit("apps:packed:" + period + ":" + count + ":" + detailed,
+                getRequestId(options), getTimeoutMs(options), promise,
+                token -> UsagePayloads.toPacked(computeAppNetworkUsage(period, count, detailed, token)));
+    }
+
+    /**
+     * Streaming variant of {@link #getAppNetworkUsageNative}: the apps ranked
+     * [cursor, cursor + limit) by total bytes are emitted as NetworkUsageChunk events
+     * ({requestId, offset, apps}), largest first, as soon as each chunk is resolved.
+     * Resolves to {totalApps, nextCursor}, where nextCursor is null on the last page.
+     * Options: requestId (required), limit, cursor, timeoutMs.
+     *
+     * Pages after the first rank the totals the first page was ranked on for up to
+     * {@link #PAGE_SESSION_MS}, so apps do not move across the cursor while paging.
+     */
+    @ReactMethod
+    public void streamAppNetworkUsage(String period, int count, boolean detailed, ReadableMap options,
+            Promise promise) {
+        if (rejectInvalidPeriod(period, count, promise)) {
             return;
         }
+        String requestId = getRequestId(options);
+        if (requestId == null) {
+            promise.reject("ERR_INVALID_REQUEST", "A requestId is needed to match chunks to the request");
+            return;
+        }
+        int limit = getIntOption(options, "limit", DEFAULT_PAGE_SIZE);
+        int cursor = getIntOption(options, "cursor", 0);
+        if (limit < 1 || cursor < 0) {
+            promise.reject("ERR_INVALID_PAGE", "limit must be positive and cursor non-negative");
+            return;
+        }
+
+        queryExecutor.submit("stream:" + requestId, requestId, getTimeoutMs(options), promise,
+                token -> streamAppUsage(period, count, detailed, requestId, limit, cursor, token));
+    }
 
+    private WritableMap streamAppUsage(String period, int count, boolean detailed, String requestId,
+            int limit, int cursor, QueryToken token) throws IOException {
         NetworkStatsManager nsm = (NetworkStatsManager) reactContext
                 .getSystemService(Context.NETWORK_STATS_SERVICE);
+        UidUsageTable table = pagedTable(nsm, period, count, detailed, cursor, token);
+
+        // Rank on primitive totals; only the page being returned is resolved to labels and icons
+        AppUsageJoin.Ranking<PackageIndex.Entry> ranking =
+                AppUsageJoin.rankListed(table, appDirectory(), detailed, cursor + limit);
+        int ranked = ranking.size();
+        // A complete first page becomes the snapshot for the next cold start
+        AppUsageRows firstPage = cursor == 0 ? new AppUsageRows(ranked) : null;
+
+        int offset = cursor;
+        int chunkSize = FIRST_CHUNK_SIZE;
+        while (offset < ranked) {
+            token.throwIfCancelled();
+            if (token.isPastDeadline()) {
+                break;
+            }
+            int end = Math.min(ranked, offset + chunkSize);
+            AppUsageRows rows = ranking.rows(offset, end);
+
+            WritableMap chunk = Arguments.createMap();
+            chunk.putString("requestId", requestId);
+            chunk.putInt("offset", offset);
+            chunk.putArray("apps", UsagePayloads.toWritableArray(rows));
+            emit(EVENT_USAGE_CHUNK, chunk);
+            if (firstPage != null) {
+                firstPage.addAll(rows);
+            }
 
-        long[] range = getTimeRange(period, count);
-        long startTime = range[0];
-        long endTime = range[1];
+            offset = end;
+            chunkSize = CHUNK_SIZE;
+        }
 
-        List<JSONObject> appUsages = new ArrayList<>();
+        if (firstPage != null && offset >= ranked) {
+            usageSnapshots().putApps(period, count, detailed, firstPage);
+        }
 
-        // Get all installed applications
-        List<ApplicationInfo> apps = packageManager.getInstalledApplications(PackageManager.GET_META_DATA);
+        WritableMap result = Arguments.createMap();
+        result.putInt("totalApps", ranking.totalApps);
+        if (offset < ranking.totalApps) {
+            result.putInt("nextCursor", offset);
+        } else {
+            result.putNull("nextCursor");
+        }
+        return result;
+    }
 
-        for (ApplicationInfo appInfo : apps) {
-            try {
-                boolean isSystemApp = (appInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
-                boolean isUpdatedSystemApp = (appInfo.flags & ApplicationInfo.FLAG_UPDATED_SYSTEM_APP) != 0;
-                boolean hasLauncher = packageManager.getLaunchIntentForPackage(appInfo.packageName) != null;
-
-                // Skip only if it's a system app *and* has no launcher TODO: we need other
-                // optimizations ways as some services use network hence we need to add them to
-                // calcs
-                if ((isSystemApp || isUpdatedSystemApp) && !hasLauncher && !detailed) {
-                    continue;
-                }
-                String packageName = appInfo.packageName;
-
-                // Query network stats for this app
-                NetworkStats stats = nsm.queryDetailsForUid(
-                        ConnectivityManager.TYPE_WIFI, "", startTime, endTime, appInfo.uid);
-
-                long wifiRx = 0, wifiTx = 0;
-                NetworkStats.Bucket bucket = new NetworkStats.Bucket();
-                while (stats.hasNextBucket()) {
-                    stats.getNextBucket(bucket);
-                    wifiRx += bucket.getRxBytes();
-                    wifiTx += bucket.getTxBytes();
-                }
-                stats.close();
-
-                // Query mobile data for this app
-                NetworkStats mobileStats = nsm.queryDetailsForUid(
-                        ConnectivityManager.TYPE_MOBILE,
-                        null,
-                        startTime,
-                        endTime,
-                        appInfo.uid);
-
-                long mobileRx = 0, mobileTx = 0;
-                while (mobileStats.hasNextBucket()) {
-                    mobileStats.getNextBucket(bucket);
-                    mobileRx += bucket.getRxBytes();
-                    mobileTx += bucket.getTxBytes();
-                }
-                mobileStats.close();
+    /**
+     * Mobile usage per SIM together with per-app usage for one window. Each subscriber's
+     * mobile summary is scanned once and feeds both its SIM totals and the app list, which is
+     * joined once over all subscribers. Resolves to {merged, subscriptions, apps}; each
+     * subscription is {subscriptionId, slotIndex, displayName, carrierName, mobile, tethering}.
+     * When subscriber ids are not readable (Android 10+ without carrier privileges) merged is
+     * true and subscriptions holds one entry with subscriptionId -1 for all mobile traffic.
+     * Options: requestId and timeoutMs, as for {@link #getAppNetworkUsage}.
+     */
+    @ReactMethod
+    public void getSubscriptionUsage(String period, int count, boolean detailed, ReadableMap options,
+            Promise promise) {
+        if (rejectInvalidPeriod(period, count, promise)) {
+            return;
+        }
 
-                long totalBytes = wifiRx + wifiTx + mobileRx + mobileTx;
+        queryExecutor.submit("subscriptions:" + period + ":" + count + ":" + detailed,
+                getRequestId(options), getTimeoutMs(options), promise,
+                token -> computeSubscriptionUsage(period, count, detailed, token));
+    }
 
-                // Only include apps with network usage
-                if (totalBytes > 0) {
-                    JSONObject appData = new JSONObject();
+    private WritableMap computeSubscriptionUsage(String period, int count, boolean detailed,
+            QueryToken token) throws IOException {
+        NetworkStatsManager nsm = (NetworkStatsManager) reactContext
+                .getSystemService(Context.NETWORK_STATS_SERVICE);
+        MobileSubscriptions subscriptions = MobileSubscriptions.active(reactContext);
+        int n = subscriptions.subscriptions.size();
+        UsageSource[] sources = new UsageSource[n];
+        for (int i = 0; i < n; i++) {
+            sources[i] = new NetworkStatsUsageSource(nsm, subscriptions.subscriptions.get(i).subscriberId);
+        }
+        long[][] subscriberTotals = new long[n][4];
 
-                    // Get app name and icon
-                    String appName = packageManager.getApplicationLabel(appInfo).toString();
-                    String appIcon = getAppIconAsBase64(packageName);
+        long[] range = UsagePeriods.range(period, count);
+        UidUsageTable table = SummaryAggregator.aggregateBySubscriber(new NetworkStatsUsageSource(nsm),
+                sources, range[0], range[1], subscriberTotals, token);
+        AppUsageRows rows = collectAppUsageRows(table, detailed, token);
+        return UsagePayloads.toSubscriptionUsage(subscriptions, subscriberTotals, rows);
+    }
 
-                    appData.put("packageName", packageName);
-                    appData.put("appName", appName);
-                    appData.put("icon", appIcon);
-                    appData.put("uid", appInfo.uid);
+    /**
+     * The last first page of apps and device totals computed for this window, read from the
+     * on-disk snapshot without querying NetworkStats. Resolves to {computedAt, current, apps,
+     * total}, or null if neither was ever computed; render it, then reconcile with a fresh
+     * request. current is false if the window has rolled over since.
+     */
+    @ReactMethod
+    public void getCachedAppNetworkUsage(String period, int count, boolean detailed, Promise promise) {
+        if (rejectInvalidPeriod(period, count, promise)) {
+            return;
+        }
+        UsageSnapshots.Snapshot apps = usageSnapshots().apps(period, count, detailed);
+        UsageSnapshots.Snapshot totals = usageSnapshots().totals(period, count);
+        if (apps == null && totals == null) {
+            promise.resolve(null);
+            return;
+        }
+        promise.resolve(UsagePayloads.toCachedUsage(apps, totals, period, count));
+    }
 
-                    // Network usage data
-                    JSONObject wifi = new JSONObject();
-                    wifi.put("rx", wifiRx);
-                    wifi.put("tx", wifiTx);
-                    wifi.put("total", wifiRx + wifiTx);
+    /**
+     * Synchronous read of the device totals last computed for this window (see
+     * {@link #getCachedAppNetworkUsage}), or null if there are none for the current window.
+     * Never queries NetworkStats.
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableMap getCachedTotalUsageSync(String period, int count) {
+        UsageSnapshots.Snapshot totals = usageSnapshots().totals(period, count);
+        if (totals == null || !totals.isCurrent(period, count)) {
+            return null;
+        }
+        WritableMap result = UsagePayloads.totalsToWritableMap(totals.totals);
+        result.putDouble("computedAt", totals.computedAt);
+        return result;
+    }
 
-                    JSONObject mobile = new JSONObject();
-                    mobile.put("rx", mobileRx);
-                    mobile.put("tx", mobileTx);
-                    mobile.put("total", mobileRx + mobileTx);
+    /**
+     * Cancel a request started with a requestId option. Resolves to false if it already finished.
+     */
+    @ReactMethod
+    public void cancelUsageRequest(String requestId, Promise promise) {
+        promise.resolve(queryExecutor.cancel(requestId));
+    }
 
-                    appData.put("wifi", wifi);
-                    appData.put("mobile", mobile);
-                    appData.put("totalBytes", totalBytes);
+    /**
+     * Start tracking the app list of a window and resolve to {key, apps}: the largest
+     * options.limit apps (all when omitted). key is this subscriber's handle; later
+     * {@link #refreshAppUsageDiff} calls with it emit only what changed since as
+     * NetworkUsageDiff events. Every subscriber has its own baseline, so diffs never carry
+     * rows beyond its limit. Call {@link #unsubscribeAppUsageDiff} with the key when done.
+     */
+    @ReactMethod
+    public void subscribeAppUsageDiff(String period, int count, boolean detailed, ReadableMap options,
+            Promise promise) {
+        if (rejectInvalidPeriod(period, count, promise)) {
+            return;
+        }
+        int limit = getIntOption(options, "limit", 0);
+        if (limit < 0) {
+            promise.reject("ERR_INVALID_PAGE", "limit must be non-negative");
+            return;
+        }
 
-                    appUsages.add(appData);
+        // Registered before the baseline is computed, so an early unsubscribe is not lost
+        DiffSubscription subscription = new DiffSubscription(period, count, detailed, limit);
+        String key;
+        synchronized (diffSubscriptions) {
+            key = diffKey(period, count, detailed) + ":" + (++diffSubscriptionCount);
+            diffSubscriptions.put(key, subscription);
+        }
+        boolean accepted = queryExecutor.submit("diff-subscribe:" + key, null, 0, promise, token -> {
+            try {
+                AppUsageRows rows = computeAppNetworkUsage(period, count, detailed, token);
+                if (limit > 0) {
+                    rows = rows.head(limit);
                 }
+                synchronized (diffSubscriptions) {
+                    subscription.rows = rows;
+                }
+                return diffBaseline(key, rows);
             } catch (Exception e) {
-                Log.w("NetworkUsage", "Error processing app " + appInfo.packageName + ": " + e.getMessage());
+                removeDiffSubscription(key);
+                throw e;
             }
+        });
+        if (!accepted) {
+            removeDiffSubscription(key);
         }
+    }
 
-        // Add tethering usage as an app entry
-        addTetheringUsageToAppList(appUsages, nsm, startTime, endTime);
+    /**
+     * Recompute a subscribed key and emit {key, added, changed, removed} as a NetworkUsageDiff
+     * event if anything changed. Resolves to the number of rows in the diff.
+     */
+    @ReactMethod
+    public void refreshAppUsageDiff(String key, Promise promise) {
+        DiffSubscription subscription;
+        synchronized (diffSubscriptions) {
+            subscription = diffSubscriptions.get(key);
+        }
+        if (subscription == null) {
+            promise.reject("ERR_NOT_SUBSCRIBED", "No app usage subscription for " + key);
+            return;
+        }
 
-        // Sort by total bytes descending
-        appUsages.sort((a, b) -> {
-            try {
-                return Long.compare(b.getLong("totalBytes"), a.getLong("totalBytes"));
-            } catch (JSONException e) {
-                return 0;
+        queryExecutor.submit("diff-refresh:" + key, null, 0, promise, token -> {
+            AppUsageRows rows = computeAppNetworkUsage(subscription.period, subscription.count,
+                    subscription.detailed, token);
+            AppUsageDiff diff;
+            synchronized (diffSubscriptions) {
+                if (subscription.limit > 0) {
+                    rows = rows.head(subscription.limit);
+                }
+                diff = AppUsageDiff.between(subscription.rows, rows);
+                subscription.rows = rows;
             }
+            if (!diff.isEmpty()) {
+                emit(EVENT_DIFF, UsagePayloads.toUsageDiff(key, diff));
+            }
+            return diff.size();
         });
+    }
+
+    @ReactMethod
+    public void unsubscribeAppUsageDiff(String key, Promise promise) {
+        removeDiffSubscription(key);
+        promise.resolve(null);
+    }
+
+    private void removeDiffSubscription(String key) {
+        synchronized (diffSubscriptions) {
+            diffSubscriptions.remove(key);
+        }
+    }
+
+    private static String diffKey(String period, int count, boolean detailed) {
+        return period + ":" + count + ":" + detailed;
+    }
+
+    private static WritableMap diffBaseline(String key, AppUsageRows rows) {
+        WritableMap result = Arguments.createMap();
+        result.putString("key", key);
+        result.putArray("apps", UsagePayloads.toWritableArray(rows));
+        return result;
+    }
+
+    private AppUsageRows computeAppNetworkUsage(String period, int count, boolean detailed,
+            QueryToken token) throws IOException {
+        NetworkStatsManager nsm = (NetworkStatsManager) reactContext
+                .getSystemService(Context.NETWORK_STATS_SERVICE);
 
-        JSONArray result = new JSONArray();
-        for (JSONObject appUsage : appUsages) {
-            result.put(appUsage);
+        long[] range = UsagePeriods.range(period, count);
+        long startTime = range[0];
+        long endTime = range[1];
+
+        UidUsageTable table = closedDayCache().aggregate(nsm, startTime, endTime, token);
+        return collectAppUsageRows(table, detailed, token);
+    }
+
+    /**
+     * Get per-app usage for [startMs, endMs) from the on-device history store, which keeps
+     * data beyond what NetworkStats retains. Closed hours not stored yet are appended first.
+     * Resolves to {apps, coveredFrom, coveredTo}; the store may not cover the whole range
+     * yet, e.g. right after install or after a long gap between fills.
+     */
+    @ReactMethod
+    public void getUsageHistory(double startMs, double endMs, boolean detailed, Promise promise) {
+        if (endMs <= startMs) {
+            promise.reject("ERR_INVALID_RANGE", "endMs must be after startMs");
+            return;
         }
+        long startTime = (long) startMs;
+        long endTime = (long) endMs;
+
+        queryExecutor.submit("history:" + startTime + ":" + endTime + ":" + detailed, null, 0, promise,
+                token -> {
+                    NetworkStatsManager nsm = (NetworkStatsManager) reactContext
+                            .getSystemService(Context.NETWORK_STATS_SERVICE);
+                    try {
+                        timeSeriesStore().fill(nsm, token);
+                    } catch (IOException e) {
+                        Log.w("NetworkUsage", "Error filling usage history: " + e.getMessage());
+                    }
+                    UidUsageTable table = timeSeriesStore().query(startTime, endTime);
+                    return UsagePayloads.toUsageHistory(collectAppUsageRows(table, detailed, token),
+                            timeSeriesStore().coverage());
+                });
+    }
+
+    /**
+     * Compute today's per-app report, limited to apps whose counters changed since the last
+     * committed report. Resolves to {reportId, since, Apps, Registrations}; Apps carries the
+     * day totals the server expects. Call commitReportDelta(reportId) once it is accepted.
+     */
+    @ReactMethod
+    public void computeReportDelta(boolean detailed, Promise promise) {
+        queryExecutor.submit("report-delta:" + detailed, null, 0, promise, token -> {
+            NetworkStatsManager nsm = (NetworkStatsManager) reactContext
+                    .getSystemService(Context.NETWORK_STATS_SERVICE);
 
-        promise.resolve(result.toString());
+            PerProcessReport report = PerProcessReport.build(reactContext, nsm, detailed, token);
+            return UsagePayloads.toReportDelta(report.reportId, report.since, report.rows,
+                    iconCache());
+        });
     }
 
     /**
-     * Get total network usage across all apps for a given period type and count.
+     * Advance the report cursor to a report returned by computeReportDelta. Resolves to false
+     * if a newer report has been computed since, leaving the cursor unchanged.
      */
     @ReactMethod
-    public void getTotalNetworkUsage(String period, int count, Promise promise) {
+    public void commitReportDelta(String reportId, Promise promise) {
         try {
-            if (!period.equals("hour") && !period.equals("day") && !period.equals("week") && !period.equals("month")) {
-                promise.reject("ERR_INVALID_PERIOD", "Allowed values: hour, day, week, month");
-                return;
-            }
+            promise.resolve(reportCursor().commit(reportId));
+        } catch (IOException e) {
+            promise.reject("ERR_NETWORK_USAGE", e.getMessage());
+        }
+    }
 
-            if (period.equals("hour") && count != 1) {
-                promise.reject("ERR_INVALID_COUNT", "Count must be 1 for hour period");
-                return;
-            }
+    /**
+     * Store the server settings used by the background collector. Keys mirror the reporter
+     * store: serverHost, serverPort, useTls, deviceToken, detailedReports, plus an optional
+     * baseUrl that overrides the others.
+     */
+    @ReactMethod
+    public void configureCollector(ReadableMap config, Promise promise) {
+        collectorConfig().update(
+                config.hasKey("serverHost") ? config.getString("serverHost") : null,
+                config.hasKey("serverPort") ? config.getInt("serverPort") : 8080,
+                config.hasKey("useTls") && config.getBoolean("useTls"),
+                config.hasKey("deviceToken") && !config.isNull("deviceToken")
+                        ? config.getString("deviceToken") : null,
+                config.hasKey("detailedReports") && config.getBoolean("detailedReports"),
+                config.hasKey("baseUrl") && !config.isNull("baseUrl") ? config.getString("baseUrl") : null);
+        promise.resolve(null);
+    }
 
-            if (period.equals("day") && (count < 1 || count > 7)) {
-                promise.reject("ERR_INVALID_COUNT", "Count must be between 1 and 7");
-                return;
-            }
+    /**
+     * Schedule the native background collector (minimum interval 15 minutes).
+     */
+    @ReactMethod
+    public void scheduleCollector(int intervalMinutes, Promise promise) {
+        try {
+            UsageReportWorker.schedule(reactContext, intervalMinutes);
+            promise.resolve(null);
+        } catch (Exception e) {
+            promise.reject("ERR_COLLECTOR", e.getMessage());
+        }
+    }
 
-            if (period.equals("week") && (count < 1 || count > 4)) {
-                promise.reject("ERR_INVALID_COUNT", "Count must be between 1 and 4");
-                return;
-            }
+    @ReactMethod
+    public void cancelCollector(Promise promise) {
+        try {
+            UsageReportWorker.cancel(reactContext);
+            promise.resolve(null);
+        } catch (Exception e) {
+            promise.reject("ERR_COLLECTOR", e.getMessage());
+        }
+    }
 
-            NetworkStatsManager nsm = (NetworkStatsManager) reactContext
-                    .getSystemService(Context.NETWORK_STATS_SERVICE);
+    /**
+     * Resolve to whether the native background collector is scheduled.
+     */
+    @ReactMethod
+    public void isCollectorScheduled(Promise promise) {
+        queryExecutor.submit("collector-scheduled", null, 0, promise,
+                token -> UsageReportWorker.isScheduled(reactContext));
+    }
 
-            long[] range = getTimeRange(period, count);
-            long startTime = range[0];
-            long endTime = range[1];
+    /**
+     * Upload every report queued in the outbox by the background collector, in gzipped
+     * batches. Resolves to {batches, reports, complete}; complete is false if the server
+     * rejected a batch and reports remain queued.
+     */
+    @ReactMethod
+    public void flushReportOutbox(Promise promise) {
+        String deviceToken = collectorConfig().getDeviceToken();
+        if (deviceToken == null) {
+            promise.reject("ERR_COLLECTOR", "Collector has no device token");
+            return;
+        }
+        String url = collectorConfig().buildServerUrl(ReportOutbox.BATCH_PATH);
+        queryExecutor.submit("outbox:flush", null, 0, promise, token -> {
+            ReportOutbox.FlushResult result = ReportOutbox.get(reactContext).flush(url, deviceToken);
+            WritableMap map = Arguments.createMap();
+            map.putInt("batches", result.batches);
+            map.putInt("reports", result.reports);
+            map.putBoolean("complete", result.complete);
+            return map;
+        });
+    }
 
-            long wifiRx = 0, wifiTx = 0;
-            long mobileRx = 0, mobileTx = 0;
+    /**
+     * Resolves to {segments, bytes} waiting in the report outbox.
+     */
+    @ReactMethod
+    public void getReportOutboxStatus(Promise promise) {
+        long[] pending = ReportOutbox.get(reactContext).pendingSize();
+        WritableMap status = Arguments.createMap();
+        status.putInt("segments", (int) pending[0]);
+        status.putDouble("bytes", pending[1]);
+        promise.resolve(status);
+    }
 
-            // ---------- Wi-Fi ----------
-            NetworkStats.Bucket wifiBucket = nsm.querySummaryForDevice(
-                    ConnectivityManager.TYPE_WIFI, "", startTime, endTime);
-            if (wifiBucket != null) {
-                wifiRx = wifiBucket.getRxBytes();
-                wifiTx = wifiBucket.getTxBytes();
-            }
+    /**
+     * Hot-path profile since launch or the last reset: counters (binderCalls, bucketsScanned,
+     * rowsReturned, payloadChars, requestsCoalesced, requestsFailed) and latency percentiles
+     * per phase (query, metadata, icons, serialization, request).
+     */
+    @ReactMethod
+    public void getCollectorMetrics(Promise promise) {
+        promise.resolve(UsagePayloads.toWritableMap(CollectorMetrics.get()));
+    }
 
-            // ---------- Mobile ----------
-            NetworkStats.Bucket mobileBucket = nsm.querySummaryForDevice(
-                    ConnectivityManager.TYPE_MOBILE,
-                    null,
-                    startTime, endTime);
-            if (mobileBucket != null) {
-                mobileRx = mobileBucket.getRxBytes();
-                mobileTx = mobileBucket.getTxBytes();
-            }
+    /**
+     * Synchronous form of {@link #getCollectorMetrics}; the counters are already in memory.
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableMap getCollectorMetricsSync() {
+        return UsagePayloads.toWritableMap(CollectorMetrics.get());
+    }
 
-            long wifiTotal = wifiRx + wifiTx;
-            long mobileTotal = mobileRx + mobileTx;
+    @ReactMethod
+    public void resetCollectorMetrics(Promise promise) {
+        CollectorMetrics.get().reset();
+        promise.resolve(null);
+    }
 
-            JSONObject wifi = new JSONObject();
-            JSONObject mobile = new JSONObject();
-            JSONObject totalObj = new JSONObject();
+    /**
+     * Write the metrics summary to logcat every intervalSeconds; 0 turns logging off.
+     */
+    @ReactMethod
+    public void setCollectorMetricsLogging(int intervalSeconds, Promise promise) {
+        if (intervalSeconds < 0) {
+            promise.reject("ERR_INVALID_INTERVAL", "intervalSeconds must not be negative");
+            return;
+        }
+        CollectorMetrics.get().setLogInterval(intervalSeconds * 1000L);
+        promise.resolve(null);
+    }
 
-            wifi.put("rx", wifiRx);
-            wifi.put("tx", wifiTx);
-            wifi.put("total", wifiTotal);
+    /**
+     * Join per-uid totals with package metadata and return the rows sorted by total bytes.
+     */
+    private AppUsageRows collectAppUsageRows(UidUsageTable table, boolean detailed, QueryToken token) {
+        AppUsageRows rows = AppUsageJoin.collect(table, appDirectory(), detailed, token);
+        if (token.isPastDeadline()) {
+            Log.i("NetworkUsage", "Deadline reached, returning " + rows.size() + " apps");
+        }
+        return rows;
+    }
 
-            mobile.put("rx", mobileRx);
-            mobile.put("tx", mobileTx);
-            mobile.put("total", mobileTotal);
+    /**
+     * Get a usage histogram for the period/count window in hour or day intervals
+     * (bucketSize), for the whole device or for options.uid. Resolves to columnar arrays:
+     * start (interval start, epoch ms), end, wifiRx, wifiTx, mobileRx, mobileTx.
+     */
+    @ReactMethod
+    public void getUsageSeries(String period, String bucketSize, int count, ReadableMap options,
+            Promise promise) {
+        if (rejectInvalidPeriod(period, count, promise)) {
+            return;
+        }
+        if (!bucketSize.equals("hour") && !bucketSize.equals("day")) {
+            promise.reject("ERR_INVALID_BUCKET_SIZE", "Allowed values: hour, day");
+            return;
+        }
+        Integer uid = options != null && options.hasKey("uid") && !options.isNull("uid")
+                ? options.getInt("uid") : null;
+
+        queryExecutor.submit("series:" + period + ":" + bucketSize + ":" + count + ":" + uid,
+                getRequestId(options), getTimeoutMs(options), promise, token -> {
+                    NetworkStatsManager nsm = (NetworkStatsManager) reactContext
+                            .getSystemService(Context.NETWORK_STATS_SERVICE);
+                    long[] range = UsagePeriods.range(period, count);
+                    long[] edges = UsageSeries.alignedEdges(range[0], range[1], bucketSize);
+                    return UsagePayloads.toWritableMap(UsageSeries.collect(
+                            new NetworkStatsUsageSource(nsm), edges, uid, token));
+                });
+    }
+
+    /**
+     * Start emitting NetworkUsageThroughput events every intervalMs with current rx/tx rates
+     * in bytes per second for the device and for each uid. Replaces a running sampler.
+     */
+    @ReactMethod
+    public void startThroughputSampler(ReadableArray uids, int intervalMs, Promise promise) {
+        if (intervalMs < MIN_SAMPLE_INTERVAL_MS) {
+            promise.reject("ERR_INVALID_INTERVAL", "intervalMs must be at least " + MIN_SAMPLE_INTERVAL_MS);
+            return;
+        }
+        int[] sampledUids = new int[uids.size()];
+        for (int i = 0; i < sampledUids.length; i++) {
+            sampledUids[i] = uids.getInt(i);
+        }
+        NetworkStatsManager nsm = (NetworkStatsManager) reactContext
+                .getSystemService(Context.NETWORK_STATS_SERVICE);
+
+        synchronized (this) {
+            stopSampler();
+            throughputSampler = new ThroughputSampler(nsm, sampledUids, intervalMs, this::emitThroughput);
+            throughputSampler.start();
+        }
+        promise.resolve(null);
+    }
 
-            totalObj.put("wifi", wifi);
-            totalObj.put("mobile", mobile);
-            totalObj.put("totalBytes", wifiTotal + mobileTotal);
+    @ReactMethod
+    public void stopThroughputSampler(Promise promise) {
+        stopSampler();
+        promise.resolve(null);
+    }
 
-            promise.resolve(totalObj.toString());
-        } catch (RemoteException | JSONException e) {
-            promise.reject("ERR_NETWORK_USAGE", e);
+    private synchronized void stopSampler() {
+        if (throughputSampler != null) {
+            throughputSampler.stop();
+            throughputSampler = null;
         }
     }
 
+    private void emitThroughput(ThroughputSampler sampler) {
+        WritableArray apps = Arguments.createArray();
+        for (int i = 0; i < sampler.uidCount(); i++) {
+            WritableMap app = Arguments.createMap();
+            app.putInt("uid", sampler.uidAt(i));
+            app.putDouble("rxRate", sampler.rxRate(i));
+            app.putDouble("txRate", sampler.txRate(i));
+            app.putBoolean("realtime", sampler.isRealtime(i));
+            apps.pushMap(app);
+        }
+        WritableMap sample = Arguments.createMap();
+        sample.putDouble("timestamp", System.currentTimeMillis());
+        sample.putDouble("rxRate", sampler.totalRxRate());
+        sample.putDouble("txRate", sampler.totalTxRate());
+        sample.putArray("apps", apps);
+        emit(EVENT_THROUGHPUT, sample);
+    }
+
     /**
-     * Convert app icon to Base64 string
+     * Replace the usage alert rules. Each rule is {id, kind, uid, transport, thresholdBytes,
+     * label}: kind is quota (bytes used today) or spike (bytes added between two checks),
+     * uid null or absent means the whole device, transport is wifi, mobile or any (default)
+     * and label is optional notification text. Rules are checked natively whenever today's
+     * per-app totals are computed; each fires at most once a day, as a NetworkUsageAlert
+     * event while the app is in the foreground and as a notification otherwise.
      */
-    private String getAppIconAsBase64(String packageName) {
+    @ReactMethod
+    public void setUsageAlertRules(ReadableArray rules, Promise promise) {
+        List<UsageAlertEvaluator.Rule> parsed = new ArrayList<>(rules.size());
+        Map<String, String> labels = new HashMap<>();
         try {
-            Drawable icon = packageManager.getApplicationIcon(packageName);
-            Bitmap bitmap = drawableToBitmap(icon);
-
-            // Resize bitmap to reduce size
-            int size = 64; // 64x64 pixels
-            Bitmap resizedBitmap = Bitmap.createScaledBitmap(bitmap, size, size, true);
+            for (int i = 0; i < rules.size(); i++) {
+                ReadableMap rule = rules.getMap(i);
+                String id = rule.getString("id");
+                int uid = rule.hasKey("uid") && !rule.isNull("uid")
+                        ? rule.getInt("uid") : UsageAlertEvaluator.DEVICE;
+                String transport = rule.hasKey("transport") && !rule.isNull("transport")
+                        ? rule.getString("transport") : "any";
+                parsed.add(new UsageAlertEvaluator.Rule(id, UsageAlerts.parseKind(rule.getString("kind")),
+                        uid, UsageAlerts.parseTransport(transport), (long) rule.getDouble("thresholdBytes")));
+                if (rule.hasKey("label") && !rule.isNull("label")) {
+                    labels.put(id, rule.getString("label"));
+                }
+            }
+            usageAlerts().setRules(parsed, labels);
+            promise.resolve(null);
+        } catch (IllegalArgumentException e) {
+            promise.reject("ERR_INVALID_RULE", e.getMessage());
+        } catch (JSONException e) {
+            promise.reject("ERR_USAGE_ALERTS", e.getMessage());
+        }
+    }
 
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            resizedBitmap.compress(Bitmap.CompressFormat.PNG, 100, byteArrayOutputStream);
-            byte[] byteArray = byteArrayOutputStream.toByteArray();
+    @ReactMethod
+    public void getUsageAlertRules(Promise promise) {
+        WritableArray result = Arguments.createArray();
+        for (UsageAlertEvaluator.Rule rule : usageAlerts().rules()) {
+            result.pushMap(UsagePayloads.toWritableMap(rule, usageAlerts().labelOf(rule.id)));
+        }
+        promise.resolve(result);
+    }
 
-            return "data:image/png;base64," + Base64.encodeToString(byteArray, Base64.DEFAULT);
-        } catch (Exception e) {
-            Log.w("NetworkUsage", "Error getting icon for " + packageName + ": " + e.getMessage());
+    /**
+     * Check the alert rules against today's totals now instead of waiting for the next
+     * report. Fired rules are delivered like any other crossing.
+     */
+    @ReactMethod
+    public void checkUsageAlerts(Promise promise) {
+        queryExecutor.submit("alerts:check", null, 0, promise, token -> {
+            NetworkStatsManager nsm = (NetworkStatsManager) reactContext
+                    .getSystemService(Context.NETWORK_STATS_SERVICE);
+            usageAlerts().check(nsm, token);
             return null;
+        });
+    }
+
+    // Returns true only if the UI is in front to show the alert; otherwise a notification is posted too
+    private boolean emitAlert(UsageAlerts.Alert alert) {
+        if (!reactContext.hasActiveReactInstance()) {
+            return false;
         }
+        emit(EVENT_ALERT, UsagePayloads.toWritableMap(alert));
+        return reactContext.getLifecycleState() == LifecycleState.RESUMED;
     }
 
     /**
-     * Convert Drawable to Bitmap
+     * Get icons for the given icon hashes in one batch, reading them off the module thread.
+     * Resolves to a map of hash -> data URI; unknown and malformed hashes are omitted.
      */
-    private Bitmap drawableToBitmap(Drawable drawable) {
-        if (drawable instanceof BitmapDrawable) {
-            return ((BitmapDrawable) drawable).getBitmap();
+    @ReactMethod
+    public void getAppIcons(ReadableArray hashes, Promise promise) {
+        String[] requested = new String[hashes.size()];
+        for (int i = 0; i < requested.length; i++) {
+            requested[i] = hashes.getString(i);
         }
 
-        int width = drawable.getIntrinsicWidth();
-        int height = drawable.getIntrinsicHeight();
+        queryExecutor.submit("icons:" + String.join(",", requested), null, 0, promise, token -> {
+            WritableMap icons = Arguments.createMap();
+            for (String hash : requested) {
+                token.throwIfCancelled();
+                String dataUri = iconCache().getIconDataUri(hash);
+                if (dataUri != null) {
+                    icons.putString(hash, dataUri);
+                }
+            }
+            return icons;
+        });
+    }
 
-        // Ensure minimum size
-        width = Math.max(width, 1);
-        height = Math.max(height, 1);
+    /**
+     * Get total network usage across all apps for a given period type and count.
+     */
+    @ReactMethod
+    public void getTotalNetworkUsage(String period, int count, ReadableMap options, Promise promise) {
+        if (rejectInvalidPeriod(period, count, promise)) {
+            return;
+        }
 
-        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
-        drawable.draw(canvas);
+        queryExecutor.submit("total:json:" + period + ":" + count,
+                getRequestId(options), getTimeoutMs(options), promise,
+                token -> UsagePayloads.totalsToJson(computeTotalNetworkUsage(period, count)));
+    }
+
+    /**
+     * Same as {@link #getTotalNetworkUsage} but resolves to a native map.
+     */
+    @ReactMethod
+    public void getTotalNetworkUsageNative(String period, int count, ReadableMap options, Promise promise) {
+        if (rejectInvalidPeriod(period, count, promise)) {
+            return;
+        }
 
-        return bitmap;
+        queryExecutor.submit("total:native:" + period + ":" + count,
+                getRequestId(options), getTimeoutMs(options), promise,
+                token -> UsagePayloads.totalsToWritableMap(computeTotalNetworkUsage(period, count)));
     }
 
     /**
-     * Add tethering usage as an app entry to the app list.
+     * Same as {@link #getTotalNetworkUsageNative}, but hour and day windows are kept current
+     * to the second from TrafficStats between NetworkStats queries, so frequent polling is
+     * cheap.
      */
-    private void addTetheringUsageToAppList(List<JSONObject> appUsages, NetworkStatsManager nsm,
-            long startTime, long endTime) {
-        try {
-            long[] tetheringUsage = getTetheringUsage(nsm, startTime, endTime,
-                    null);
-            long wifiRx = tetheringUsage[0];
-            long wifiTx = tetheringUsage[1];
-            long mobileRx = tetheringUsage[2];
-            long mobileTx = tetheringUsage[3];
-            long tetherTotal = wifiRx + wifiTx + mobileRx + mobileTx;
-
-            if (tetherTotal > 0) {
-                JSONObject tetheringData = new JSONObject();
-                tetheringData.put("packageName", "com.android.tethering");
-                tetheringData.put("appName", "Tethering / Hotspot");
-                tetheringData.put("icon", (String) null);
-                tetheringData.put("uid", -1);
-
-                JSONObject wifi = new JSONObject();
-                wifi.put("rx", wifiRx);
-                wifi.put("tx", wifiTx);
-                wifi.put("total", wifiRx + wifiTx);
-
-                JSONObject mobile = new JSONObject();
-                mobile.put("rx", mobileRx);
-                mobile.put("tx", mobileTx);
-                mobile.put("total", mobileRx + mobileTx);
-
-                tetheringData.put("wifi", wifi);
-                tetheringData.put("mobile", mobile);
-                tetheringData.put("totalBytes", tetherTotal);
-
-                appUsages.add(tetheringData);
-            }
-        } catch (Exception e) {
-            Log.w("NetworkUsage", "Error getting tethering usage: " + e.getMessage());
+    @ReactMethod
+    public void getPreciseTotalUsage(String period, int count, ReadableMap options, Promise promise) {
+        if (rejectInvalidPeriod(period, count, promise)) {
+            return;
         }
+
+        queryExecutor.submit("total:precise:" + period + ":" + count,
+                getRequestId(options), getTimeoutMs(options), promise, token -> {
+                    NetworkStatsManager nsm = (NetworkStatsManager) reactContext
+                            .getSystemService(Context.NETWORK_STATS_SERVICE);
+                    long[] totals = HybridTotalCounter.get().totals(nsm, period, count);
+                    usageSnapshots().putTotals(period, count, totals);
+                    return UsagePayloads.totalsToWritableMap(totals);
+                });
     }
 
     /**
-     * Get total tethering (hotspot) data usage.
-     * Returns [wifiRx, wifiTx, mobileRx, mobileTx]
+     * Break usage for the period/count window down by one dimension: groupBy is transport
+     * (wifi, mobile), state (unknown, background, foreground), metered, roaming or
+     * defaultNetwork (unknown, no, yes). Options may restrict the cells summed: uid, and any
+     * dimension name mapped to one of its values. Resolves to
+     * {groupBy, groups: [{key, rx, tx, total}]} with empty groups omitted. Only Wi-Fi and
+     * mobile are reported: NetworkStats cannot be queried for ethernet or bluetooth.
      */
-    private long[] getTetheringUsage(NetworkStatsManager nsm, long startTime, long endTime, String subscriberId) {
-        long wifiRx = 0, wifiTx = 0;
-        long mobileRx = 0, mobileTx = 0;
+    @ReactMethod
+    public void getUsageBreakdown(String period, int count, String groupBy, ReadableMap options,
+            Promise promise) {
+        if (rejectInvalidPeriod(period, count, promise)) {
+            return;
+        }
+        int dimension = indexOf(DIMENSION_NAMES, groupBy);
+        if (dimension < 0) {
+            promise.reject("ERR_INVALID_DIMENSION", "Allowed values: " + String.join(", ", DIMENSION_NAMES));
+            return;
+        }
 
-        // Query WiFi tethering usage
-        try {
-            NetworkStats wifiStats = nsm.queryDetailsForUid(
-                    ConnectivityManager.TYPE_WIFI, "", startTime, endTime,
-                    NetworkStats.Bucket.UID_TETHERING);
-            NetworkStats.Bucket bucket = new NetworkStats.Bucket();
-            while (wifiStats.hasNextBucket()) {
-                wifiStats.getNextBucket(bucket);
-                wifiRx += bucket.getRxBytes();
-                wifiTx += bucket.getTxBytes();
+        UsageCube.Filter filter = UsageCube.filter();
+        StringBuilder key = new StringBuilder("breakdown:").append(period).append(':').append(count)
+                .append(':').append(groupBy);
+        if (options != null && options.hasKey("uid") && !options.isNull("uid")) {
+            filter.uid(options.getInt("uid"));
+            key.append(":uid=").append(options.getInt("uid"));
+        }
+        for (int d = 0; d < DIMENSION_NAMES.length; d++) {
+            if (options == null || !options.hasKey(DIMENSION_NAMES[d]) || options.isNull(DIMENSION_NAMES[d])) {
+                continue;
             }
-            wifiStats.close();
-        } catch (Exception e) {
-            Log.w("NetworkUsage", "Error querying WiFi tethering: " + e.getMessage());
+            String valueName = options.getString(DIMENSION_NAMES[d]);
+            int value = indexOf(DIMENSION_VALUES[d], valueName);
+            if (value < 0) {
+                promise.reject("ERR_INVALID_FILTER", DIMENSION_NAMES[d] + " must be one of: "
+                        + String.join(", ", DIMENSION_VALUES[d]));
+                return;
+            }
+            filter.where(d, value);
+            key.append(':').append(DIMENSION_NAMES[d]).append('=').append(valueName);
         }
 
-        // Query mobile tethering usage (if subscriberId is available)
-        try {
-            NetworkStats mobileStats = nsm.queryDetailsForUid(
-                    ConnectivityManager.TYPE_MOBILE,
-                    null,
-                    startTime, endTime,
-                    NetworkStats.Bucket.UID_TETHERING);
-            NetworkStats.Bucket bucket = new NetworkStats.Bucket();
-            while (mobileStats.hasNextBucket()) {
-                mobileStats.getNextBucket(bucket);
-                mobileRx += bucket.getRxBytes();
-                mobileTx += bucket.getTxBytes();
+        queryExecutor.submit(key.toString(), getRequestId(options), getTimeoutMs(options), promise,
+                token -> UsagePayloads.toBreakdown(groupBy, DIMENSION_VALUES[dimension],
+                        usageCube(period, count, token).groupBy(dimension, filter)));
+    }
+
+    /**
+     * The cube for a period/count window. Consecutive breakdowns of the same window within
+     * {@link #CUBE_REUSE_MS} slice one cube instead of querying again.
+     */
+    private UsageCube usageCube(String period, int count, QueryToken token) throws IOException {
+        String key = period + ":" + count;
+        synchronized (cubeLock) {
+            if (key.equals(cubeKey) && System.currentTimeMillis() - cubeBuiltAt < CUBE_REUSE_MS) {
+                return cube;
             }
-            mobileStats.close();
-        } catch (Exception e) {
-            Log.w("NetworkUsage", "Error querying mobile tethering: " + e.getMessage());
         }
+        NetworkStatsManager nsm = (NetworkStatsManager) reactContext
+                .getSystemService(Context.NETWORK_STATS_SERVICE);
+        long[] range = UsagePeriods.range(period, count);
+        UsageCube built = UsageCube.collect(new NetworkStatsUsageSource(nsm), range[0], range[1],
+                CUBE_TRANSPORTS, token);
+        synchronized (cubeLock) {
+            cubeKey = key;
+            cubeBuiltAt = System.currentTimeMillis();
+            cube = built;
+        }
+        return built;
+    }
+
+    /**
+     * Per-uid totals for one page of {@link #streamAppNetworkUsage}. The first page always
+     * aggregates afresh; later pages of the same window reuse its table while it is recent.
+     * Ranking is deterministic for a given table, so each page continues the previous one.
+     */
+    private UidUsageTable pagedTable(NetworkStatsManager nsm, String period, int count,
+            boolean detailed, int cursor, QueryToken token) throws IOException {
+        String key = period + ":" + count + ":" + detailed;
+        if (cursor > 0) {
+            synchronized (pageLock) {
+                if (key.equals(pageKey) && System.currentTimeMillis() - pageTableAt < PAGE_SESSION_MS) {
+                    return pageTable;
+                }
+            }
+        }
+        long[] range = UsagePeriods.range(period, count);
+        UidUsageTable table = closedDayCache().aggregate(nsm, range[0], range[1], token);
+        synchronized (pageLock) {
+            pageKey = key;
+            pageTableAt = System.currentTimeMillis();
+            pageTable = table;
+        }
+        return table;
+    }
 
-        return new long[] { wifiRx, wifiTx, mobileRx, mobileTx };
+    /**
+     * Returns device totals as [wifiRx, wifiTx, mobileRx, mobileTx].
+     */
+    private long[] computeTotalNetworkUsage(String period, int count) throws IOException {
+        NetworkStatsManager nsm = (NetworkStatsManager) reactContext
+                .getSystemService(Context.NETWORK_STATS_SERVICE);
+
+        long[] range = UsagePeriods.range(period, count);
+        long[] totals = UsageAggregator.deviceTotals(nsm, range[0], range[1]);
+        usageSnapshots().putTotals(period, count, totals);
+        return totals;
     }
 
     /**
-     * Calculates start/end time for given period and count.
+     * Rejects the promise and returns true if period/count is not a supported range.
      */
-    private long[] getTimeRange(String period, int count) {
-        Calendar cal = Calendar.getInstance();
-        long end = cal.getTimeInMillis();
+    private static boolean rejectInvalidPeriod(String period, int count, Promise promise) {
+        if (!period.equals("hour") && !period.equals("day") && !period.equals("week") && !period.equals("month")) {
+            promise.reject("ERR_INVALID_PERIOD", "Allowed values: hour, day, week, month");
+            return true;
+        }
 
-        switch (period) {
-            case "hour":
-                // For hour period, start from the beginning of the current hour
-                // e.g., if it's 8:30, start from 8:00
-                cal.set(Calendar.MINUTE, 0);
-                cal.set(Calendar.SECOND, 0);
-                cal.set(Calendar.MILLISECOND, 0);
-                break;
-            case "day":
-                // For day period, start from midnight (00:00) of the day
-                // count=1: today's midnight, count=2: yesterday's midnight, etc.
-                cal.add(Calendar.DAY_OF_MONTH, -(count - 1));
-                cal.set(Calendar.HOUR_OF_DAY, 0);
-                cal.set(Calendar.MINUTE, 0);
-                cal.set(Calendar.SECOND, 0);
-                cal.set(Calendar.MILLISECOND, 0);
-                break;
-            case "week":
-                cal.add(Calendar.WEEK_OF_YEAR, -count);
-                break;
-            case "month":
-                cal.add(Calendar.MONTH, -count);
-                break;
+        if (period.equals("hour") && count != 1) {
+            promise.reject("ERR_INVALID_COUNT", "Count must be 1 for hour period");
+            return true;
+        }
+
+        if (period.equals("day") && (count < 1 || count > 7)) {
+            promise.reject("ERR_INVALID_COUNT", "Count must be between 1 and 7");
+            return true;
         }
 
-        long start = cal.getTimeInMillis();
-        return new long[] { start, end };
+        if (period.equals("week") && (count < 1 || count > 4)) {
+            promise.reject("ERR_INVALID_COUNT", "Count must be between 1 and 4");
+            return true;
+        }
+
+        return false;
+    }
+
+    private static String getRequestId(ReadableMap options) {
+        if (options == null || !options.hasKey("requestId") || options.isNull("requestId")) {
+            return null;
+        }
+        return options.getString("requestId");
+    }
+
+    private static int indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int getIntOption(ReadableMap options, String key, int defaultValue) {
+        if (options == null || !options.hasKey(key) || options.isNull(key)) {
+            return defaultValue;
+        }
+        return options.getInt(key);
+    }
+
+    private void emit(String eventName, Object data) {
+        if (reactContext.hasActiveReactInstance()) {
+            reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                    .emit(eventName, data);
+        }
+    }
+
+    private static long getTimeoutMs(ReadableMap options) {
+        if (options == null || !options.hasKey("timeoutMs") || options.isNull("timeoutMs")) {
+            return 0;
+        }
+        return (long) options.getDouble("timeoutMs");
     }
 }
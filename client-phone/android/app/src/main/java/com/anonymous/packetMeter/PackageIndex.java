@@ -0,0 +1,211 @@
+package com.anonymous.packetMeter;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide index of installed packages: uid, label, system and launcher flags, and
+ * version.
+ *
+ * Built on first lookup with one getInstalledPackages call and one launcher query per
+ * category, then patched package by package from PACKAGE_ADDED/REMOVED/REPLACED broadcasts,
+ * so lookups never go through PackageManager. Labels are loaded on first use.
+ */
+final class PackageIndex {
+    private static final String TAG = "NetworkUsage";
+    private static final Entry[] NONE = new Entry[0];
+
+    private static PackageIndex instance;
+
+    private final PackageManager packageManager;
+    private final Map<String, Entry> byPackage = new LinkedHashMap<>();
+    private final Map<Integer, Entry[]> byUid = new HashMap<>();
+    private boolean built;
+    // Bumped on every change, so callers can tell when derived data is stale
+    private int generation;
+    private volatile Listener listener;
+
+    interface Listener {
+        /** Called after a broadcast for the package is applied, outside the index's lock. */
+        void onPackageChanged(String packageName);
+    }
+
+    static final class Entry {
+        final String packageName;
+        final int uid;
+        final boolean systemApp;
+        final boolean hasLauncher;
+        final long versionCode;
+        final long lastUpdateTime;
+        private final ApplicationInfo appInfo;
+        private volatile String label;
+
+        private Entry(PackageInfo info, boolean hasLauncher) {
+            this.packageName = info.packageName;
+            this.appInfo = info.applicationInfo;
+            this.uid = appInfo.uid;
+            this.systemApp = (appInfo.flags
+                    & (ApplicationInfo.FLAG_SYSTEM | ApplicationInfo.FLAG_UPDATED_SYSTEM_APP)) != 0;
+            this.hasLauncher = hasLauncher;
+            this.versionCode = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                    ? info.getLongVersionCode()
+                    : info.versionCode;
+            this.lastUpdateTime = info.lastUpdateTime;
+        }
+
+        /**
+         * System apps without a launcher entry are only listed in detailed mode.
+         */
+        boolean isListed(boolean detailed) {
+            return detailed || !systemApp || hasLauncher;
+        }
+    }
+
+    static synchronized PackageIndex get(Context context) {
+        if (instance == null) {
+            instance = new PackageIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private PackageIndex(Context context) {
+        this.packageManager = context.getPackageManager();
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context receiverContext, Intent intent) {
+                Uri data = intent.getData();
+                if (data != null) {
+                    String packageName = data.getSchemeSpecificPart();
+                    refresh(packageName);
+                    Listener target = listener;
+                    if (target != null) {
+                        target.onPackageChanged(packageName);
+                    }
+                }
+            }
+        }, filter);
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Packages sharing uid, in install-list order; empty if none is known.
+     */
+    synchronized Entry[] packagesForUid(int uid) {
+        ensureBuilt();
+        Entry[] entries = byUid.get(uid);
+        return entries != null ? entries : NONE;
+    }
+
+    synchronized Entry getPackage(String packageName) {
+        ensureBuilt();
+        return byPackage.get(packageName);
+    }
+
+    synchronized int generation() {
+        return generation;
+    }
+
+    String getLabel(Entry entry) {
+        String label = entry.label;
+        if (label == null) {
+            long started = CollectorMetrics.start();
+            label = packageManager.getApplicationLabel(entry.appInfo).toString();
+            entry.label = label;
+            CollectorMetrics.get().record(CollectorMetrics.Phase.METADATA, started);
+        }
+        return label;
+    }
+
+    private void ensureBuilt() {
+        if (built) {
+            return;
+        }
+        long started = CollectorMetrics.start();
+        Set<String> launchable = launchablePackages();
+        List<PackageInfo> packages = packageManager.getInstalledPackages(0);
+        for (PackageInfo info : packages) {
+            if (info.applicationInfo == null) {
+                continue;
+            }
+            byPackage.put(info.packageName, new Entry(info, launchable.contains(info.packageName)));
+        }
+        rebuildUids();
+        built = true;
+        generation++;
+        CollectorMetrics.get().record(CollectorMetrics.Phase.METADATA, started);
+        Log.i(TAG, "Indexed " + byPackage.size() + " packages");
+    }
+
+    /**
+     * Re-read one package after a broadcast; removes it if it is no longer installed.
+     */
+    private synchronized void refresh(String packageName) {
+        if (!built) {
+            // The initial build will see the current state
+            return;
+        }
+        try {
+            PackageInfo info = packageManager.getPackageInfo(packageName, 0);
+            boolean hasLauncher = packageManager.getLaunchIntentForPackage(packageName) != null;
+            byPackage.put(packageName, new Entry(info, hasLauncher));
+        } catch (PackageManager.NameNotFoundException e) {
+            byPackage.remove(packageName);
+        }
+        rebuildUids();
+        generation++;
+    }
+
+    private void rebuildUids() {
+        byUid.clear();
+        for (Entry entry : byPackage.values()) {
+            Entry[] existing = byUid.get(entry.uid);
+            if (existing == null) {
+                byUid.put(entry.uid, new Entry[] { entry });
+            } else {
+                Entry[] grown = Arrays.copyOf(existing, existing.length + 1);
+                grown[existing.length] = entry;
+                byUid.put(entry.uid, grown);
+            }
+        }
+    }
+
+    // Same categories getLaunchIntentForPackage looks for
+    private Set<String> launchablePackages() {
+        Set<String> packages = new HashSet<>();
+        for (String category : new String[] { Intent.CATEGORY_INFO, Intent.CATEGORY_LAUNCHER }) {
+            Intent intent = new Intent(Intent.ACTION_MAIN);
+            intent.addCategory(category);
+            List<ResolveInfo> activities = packageManager.queryIntentActivities(intent, 0);
+            for (ResolveInfo resolveInfo : activities) {
+                packages.add(resolveInfo.activityInfo.packageName);
+            }
+        }
+        return packages;
+    }
+}
@@ -1,34 +1,56 @@
 package com.anonymous.packetMeter;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import com.facebook.react.ReactPackage;
+import com.facebook.react.BaseReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.uimanager.ViewManager;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
-public class PacketMeterPackage implements ReactPackage {
+/**
+ * Registers the native modules lazily: each one is built the first time JS looks it up,
+ * not when the React instance starts.
+ */
+public class PacketMeterPackage extends BaseReactPackage {
 
-    // TODO: Migrate to [BaseReactPackage] and implement [getModule] instead.
-    @NonNull
+    @Nullable
     @Override
-    public List<NativeModule> createNativeModules(@NonNull ReactApplicationContext reactContext) {
-        List<NativeModule> modules = new ArrayList<>();
-
-        // Add all modules to a single package
-        modules.add(new UsageAccessPermission(reactContext));
-        modules.add(new NetworkUsageModule(reactContext));
-
-        return modules;
+    public NativeModule getModule(@NonNull String name, @NonNull ReactApplicationContext reactContext) {
+        switch (name) {
+            case UsageAccessPermission.NAME:
+                return new UsageAccessPermission(reactContext);
+            case NetworkUsageModule.NAME:
+                return new NetworkUsageModule(reactContext);
+            default:
+                return null;
+        }
     }
 
     @NonNull
     @Override
-    public List<ViewManager> createViewManagers(@NonNull ReactApplicationContext reactContext) {
-        return Collections.emptyList();
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return () -> {
+            Map<String, ReactModuleInfo> infos = new HashMap<>();
+            infos.put(UsageAccessPermission.NAME, moduleInfo(UsageAccessPermission.NAME,
+                    UsageAccessPermission.class));
+            infos.put(NetworkUsageModule.NAME, moduleInfo(NetworkUsageModule.NAME,
+                    NetworkUsageModule.class));
+            return infos;
+        };
+    }
+
+    // Plain bridge modules without codegen specs; the new architecture loads them through
+    // the TurboModule interop layer, still on first use
+    private static ReactModuleInfo moduleInfo(String name, Class<? extends NativeModule> moduleClass) {
+        return new ReactModuleInfo(name, moduleClass.getName(),
+                false, // canOverrideExistingModule
+                false, // needsEagerInit
+                false, // isCxxModule
+                false); // isTurboModule
     }
 }
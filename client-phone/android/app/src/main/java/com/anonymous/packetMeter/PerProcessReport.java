@@ -0,0 +1,67 @@
+package com.anonymous.packetMeter;
+
+import android.app.usage.NetworkStats;
+import android.app.usage.NetworkStatsManager;
+import android.content.Context;
+
+import com.anonymous.packetMeter.core.AppUsageRows;
+import com.anonymous.packetMeter.core.QueryToken;
+import com.anonymous.packetMeter.core.UidUsageTable;
+import com.anonymous.packetMeter.core.UsagePeriods;
+
+import java.io.IOException;
+
+/**
+ * Today's per-app report, limited to uids whose counters changed since the last report
+ * committed to {@link ReportCursor}. Shared by the RN module and the background worker.
+ */
+final class PerProcessReport {
+    final String reportId;
+    final long since;
+    final AppUsageRows rows;
+
+    private PerProcessReport(String reportId, long since, AppUsageRows rows) {
+        this.reportId = reportId;
+        this.since = since;
+        this.rows = rows;
+    }
+
+    static PerProcessReport build(Context context, NetworkStatsManager nsm, boolean detailed,
+            QueryToken token) throws IOException {
+        long[] range = UsagePeriods.range("day", 1);
+        UidUsageTable table = ClosedDayCache.get(context).aggregate(nsm, range[0], range[1], token);
+        ReportCursor.Staged staged = ReportCursor.get(context).stage(range[0], range[1], table);
+        // Uids unchanged since the last committed report cannot have crossed a rule since
+        UsageAlerts.get(context).onDayTotals(range[0], table, staged.changedSlots);
+
+        // Only changed uids are resolved to packages
+        PackageIndex packageIndex = PackageIndex.get(context);
+        IconCache iconCache = IconCache.get(context);
+        AppUsageRows rows = new AppUsageRows(staged.changedSlots.length);
+        for (int slot : staged.changedSlots) {
+            token.throwIfCancelled();
+            addRow(rows, table, slot, detailed, packageIndex, iconCache);
+        }
+        return new PerProcessReport(staged.reportId, staged.since, rows);
+    }
+
+    private static void addRow(AppUsageRows rows, UidUsageTable table, int slot, boolean detailed,
+            PackageIndex packageIndex, IconCache iconCache) {
+        int uid = table.uidAt(slot);
+        if (uid == NetworkStats.Bucket.UID_TETHERING) {
+            rows.add("com.android.tethering", "Tethering / Hotspot", null, -1,
+                    table.wifiRxAt(slot), table.wifiTxAt(slot),
+                    table.mobileRxAt(slot), table.mobileTxAt(slot));
+            return;
+        }
+        for (PackageIndex.Entry entry : packageIndex.packagesForUid(uid)) {
+            if (!entry.isListed(detailed)) {
+                continue;
+            }
+            rows.add(entry.packageName, packageIndex.getLabel(entry), iconCache.getIconHash(entry.packageName),
+                    uid, table.wifiRxAt(slot), table.wifiTxAt(slot),
+                    table.mobileRxAt(slot), table.mobileTxAt(slot));
+            return;
+        }
+    }
+}
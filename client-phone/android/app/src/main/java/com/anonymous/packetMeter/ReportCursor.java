@@ -0,0 +1,157 @@
+package com.anonymous.packetMeter;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.anonymous.packetMeter.core.UidUsageTable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Durable cursor for per-process reports: the day window and per-uid counters that the
+ * server last acknowledged.
+ *
+ * {@link #stage} compares fresh day totals with the cursor and returns the uids that
+ * changed; the staged totals only become the cursor once {@link #commit} is called with
+ * the returned report id, so a failed upload is simply resent next time.
+ */
+final class ReportCursor {
+    private static final String TAG = "NetworkUsage";
+    private static final String CURSOR_FILE = "report-cursor.bin";
+    private static final int FILE_VERSION = 1;
+
+    private static ReportCursor instance;
+
+    private final File file;
+
+    // Last acknowledged report; an empty table means nothing was reported for dayStart yet.
+    private long dayStart;
+    private long reportedAt;
+    private UidUsageTable reported;
+
+    // Totals waiting for commit()
+    private String pendingId;
+    private long pendingDayStart;
+    private long pendingAt;
+    private UidUsageTable pending;
+
+    static synchronized ReportCursor get(Context context) {
+        if (instance == null) {
+            instance = new ReportCursor(new File(context.getFilesDir(), CURSOR_FILE));
+        }
+        return instance;
+    }
+
+    private ReportCursor(File file) {
+        this.file = file;
+        this.reported = new UidUsageTable();
+        read();
+    }
+
+    static final class Staged {
+        final String reportId;
+        // Time of the last acknowledged report in this day window, or 0 if none
+        final long since;
+        final int[] changedSlots;
+
+        private Staged(String reportId, long since, int[] changedSlots) {
+            this.reportId = reportId;
+            this.since = since;
+            this.changedSlots = changedSlots;
+        }
+    }
+
+    /**
+     * Stage day totals for [windowStart, now) and return the slots of {@code table} whose
+     * counters differ from the last acknowledged report. A new window starts from scratch.
+     */
+    synchronized Staged stage(long windowStart, long now, UidUsageTable table) {
+        boolean sameWindow = windowStart == dayStart;
+        int[] changed = new int[table.size()];
+        int count = 0;
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (table.isEmpty(slot) || table.totalAt(slot) == 0) {
+                continue;
+            }
+            int previous = sameWindow ? reported.indexOf(table.uidAt(slot)) : -1;
+            if (previous < 0
+                    || reported.wifiRxAt(previous) != table.wifiRxAt(slot)
+                    || reported.wifiTxAt(previous) != table.wifiTxAt(slot)
+                    || reported.mobileRxAt(previous) != table.mobileRxAt(slot)
+                    || reported.mobileTxAt(previous) != table.mobileTxAt(slot)) {
+                changed[count++] = slot;
+            }
+        }
+
+        pendingId = UUID.randomUUID().toString();
+        pendingDayStart = windowStart;
+        pendingAt = now;
+        pending = table;
+        return new Staged(pendingId, sameWindow ? reportedAt : 0, Arrays.copyOf(changed, count));
+    }
+
+    /**
+     * Advance the cursor to the totals staged under reportId. Returns false if that report
+     * is no longer the staged one, in which case the cursor is left unchanged.
+     */
+    synchronized boolean commit(String reportId) throws IOException {
+        if (pendingId == null || !pendingId.equals(reportId)) {
+            return false;
+        }
+        write(pendingDayStart, pendingAt, pending);
+        dayStart = pendingDayStart;
+        reportedAt = pendingAt;
+        reported = pending;
+        pendingId = null;
+        pending = null;
+        return true;
+    }
+
+    private void read() {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION) {
+                return;
+            }
+            long storedDayStart = in.readLong();
+            long storedAt = in.readLong();
+            reported = UidUsageTable.readFrom(in);
+            dayStart = storedDayStart;
+            reportedAt = storedAt;
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable report cursor: " + e.getMessage());
+            reported = new UidUsageTable();
+            file.delete();
+        }
+    }
+
+    private void write(long windowStart, long at, UidUsageTable table) throws IOException {
+        File tmp = new File(file.getParentFile(), CURSOR_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(FILE_VERSION);
+            out.writeLong(windowStart);
+            out.writeLong(at);
+            table.writeTo(out);
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+}
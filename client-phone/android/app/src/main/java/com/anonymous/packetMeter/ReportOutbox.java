@@ -0,0 +1,431 @@
+package com.anonymous.packetMeter;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.anonymous.packetMeter.core.AppUsageRows;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Durable queue of per-process reports waiting for upload.
+ *
+ * Reports are appended to segment files under {@code filesDir/report-outbox}. A segment
+ * holds framed, checksummed records: app records assign a segment-local id to a package
+ * with its display data, report records carry a timestamp and (id, rx, tx) rows. Flushing
+ * seals the open segment and uploads whole segments oldest-first as gzipped batches to
+ * {@code /api/v1/traffic/per-process/batch}; a segment file is deleted once its batch is
+ * acknowledged, so a torn write or a failed upload never loses an older report.
+ */
+final class ReportOutbox {
+    private static final String TAG = "NetworkUsage";
+    private static final String OUTBOX_DIR = "report-outbox";
+    private static final int MAGIC = 0x504d4f42; // "PMOB"
+    private static final int VERSION = 1;
+    private static final byte RECORD_APP = 1;
+    private static final byte RECORD_REPORT = 2;
+
+    private static final long MAX_SEGMENT_BYTES = 256 * 1024;
+    // Oldest segments are dropped beyond this, so a device that never reaches the server
+    // does not grow the outbox without bound
+    private static final long MAX_OUTBOX_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_BATCH_REPORTS = 200;
+    private static final int MAX_BATCH_ROWS = 20_000;
+
+    static final String BATCH_PATH = "/api/v1/traffic/per-process/batch";
+
+    private static ReportOutbox instance;
+
+    private final File dir;
+    private final IconUris iconUris;
+    private long nextSequence = -1;
+
+    // Open segment, or null when the next append starts a new one
+    private File active;
+    private FileOutputStream activeFile;
+    private DataOutputStream activeOut;
+    private Map<String, Integer> activeIds;
+
+    static synchronized ReportOutbox get(Context context) {
+        if (instance == null) {
+            instance = new ReportOutbox(new File(context.getFilesDir(), OUTBOX_DIR),
+                    IconCache.get(context)::getIconDataUri);
+        }
+        return instance;
+    }
+
+    ReportOutbox(File dir, IconUris iconUris) {
+        this.dir = dir;
+        this.iconUris = iconUris;
+    }
+
+    /** Data URI sent on the wire for a stored icon hash, or null; see {@link IconCache}. */
+    interface IconUris {
+        String dataUri(String iconHash);
+    }
+
+    static final class FlushResult {
+        final int batches;
+        final int reports;
+        // False if segments remain because the server rejected or could not be reached
+        final boolean complete;
+
+        FlushResult(int batches, int reports, boolean complete) {
+            this.batches = batches;
+            this.reports = reports;
+            this.complete = complete;
+        }
+    }
+
+    /**
+     * Append one report and sync it to storage before returning. If a write fails the
+     * segment is sealed where it is, so the next append starts a new one; the reader stops
+     * at the torn record and keeps everything before it.
+     */
+    synchronized void append(long timestamp, AppUsageRows rows) throws IOException {
+        if (rows.size() == 0) {
+            return;
+        }
+        if (active == null || active.length() >= MAX_SEGMENT_BYTES) {
+            openSegment();
+        }
+
+        try {
+            // Ids are registered only once their app records are on disk
+            Map<String, Integer> newIds = new HashMap<>();
+            for (int i = 0; i < rows.size(); i++) {
+                String packageName = rows.packageName(i);
+                if (activeIds.containsKey(packageName) || newIds.containsKey(packageName)) {
+                    continue;
+                }
+                int id = activeIds.size() + newIds.size();
+                newIds.put(packageName, id);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream record = new DataOutputStream(bytes);
+                record.writeByte(RECORD_APP);
+                record.writeInt(id);
+                record.writeUTF(packageName);
+                writeNullableUTF(record, rows.appName(i));
+                writeNullableUTF(record, rows.iconHash(i));
+                writeFramed(bytes.toByteArray());
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + rows.size() * 20);
+            DataOutputStream record = new DataOutputStream(bytes);
+            record.writeByte(RECORD_REPORT);
+            record.writeLong(timestamp);
+            record.writeInt(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                Integer id = activeIds.get(rows.packageName(i));
+                record.writeInt(id != null ? id : newIds.get(rows.packageName(i)));
+                record.writeLong(rows.wifiRx(i) + rows.mobileRx(i));
+                record.writeLong(rows.wifiTx(i) + rows.mobileTx(i));
+            }
+            writeFramed(bytes.toByteArray());
+            activeOut.flush();
+            activeFile.getFD().sync();
+            activeIds.putAll(newIds);
+        } catch (IOException e) {
+            closeActive();
+            throw e;
+        }
+    }
+
+    /**
+     * Upload every pending segment. Throws IOException only when the server cannot be
+     * reached. Rejected batches stay queued, except those the server will never accept
+     * (HTTP 400 malformed, 403 not allowed), which are dropped so they cannot block newer
+     * reports.
+     */
+    synchronized FlushResult flush(String url, String deviceToken) throws IOException {
+        closeActive();
+        File[] segments = pendingSegments();
+        int batches = 0;
+        int reports = 0;
+        int next = 0;
+        while (next < segments.length) {
+            Batch batch = new Batch(iconUris);
+            int end = next;
+            while (end < segments.length && (end == next || !batch.isFull())) {
+                batch.add(segments[end]);
+                end++;
+            }
+            File[] sent = Arrays.copyOfRange(segments, next, end);
+            if (batch.reports.length() == 0) {
+                delete(sent);
+                next = end;
+                continue;
+            }
+
+            ReportUploader.Response response;
+            try {
+                response = ReportUploader.postGzip(url, deviceToken, gzip(batch.toJson()));
+            } catch (JSONException e) {
+                throw new IOException("Could not encode report batch", e);
+            }
+            if (response.status == 400 || response.status == 403) {
+                Log.w(TAG, "Dropping " + batch.reports.length() + " rejected outbox reports: " + response.body);
+                delete(sent);
+            } else if (!response.isSuccessful()) {
+                Log.w(TAG, "Outbox flush failed " + response.status + ": " + response.body);
+                return new FlushResult(batches, reports, false);
+            } else {
+                delete(sent);
+                batches++;
+                reports += batch.reports.length();
+            }
+            next = end;
+        }
+        return new FlushResult(batches, reports, true);
+    }
+
+    /** {segments, bytes} currently waiting for upload. */
+    synchronized long[] pendingSize() {
+        File[] segments = pendingSegments();
+        long bytes = 0;
+        for (File segment : segments) {
+            bytes += segment.length();
+        }
+        return new long[] { segments.length, bytes };
+    }
+
+    private void openSegment() throws IOException {
+        closeActive();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        trimToLimit();
+        if (nextSequence < 0) {
+            File[] existing = pendingSegments();
+            nextSequence = existing.length == 0 ? 0 : sequenceOf(existing[existing.length - 1]) + 1;
+        }
+        active = new File(dir, String.format("%019d.seg", nextSequence++));
+        activeFile = new FileOutputStream(active);
+        activeOut = new DataOutputStream(new BufferedOutputStream(activeFile));
+        activeOut.writeInt(MAGIC);
+        activeOut.writeInt(VERSION);
+        activeIds = new HashMap<>();
+    }
+
+    private void closeActive() {
+        if (activeOut != null) {
+            try {
+                activeOut.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing outbox segment: " + e.getMessage());
+            }
+        }
+        active = null;
+        activeFile = null;
+        activeOut = null;
+        activeIds = null;
+    }
+
+    private void writeFramed(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        activeOut.writeInt(payload.length);
+        activeOut.write(payload);
+        activeOut.writeInt((int) crc.getValue());
+    }
+
+    private void trimToLimit() {
+        File[] segments = pendingSegments();
+        long total = 0;
+        for (File segment : segments) {
+            total += segment.length();
+        }
+        for (int i = 0; i < segments.length && total > MAX_OUTBOX_BYTES; i++) {
+            total -= segments[i].length();
+            Log.w(TAG, "Outbox full, dropping " + segments[i].getName());
+            segments[i].delete();
+        }
+    }
+
+    // Sealed and open segments, oldest first
+    private File[] pendingSegments() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".seg"));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+        return files;
+    }
+
+    private static long sequenceOf(File segment) {
+        String name = segment.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - 4));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void delete(File[] segments) {
+        for (File segment : segments) {
+            segment.delete();
+        }
+    }
+
+    private static byte[] gzip(String json) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length() / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Request body: {@code Apps} is the batch dictionary with registration data, and each
+     * report lists its apps as [index into Apps, TotalRx, TotalTx]. Segments store the local
+     * icon hash; {@code IconHash} on the wire is the icon's data URI, which the dashboard
+     * renders directly.
+     */
+    private static final class Batch {
+        final IconUris iconUris;
+        final JSONArray apps = new JSONArray();
+        final JSONArray reports = new JSONArray();
+        final Map<String, Integer> appIndex = new HashMap<>();
+        int rows;
+
+        Batch(IconUris iconUris) {
+            this.iconUris = iconUris;
+        }
+
+        boolean isFull() {
+            return reports.length() >= MAX_BATCH_REPORTS || rows >= MAX_BATCH_ROWS;
+        }
+
+        /**
+         * Add every intact record of a segment; reading stops at a torn or corrupt tail.
+         */
+        void add(File segment) {
+            List<String> localIds = new ArrayList<>();
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(segment)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    Log.w(TAG, "Skipping unrecognized outbox segment " + segment.getName());
+                    return;
+                }
+                while (true) {
+                    byte[] payload = readFramed(in);
+                    if (payload == null) {
+                        return;
+                    }
+                    readRecord(new DataInputStream(new ByteArrayInputStream(payload)), localIds);
+                }
+            } catch (EOFException e) {
+                // Segment ends mid-record; everything before it is intact
+            } catch (IOException | JSONException e) {
+                Log.w(TAG, "Error reading outbox segment " + segment.getName() + ": " + e.getMessage());
+            }
+        }
+
+        private void readRecord(DataInputStream record, List<String> localIds)
+                throws IOException, JSONException {
+            byte type = record.readByte();
+            if (type == RECORD_APP) {
+                int id = record.readInt();
+                String packageName = record.readUTF();
+                String appName = readNullableUTF(record);
+                String iconHash = readNullableUTF(record);
+                while (localIds.size() <= id) {
+                    localIds.add(null);
+                }
+                localIds.set(id, packageName);
+                if (!appIndex.containsKey(packageName)) {
+                    appIndex.put(packageName, appIndex.size());
+                    JSONObject app = new JSONObject();
+                    app.put("Identifier", packageName);
+                    app.put("DisplayName", appName != null ? appName : packageName);
+                    // Null if the icon was evicted from the cache dir; the dashboard shows initials
+                    String iconUri = iconUris.dataUri(iconHash);
+                    app.put("IconHash", iconUri != null ? iconUri : JSONObject.NULL);
+                    apps.put(app);
+                }
+            } else if (type == RECORD_REPORT) {
+                long timestamp = record.readLong();
+                int count = record.readInt();
+                JSONArray reportApps = new JSONArray();
+                for (int i = 0; i < count; i++) {
+                    int id = record.readInt();
+                    long rx = record.readLong();
+                    long tx = record.readLong();
+                    String packageName = id < localIds.size() ? localIds.get(id) : null;
+                    if (packageName == null) {
+                        continue;
+                    }
+                    reportApps.put(new JSONArray().put(appIndex.get(packageName)).put(rx).put(tx));
+                }
+                String iso = UsagePayloads.isoTimestamp(timestamp);
+                JSONObject report = new JSONObject();
+                report.put("Timestamp", iso);
+                report.put("Date", iso.substring(0, 10));
+                report.put("Apps", reportApps);
+                reports.put(report);
+                rows += count;
+            }
+        }
+
+        private static byte[] readFramed(DataInputStream in) throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            if (length <= 0 || length > MAX_SEGMENT_BYTES * 4) {
+                throw new IOException("Corrupt record length " + length);
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            int expected = in.readInt();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != expected) {
+                throw new IOException("Checksum mismatch");
+            }
+            return payload;
+        }
+
+        String toJson() throws JSONException {
+            JSONObject body = new JSONObject();
+            body.put("Apps", apps);
+            body.put("Reports", reports);
+            return body.toString();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.anonymous.packetMeter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal JSON POST client for the report endpoints, using the same headers as the
+ * JS reporter.
+ */
+final class ReportUploader {
+    private static final int TIMEOUT_MS = 5000;
+    private static final String USER_AGENT = "PacketMeter-android-Daemon/0.1.0";
+
+    static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        boolean isSuccessful() {
+            return status >= 200 && status < 300;
+        }
+    }
+
+    private ReportUploader() {
+    }
+
+    /**
+     * POST a JSON body. Throws IOException only for transport failures; HTTP errors are
+     * returned as a response.
+     */
+    static Response post(String url, String deviceToken, String json) throws IOException {
+        return send(url, deviceToken, json.getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    /**
+     * POST a JSON body that is already gzip-compressed.
+     */
+    static Response postGzip(String url, String deviceToken, byte[] gzippedJson) throws IOException {
+        return send(url, deviceToken, gzippedJson, true);
+    }
+
+    private static Response send(String url, String deviceToken, byte[] body, boolean gzip)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setRequestProperty("Authorization", "Bearer " + deviceToken);
+            connection.setRequestProperty("User-Agent", USER_AGENT);
+            if (gzip) {
+                connection.setRequestProperty("Content-Encoding", "gzip");
+            }
+
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+
+            int status = connection.getResponseCode();
+            InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            return new Response(status, readBody(in));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = stream.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
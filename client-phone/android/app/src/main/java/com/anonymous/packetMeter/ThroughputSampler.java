@@ -0,0 +1,244 @@
+package com.anonymous.packetMeter;
+
+import android.app.usage.NetworkStatsManager;
+import android.net.TrafficStats;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.anonymous.packetMeter.core.QueryToken;
+import com.anonymous.packetMeter.core.UidUsageTable;
+
+import java.io.IOException;
+
+/**
+ * Live per-uid and device throughput, sampled on one background thread.
+ *
+ * Each tick reads cumulative byte counters into preallocated ring buffers and derives
+ * rates over the last few samples, so sampling itself allocates nothing. Since Android 7
+ * TrafficStats only reports the calling app's own uid; other uids fall back to a
+ * NetworkStats summary of the time since the previous one, refreshed every
+ * {@link #FALLBACK_INTERVAL_MS}, so their rates update less often. That binder query runs
+ * on a second thread into one reused table, so a slow query never delays a tick.
+ */
+final class ThroughputSampler {
+    private static final String TAG = "NetworkUsage";
+    private static final int RING_SIZE = 8;
+    private static final int SMOOTHING_SAMPLES = 3;
+    static final long FALLBACK_INTERVAL_MS = 10_000;
+
+    interface Listener {
+        /** Called on the sampler thread after every tick. */
+        void onSample(ThroughputSampler sampler);
+    }
+
+    private final NetworkStatsManager nsm;
+    private final int[] uids;
+    private final boolean[] supported;
+    private final long intervalMs;
+    private final Listener listener;
+
+    // Counters of uid i at ring position s live at [i * RING_SIZE + s]
+    private final long[] rxRing;
+    private final long[] txRing;
+    private final long[] totalRxRing = new long[RING_SIZE];
+    private final long[] totalTxRing = new long[RING_SIZE];
+    private final long[] timeRing = new long[RING_SIZE];
+    private int head = -1;
+    private int filled;
+
+    // Bytes per second from the latest tick
+    private final double[] rxRate;
+    private final double[] txRate;
+    private double totalRxRate;
+    private double totalTxRate;
+
+    // NetworkStats fallback for uids TrafficStats does not report. The sampler thread owns
+    // these; the fallback thread only fills the table and fallbackTo/fallbackOk between
+    // a post to it and the post back.
+    private final boolean needsFallback;
+    private final UidUsageTable fallbackTable;
+    private long fallbackFrom;
+    private long fallbackTo;
+    private boolean fallbackOk;
+    private long lastFallbackAt;
+    private boolean fallbackPending;
+    private boolean fallbackFailed;
+
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final HandlerThread fallbackThread;
+    private final Handler fallbackHandler;
+    private final Runnable tick = this::sample;
+    private final Runnable queryFallback = this::queryFallback;
+    private final Runnable applyFallback = this::applyFallback;
+
+    ThroughputSampler(NetworkStatsManager nsm, int[] uids, long intervalMs, Listener listener) {
+        this.nsm = nsm;
+        this.uids = uids.clone();
+        this.intervalMs = intervalMs;
+        this.listener = listener;
+
+        int count = this.uids.length;
+        this.supported = new boolean[count];
+        boolean fallback = false;
+        for (int i = 0; i < count; i++) {
+            supported[i] = TrafficStats.getUidRxBytes(this.uids[i]) != TrafficStats.UNSUPPORTED;
+            fallback |= !supported[i];
+        }
+        this.needsFallback = fallback;
+        this.rxRing = new long[count * RING_SIZE];
+        this.txRing = new long[count * RING_SIZE];
+        this.rxRate = new double[count];
+        this.txRate = new double[count];
+        this.fallbackFrom = System.currentTimeMillis();
+        this.lastFallbackAt = SystemClock.elapsedRealtime();
+
+        this.thread = new HandlerThread("NetworkUsage-sampler", Process.THREAD_PRIORITY_BACKGROUND);
+        this.thread.start();
+        this.handler = new Handler(thread.getLooper());
+        if (fallback) {
+            this.fallbackTable = new UidUsageTable();
+            this.fallbackThread = new HandlerThread("NetworkUsage-fallback",
+                    Process.THREAD_PRIORITY_BACKGROUND);
+            this.fallbackThread.start();
+            this.fallbackHandler = new Handler(fallbackThread.getLooper());
+        } else {
+            this.fallbackTable = null;
+            this.fallbackThread = null;
+            this.fallbackHandler = null;
+        }
+    }
+
+    void start() {
+        handler.post(tick);
+    }
+
+    void stop() {
+        handler.removeCallbacks(tick);
+        thread.quitSafely();
+        if (fallbackThread != null) {
+            fallbackThread.quitSafely();
+        }
+    }
+
+    int uidCount() {
+        return uids.length;
+    }
+
+    int uidAt(int i) {
+        return uids[i];
+    }
+
+    /** False if the uid's rate comes from the slower NetworkStats fallback. */
+    boolean isRealtime(int i) {
+        return supported[i];
+    }
+
+    double rxRate(int i) {
+        return rxRate[i];
+    }
+
+    double txRate(int i) {
+        return txRate[i];
+    }
+
+    double totalRxRate() {
+        return totalRxRate;
+    }
+
+    double totalTxRate() {
+        return totalTxRate;
+    }
+
+    private void sample() {
+        long now = SystemClock.elapsedRealtime();
+        head = (head + 1) % RING_SIZE;
+        if (filled < RING_SIZE) {
+            filled++;
+        }
+        timeRing[head] = now;
+        totalRxRing[head] = TrafficStats.getTotalRxBytes();
+        totalTxRing[head] = TrafficStats.getTotalTxBytes();
+        for (int i = 0; i < uids.length; i++) {
+            if (supported[i]) {
+                rxRing[i * RING_SIZE + head] = TrafficStats.getUidRxBytes(uids[i]);
+                txRing[i * RING_SIZE + head] = TrafficStats.getUidTxBytes(uids[i]);
+            }
+        }
+
+        int back = Math.min(filled - 1, SMOOTHING_SAMPLES);
+        if (back > 0) {
+            int from = (head - back + RING_SIZE) % RING_SIZE;
+            double seconds = (now - timeRing[from]) / 1000.0;
+            totalRxRate = rate(totalRxRing[head], totalRxRing[from], seconds);
+            totalTxRate = rate(totalTxRing[head], totalTxRing[from], seconds);
+            for (int i = 0; i < uids.length; i++) {
+                if (supported[i]) {
+                    rxRate[i] = rate(rxRing[i * RING_SIZE + head], rxRing[i * RING_SIZE + from], seconds);
+                    txRate[i] = rate(txRing[i * RING_SIZE + head], txRing[i * RING_SIZE + from], seconds);
+                }
+            }
+        }
+
+        if (needsFallback && !fallbackFailed && !fallbackPending
+                && now - lastFallbackAt >= FALLBACK_INTERVAL_MS) {
+            fallbackPending = true;
+            lastFallbackAt = now;
+            fallbackHandler.post(queryFallback);
+        }
+
+        try {
+            listener.onSample(this);
+        } catch (Exception e) {
+            Log.w(TAG, "Throughput listener failed: " + e.getMessage());
+        }
+        handler.postDelayed(tick, intervalMs);
+    }
+
+    // On the fallback thread: usage since the previous fallback query
+    private void queryFallback() {
+        long to = System.currentTimeMillis();
+        boolean ok = true;
+        fallbackTable.clear();
+        try {
+            UsageAggregator.aggregateInto(nsm, fallbackFrom, to, fallbackTable, QueryToken.NONE);
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Throughput fallback disabled: " + e.getMessage());
+            ok = false;
+        }
+        fallbackTo = to;
+        fallbackOk = ok;
+        handler.post(applyFallback);
+    }
+
+    private void applyFallback() {
+        fallbackPending = false;
+        if (!fallbackOk) {
+            fallbackFailed = true;
+            return;
+        }
+        double seconds = (fallbackTo - fallbackFrom) / 1000.0;
+        for (int i = 0; i < uids.length; i++) {
+            if (supported[i]) {
+                continue;
+            }
+            int slot = fallbackTable.indexOf(uids[i]);
+            long rx = slot < 0 ? 0 : fallbackTable.wifiRxAt(slot) + fallbackTable.mobileRxAt(slot);
+            long tx = slot < 0 ? 0 : fallbackTable.wifiTxAt(slot) + fallbackTable.mobileTxAt(slot);
+            rxRate[i] = rate(rx, 0, seconds);
+            txRate[i] = rate(tx, 0, seconds);
+        }
+        fallbackFrom = fallbackTo;
+    }
+
+    // Counters can go backwards across interface resets; report those intervals as idle
+    private static double rate(long current, long previous, double seconds) {
+        if (seconds <= 0 || current < previous) {
+            return 0;
+        }
+        return (current - previous) / seconds;
+    }
+}
@@ -4,27 +4,68 @@ import android.app.AppOpsManager;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
 import android.os.Binder;
 import android.os.Build;
 import android.provider.Settings;
 import android.util.Log;
 
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.LifecycleEventListener;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+/**
+ * Usage access state for JS. The state is checked once and then kept current by an
+ * AppOps watcher on OPSTR_GET_USAGE_STATS (re-checked on resume, in case a device does not
+ * report the change), so reads are in-memory and changes arrive as UsageAccessChanged
+ * events ({granted}).
+ */
+public class UsageAccessPermission extends ReactContextBaseJavaModule implements LifecycleEventListener {
+  static final String NAME = "UsageAccessPermission";
+  static final String EVENT_CHANGED = "UsageAccessChanged";
 
-public class UsageAccessPermission extends ReactContextBaseJavaModule {
   private final ReactApplicationContext reactContext;
+  private final AppOpsManager appOps;
+  private final AppOpsManager.OnOpChangedListener opWatcher = (op, packageName) -> refresh();
+  private volatile boolean granted;
 
   public UsageAccessPermission(ReactApplicationContext context) {
     super(context);
     this.reactContext = context;
+    this.appOps = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
+    this.granted = check();
+    appOps.startWatchingMode(AppOpsManager.OPSTR_GET_USAGE_STATS, context.getPackageName(), opWatcher);
+    context.addLifecycleEventListener(this);
   }
 
   @Override
   public String getName() {
-    return "UsageAccessPermission";
+    return NAME;
+  }
+
+  @Override
+  public void invalidate() {
+    appOps.stopWatchingMode(opWatcher);
+    reactContext.removeLifecycleEventListener(this);
+    super.invalidate();
+  }
+
+  @Override
+  public void onHostResume() {
+    refresh();
+  }
+
+  @Override
+  public void onHostPause() {
+  }
+
+  @Override
+  public void onHostDestroy() {
   }
 
   /**
@@ -46,34 +87,67 @@ public class UsageAccessPermission extends ReactContextBaseJavaModule {
    */
   @ReactMethod
   public void hasUsageAccess(Promise promise) {
+    promise.resolve(granted);
+  }
+
+  /**
+   * Synchronous form of {@link #hasUsageAccess}.
+   */
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  public boolean hasUsageAccessSync() {
+    return granted;
+  }
+
+  private synchronized void refresh() {
+    boolean current = check();
+    if (current == granted) {
+      return;
+    }
+    granted = current;
+    if (reactContext.hasActiveReactInstance()) {
+      WritableMap event = Arguments.createMap();
+      event.putBoolean("granted", current);
+      reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+          .emit(EVENT_CHANGED, event);
+    }
+  }
+
+  private boolean check() {
     try {
-      Context context = reactContext.getApplicationContext();
-      AppOpsManager appOps = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
-      ApplicationInfo appInfo = context.getPackageManager().getApplicationInfo(context.getPackageName(), 0);
-
-      int mode;
-      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-        mode = appOps.unsafeCheckOpNoThrow(
-            AppOpsManager.OPSTR_GET_USAGE_STATS,
-            appInfo.uid,
-            appInfo.packageName);
-      } else {
-        mode = appOps.checkOpNoThrow(
-            AppOpsManager.OPSTR_GET_USAGE_STATS,
-            appInfo.uid,
-            appInfo.packageName);
-      }
-
-      boolean granted = (mode == AppOpsManager.MODE_ALLOWED);
-
-      // Double-check via Settings API (some OEMs override AppOps result)
-      if (!granted) {
-        granted = Settings.canDrawOverlays(context); // optional sanity check
-      }
-
-      promise.resolve(granted);
+      return isGranted(reactContext.getApplicationContext());
     } catch (Exception e) {
-      promise.reject("ERR_USAGE_CHECK", e);
+      Log.w("UsageAccess", "Usage access check failed: " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Check PACKAGE_USAGE_STATS without a React context, e.g. from the background worker.
+   */
+  static boolean isGranted(Context context) throws PackageManager.NameNotFoundException {
+    AppOpsManager appOps = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
+    ApplicationInfo appInfo = context.getPackageManager().getApplicationInfo(context.getPackageName(), 0);
+
+    int mode;
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      mode = appOps.unsafeCheckOpNoThrow(
+          AppOpsManager.OPSTR_GET_USAGE_STATS,
+          appInfo.uid,
+          appInfo.packageName);
+    } else {
+      mode = appOps.checkOpNoThrow(
+          AppOpsManager.OPSTR_GET_USAGE_STATS,
+          appInfo.uid,
+          appInfo.packageName);
     }
+
+    boolean granted = (mode == AppOpsManager.MODE_ALLOWED);
+
+    // Double-check via Settings API (some OEMs override AppOps result)
+    if (!granted) {
+      granted = Settings.canDrawOverlays(context); // optional sanity check
+    }
+
+    return granted;
   }
 }
@@ -0,0 +1,44 @@
+package com.anonymous.packetMeter;
+
+import android.app.usage.NetworkStatsManager;
+
+import com.anonymous.packetMeter.core.QueryToken;
+import com.anonymous.packetMeter.core.SummaryAggregator;
+import com.anonymous.packetMeter.core.UidUsageTable;
+
+import java.io.IOException;
+
+/**
+ * NetworkStats entry points: per-uid aggregation through the core
+ * {@link SummaryAggregator} and device-wide totals.
+ */
+final class UsageAggregator {
+
+    private UsageAggregator() {
+    }
+
+    /**
+     * Aggregate Wi-Fi and mobile usage per uid for the given time range.
+     */
+    static UidUsageTable aggregate(NetworkStatsManager nsm, long startTime, long endTime,
+            QueryToken token) throws IOException {
+        return SummaryAggregator.aggregate(new NetworkStatsUsageSource(nsm), startTime, endTime, token);
+    }
+
+    /**
+     * Aggregate per-uid usage for the given time range into an existing table.
+     */
+    static void aggregateInto(NetworkStatsManager nsm, long startTime, long endTime,
+            UidUsageTable table, QueryToken token) throws IOException {
+        SummaryAggregator.aggregateInto(new NetworkStatsUsageSource(nsm), startTime, endTime,
+                table, token);
+    }
+
+    /**
+     * Device-wide totals for the given time range as [wifiRx, wifiTx, mobileRx, mobileTx].
+     */
+    static long[] deviceTotals(NetworkStatsManager nsm, long startTime, long endTime)
+            throws IOException {
+        return SummaryAggregator.deviceTotals(new NetworkStatsUsageSource(nsm), startTime, endTime);
+    }
+}
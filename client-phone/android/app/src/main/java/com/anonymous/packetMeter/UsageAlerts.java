@@ -0,0 +1,318 @@
+package com.anonymous.packetMeter;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.usage.NetworkStatsManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import com.anonymous.packetMeter.core.QueryToken;
+import com.anonymous.packetMeter.core.UidUsageTable;
+import com.anonymous.packetMeter.core.UsageAlertEvaluator;
+import com.anonymous.packetMeter.core.UsagePeriods;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide usage alert rules, persisted in SharedPreferences and evaluated natively
+ * whenever today's per-uid totals are computed.
+ *
+ * Crossings go to the registered {@link Listener} (the RN module while JS is running); if it
+ * does not show them, a notification is posted instead. Fired state is saved per day window,
+ * so a restarted process does not repeat alerts.
+ */
+final class UsageAlerts {
+    private static final String TAG = "NetworkUsage";
+    private static final String PREFS = "packetmeter.usage-alerts";
+    private static final String KEY_RULES = "rules";
+    private static final String KEY_WINDOW = "windowStart";
+    private static final String KEY_FIRED = "fired";
+    private static final String CHANNEL_ID = "usage-alerts";
+    private static final String[] KIND_NAMES = { "quota", "spike" };
+
+    private static UsageAlerts instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final UsageAlertEvaluator evaluator = new UsageAlertEvaluator();
+    private final Map<String, String> labels = new HashMap<>();
+    private static volatile Listener listener;
+
+    interface Listener {
+        /** Returns true if the alert was shown to the user, so no notification is needed. */
+        boolean onAlert(Alert alert);
+    }
+
+    static final class Alert {
+        final UsageAlertEvaluator.Rule rule;
+        final String label;
+        final long value;
+        final long windowStart;
+        final long timestamp;
+
+        private Alert(UsageAlertEvaluator.Rule rule, String label, long value, long windowStart,
+                long timestamp) {
+            this.rule = rule;
+            this.label = label;
+            this.value = value;
+            this.windowStart = windowStart;
+            this.timestamp = timestamp;
+        }
+    }
+
+    static synchronized UsageAlerts get(Context context) {
+        if (instance == null) {
+            instance = new UsageAlerts(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private UsageAlerts(Context context) {
+        this.context = context;
+        this.prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        load();
+    }
+
+    /** Static so the RN module can register without loading the rules. */
+    static void setListener(Listener listener) {
+        UsageAlerts.listener = listener;
+    }
+
+    /**
+     * Replace all rules; labels maps rule ids to the text shown when they fire and may omit
+     * rules. Rules keeping their id keep their fired state for today.
+     */
+    synchronized void setRules(List<UsageAlertEvaluator.Rule> rules, Map<String, String> ruleLabels)
+            throws JSONException {
+        JSONArray stored = new JSONArray();
+        for (UsageAlertEvaluator.Rule rule : rules) {
+            stored.put(toJson(rule, ruleLabels.get(rule.id)));
+        }
+        evaluator.setRules(rules);
+        labels.clear();
+        labels.putAll(ruleLabels);
+        prefs.edit().putString(KEY_RULES, stored.toString()).commit();
+        saveFired();
+    }
+
+    synchronized UsageAlertEvaluator.Rule[] rules() {
+        return evaluator.rules();
+    }
+
+    synchronized String labelOf(String ruleId) {
+        return labels.get(ruleId);
+    }
+
+    /**
+     * Evaluate rules against today's totals. changedSlots lists the slots of dayTotals that
+     * may have changed since the last call, or null if unknown.
+     */
+    void onDayTotals(long windowStart, UidUsageTable dayTotals, int[] changedSlots) {
+        List<Alert> alerts = new ArrayList<>();
+        Listener target;
+        synchronized (this) {
+            if (evaluator.isEmpty()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long previousWindow = evaluator.windowStart();
+            int fired = evaluator.update(windowStart, dayTotals, changedSlots, (rule, value) ->
+                    alerts.add(new Alert(rule, labels.get(rule.id), value, windowStart, now)));
+            if (fired > 0 || previousWindow != windowStart) {
+                saveFired();
+            }
+            target = listener;
+        }
+        for (Alert alert : alerts) {
+            boolean shown = false;
+            if (target != null) {
+                try {
+                    shown = target.onAlert(alert);
+                } catch (Exception e) {
+                    Log.w(TAG, "Usage alert listener failed: " + e.getMessage());
+                }
+            }
+            if (!shown) {
+                notify(alert);
+            }
+        }
+    }
+
+    /**
+     * Aggregate today's totals and evaluate every uid. Used when no per-process report is
+     * being built that could supply the changed uids.
+     */
+    void check(NetworkStatsManager nsm, QueryToken token) throws IOException {
+        if (isEmpty()) {
+            return;
+        }
+        long[] range = UsagePeriods.range("day", 1);
+        UidUsageTable table = ClosedDayCache.get(context).aggregate(nsm, range[0], range[1], token);
+        onDayTotals(range[0], table, null);
+    }
+
+    synchronized boolean isEmpty() {
+        return evaluator.isEmpty();
+    }
+
+    static String kindName(int kind) {
+        return KIND_NAMES[kind];
+    }
+
+    static int parseKind(String name) {
+        for (int i = 0; i < KIND_NAMES.length; i++) {
+            if (KIND_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("kind must be quota or spike");
+    }
+
+    static String transportName(int transport) {
+        if (transport == UidUsageTable.TRANSPORT_WIFI) {
+            return "wifi";
+        }
+        return transport == UidUsageTable.TRANSPORT_MOBILE ? "mobile" : "any";
+    }
+
+    static int parseTransport(String name) {
+        switch (name) {
+            case "wifi":
+                return UidUsageTable.TRANSPORT_WIFI;
+            case "mobile":
+                return UidUsageTable.TRANSPORT_MOBILE;
+            case "any":
+                return UsageAlertEvaluator.ANY_TRANSPORT;
+            default:
+                throw new IllegalArgumentException("transport must be wifi, mobile or any");
+        }
+    }
+
+    private void notify(Alert alert) {
+        NotificationManagerCompat manager = NotificationManagerCompat.from(context);
+        if (!manager.areNotificationsEnabled()) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Usage alerts",
+                    NotificationManager.IMPORTANCE_DEFAULT);
+            channel.setDescription("Data quota and usage spike alerts");
+            context.getSystemService(NotificationManager.class).createNotificationChannel(channel);
+        }
+
+        Intent launch = context.getPackageManager().getLaunchIntentForPackage(context.getPackageName());
+        PendingIntent contentIntent = launch == null ? null : PendingIntent.getActivity(context, 0,
+                launch, PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+        Notification notification = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(context.getApplicationInfo().icon)
+                .setContentTitle(alert.label != null ? alert.label : defaultTitle(alert.rule))
+                .setContentText(describe(alert))
+                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                .setContentIntent(contentIntent)
+                .setAutoCancel(true)
+                .build();
+        try {
+            manager.notify(alert.rule.id.hashCode(), notification);
+        } catch (SecurityException e) {
+            // POST_NOTIFICATIONS not granted on Android 13+
+            Log.w(TAG, "Usage alert notification not posted: " + e.getMessage());
+        }
+    }
+
+    private String defaultTitle(UsageAlertEvaluator.Rule rule) {
+        if (rule.uid == UsageAlertEvaluator.DEVICE) {
+            return "Data usage alert";
+        }
+        PackageIndex packageIndex = PackageIndex.get(context);
+        PackageIndex.Entry[] entries = packageIndex.packagesForUid(rule.uid);
+        return entries.length > 0 ? packageIndex.getLabel(entries[0]) + " data alert" : "Data usage alert";
+    }
+
+    private static String describe(Alert alert) {
+        String network = alert.rule.transport == UsageAlertEvaluator.ANY_TRANSPORT
+                ? "" : " on " + (alert.rule.transport == UidUsageTable.TRANSPORT_WIFI ? "Wi-Fi" : "mobile data");
+        if (alert.rule.kind == UsageAlertEvaluator.KIND_SPIKE) {
+            return formatBytes(alert.value) + " used" + network + " in a short burst";
+        }
+        return formatBytes(alert.value) + " used" + network + " today";
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes >= 1L << 30) {
+            return String.format(Locale.US, "%.2f GB", bytes / (double) (1L << 30));
+        }
+        return String.format(Locale.US, "%.1f MB", bytes / (double) (1L << 20));
+    }
+
+    private void load() {
+        String stored = prefs.getString(KEY_RULES, null);
+        if (stored == null) {
+            return;
+        }
+        List<UsageAlertEvaluator.Rule> rules = new ArrayList<>();
+        try {
+            JSONArray array = new JSONArray(stored);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject json = array.getJSONObject(i);
+                rules.add(new UsageAlertEvaluator.Rule(json.getString("id"),
+                        parseKind(json.getString("kind")), json.getInt("uid"),
+                        parseTransport(json.getString("transport")), json.getLong("thresholdBytes")));
+                if (json.has("label")) {
+                    labels.put(json.getString("id"), json.getString("label"));
+                }
+            }
+            JSONArray firedJson = new JSONArray(prefs.getString(KEY_FIRED, "[]"));
+            Set<String> fired = new HashSet<>();
+            for (int i = 0; i < firedJson.length(); i++) {
+                fired.add(firedJson.getString(i));
+            }
+            evaluator.setRules(rules);
+            evaluator.restore(prefs.getLong(KEY_WINDOW, Long.MIN_VALUE), fired);
+        } catch (JSONException | IllegalArgumentException e) {
+            Log.w(TAG, "Discarding unreadable usage alert rules: " + e.getMessage());
+            labels.clear();
+            prefs.edit().clear().commit();
+        }
+    }
+
+    private void saveFired() {
+        Set<String> fired = new HashSet<>();
+        evaluator.firedIds(fired);
+        prefs.edit()
+                .putLong(KEY_WINDOW, evaluator.windowStart())
+                .putString(KEY_FIRED, new JSONArray(fired).toString())
+                .commit();
+    }
+
+    private static JSONObject toJson(UsageAlertEvaluator.Rule rule, String label) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("id", rule.id);
+        json.put("kind", kindName(rule.kind));
+        json.put("uid", rule.uid);
+        json.put("transport", transportName(rule.transport));
+        json.put("thresholdBytes", rule.thresholdBytes);
+        if (label != null) {
+            json.put("label", label);
+        }
+        return json;
+    }
+}
@@ -0,0 +1,469 @@
+package com.anonymous.packetMeter;
+
+import com.anonymous.packetMeter.core.AppUsageDiff;
+import com.anonymous.packetMeter.core.AppUsageRows;
+import com.anonymous.packetMeter.core.LatencyHistogram;
+import com.anonymous.packetMeter.core.PackedAppUsage;
+import com.anonymous.packetMeter.core.UsageAlertEvaluator;
+import com.anonymous.packetMeter.core.UsageSeries;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Encoders for usage results: JSON text (the original contract), native bridge maps,
+ * and a packed columnar map.
+ */
+final class UsagePayloads {
+    // Bridge results are sized for payloadChars as the JSON would be: key and string lengths
+    // plus NUMBER_CHARS per number (the eight bytes of a double)
+    private static final int NUMBER_CHARS = 8;
+    private static final int TRANSPORT_MAP_CHARS = "rxtxtotal".length() + 3 * NUMBER_CHARS;
+    private static final int APP_MAP_CHARS =
+            "packageNameappNameiconHashuidwifimobiletotalBytes".length()
+                    + 2 * NUMBER_CHARS + 2 * TRANSPORT_MAP_CHARS;
+
+    private UsagePayloads() {
+    }
+
+    static String toJson(AppUsageRows rows) throws JSONException {
+        long started = CollectorMetrics.start();
+        JSONArray result = new JSONArray();
+        for (int i = 0; i < rows.size(); i++) {
+            JSONObject appData = new JSONObject();
+            appData.put("packageName", rows.packageName(i));
+            appData.put("appName", rows.appName(i));
+            appData.put("iconHash", rows.iconHash(i));
+            appData.put("uid", rows.uid(i));
+            appData.put("wifi", transportToJson(rows.wifiRx(i), rows.wifiTx(i)));
+            appData.put("mobile", transportToJson(rows.mobileRx(i), rows.mobileTx(i)));
+            appData.put("totalBytes", rows.totalBytes(i));
+            result.put(appData);
+        }
+        String json = result.toString();
+        CollectorMetrics.get().recordSerialization(started, rows.size(), json.length());
+        return json;
+    }
+
+    static WritableArray toWritableArray(AppUsageRows rows) {
+        long started = CollectorMetrics.start();
+        WritableArray result = Arguments.createArray();
+        int chars = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            result.pushMap(appToMap(rows, i));
+            chars += appMapChars(rows, i);
+        }
+        CollectorMetrics.get().recordSerialization(started, rows.size(), chars);
+        return result;
+    }
+
+    /**
+     * Stored history: {apps, coveredFrom, coveredTo}. The covered range is where the store
+     * holds data (null when empty); usage outside it is missing, not zero.
+     */
+    static WritableMap toUsageHistory(AppUsageRows rows, long[] coverage) {
+        WritableMap result = Arguments.createMap();
+        result.putArray("apps", toWritableArray(rows));
+        if (coverage == null) {
+            result.putNull("coveredFrom");
+            result.putNull("coveredTo");
+        } else {
+            result.putDouble("coveredFrom", coverage[0]);
+            result.putDouble("coveredTo", coverage[1]);
+        }
+        return result;
+    }
+
+    /**
+     * Diff against the previous refresh: {key, added, changed, removed}. Added and changed
+     * rows are app maps with their rank, changed rows also with previousRank; removed rows
+     * are {packageName, uid}.
+     */
+    static WritableMap toUsageDiff(String key, AppUsageDiff diff) {
+        long started = CollectorMetrics.start();
+        int chars = key.length();
+        WritableArray added = Arguments.createArray();
+        for (int i = 0; i < diff.added.size(); i++) {
+            WritableMap appData = appToMap(diff.added, i);
+            appData.putInt("rank", diff.addedRanks[i]);
+            added.pushMap(appData);
+            chars += appMapChars(diff.added, i) + "rank".length() + NUMBER_CHARS;
+        }
+        WritableArray changed = Arguments.createArray();
+        for (int i = 0; i < diff.changed.size(); i++) {
+            WritableMap appData = appToMap(diff.changed, i);
+            appData.putInt("rank", diff.changedRanks[i]);
+            appData.putInt("previousRank", diff.changedPreviousRanks[i]);
+            changed.pushMap(appData);
+            chars += appMapChars(diff.changed, i) + "rankpreviousRank".length() + 2 * NUMBER_CHARS;
+        }
+        WritableArray removed = Arguments.createArray();
+        for (int i = 0; i < diff.removedUids.length; i++) {
+            WritableMap appData = Arguments.createMap();
+            appData.putString("packageName", diff.removedPackages[i]);
+            appData.putInt("uid", diff.removedUids[i]);
+            removed.pushMap(appData);
+            chars += "packageNameuid".length() + length(diff.removedPackages[i]) + NUMBER_CHARS;
+        }
+        WritableMap result = Arguments.createMap();
+        result.putString("key", key);
+        result.putArray("added", added);
+        result.putArray("changed", changed);
+        result.putArray("removed", removed);
+        CollectorMetrics.get().recordSerialization(started, diff.size(), chars);
+        return result;
+    }
+
+    private static WritableMap appToMap(AppUsageRows rows, int i) {
+        WritableMap appData = Arguments.createMap();
+        appData.putString("packageName", rows.packageName(i));
+        appData.putString("appName", rows.appName(i));
+        appData.putString("iconHash", rows.iconHash(i));
+        appData.putInt("uid", rows.uid(i));
+        appData.putMap("wifi", transportToMap(rows.wifiRx(i), rows.wifiTx(i)));
+        appData.putMap("mobile", transportToMap(rows.mobileRx(i), rows.mobileTx(i)));
+        appData.putDouble("totalBytes", rows.totalBytes(i));
+        return appData;
+    }
+
+    private static int appMapChars(AppUsageRows rows, int i) {
+        return APP_MAP_CHARS + length(rows.packageName(i)) + length(rows.appName(i))
+                + length(rows.iconHash(i));
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    /**
+     * Columnar form: {@code strings} holds each distinct string once; {@code packageName},
+     * {@code appName} and {@code iconHash} are indexes into it (-1 for null). Byte counts are
+     * parallel numeric columns in row order.
+     */
+    static WritableMap toPacked(AppUsageRows rows) {
+        long started = CollectorMetrics.start();
+        PackedAppUsage columns = PackedAppUsage.pack(rows);
+        WritableArray strings = Arguments.createArray();
+        // The string table plus eight numeric columns; keys are sent once, so not counted
+        int chars = 8 * NUMBER_CHARS * rows.size();
+        for (String value : columns.strings) {
+            strings.pushString(value);
+            chars += length(value);
+        }
+        WritableArray packageNames = Arguments.createArray();
+        WritableArray appNames = Arguments.createArray();
+        WritableArray iconHashes = Arguments.createArray();
+        WritableArray uids = Arguments.createArray();
+        WritableArray wifiRx = Arguments.createArray();
+        WritableArray wifiTx = Arguments.createArray();
+        WritableArray mobileRx = Arguments.createArray();
+        WritableArray mobileTx = Arguments.createArray();
+
+        for (int i = 0; i < rows.size(); i++) {
+            packageNames.pushInt(columns.packageName[i]);
+            appNames.pushInt(columns.appName[i]);
+            iconHashes.pushInt(columns.iconHash[i]);
+            uids.pushInt(rows.uid(i));
+            wifiRx.pushDouble(rows.wifiRx(i));
+            wifiTx.pushDouble(rows.wifiTx(i));
+            mobileRx.pushDouble(rows.mobileRx(i));
+            mobileTx.pushDouble(rows.mobileTx(i));
+        }
+
+        WritableMap packed = Arguments.createMap();
+        packed.putInt("rows", rows.size());
+        packed.putArray("strings", strings);
+        packed.putArray("packageName", packageNames);
+        packed.putArray("appName", appNames);
+        packed.putArray("iconHash", iconHashes);
+        packed.putArray("uid", uids);
+        packed.putArray("wifiRx", wifiRx);
+        packed.putArray("wifiTx", wifiTx);
+        packed.putArray("mobileRx", mobileRx);
+        packed.putArray("mobileTx", mobileTx);
+        CollectorMetrics.get().recordSerialization(started, rows.size(), chars);
+        return packed;
+    }
+
+    /**
+     * Columnar histogram: interval i spans [start[i], end[i]).
+     */
+    static WritableMap toWritableMap(UsageSeries series) {
+        long started = CollectorMetrics.start();
+        WritableArray start = Arguments.createArray();
+        WritableArray end = Arguments.createArray();
+        WritableArray wifiRx = Arguments.createArray();
+        WritableArray wifiTx = Arguments.createArray();
+        WritableArray mobileRx = Arguments.createArray();
+        WritableArray mobileTx = Arguments.createArray();
+        for (int i = 0; i < series.size(); i++) {
+            start.pushDouble(series.edges[i]);
+            end.pushDouble(series.edges[i + 1]);
+            wifiRx.pushDouble(series.wifiRx[i]);
+            wifiTx.pushDouble(series.wifiTx[i]);
+            mobileRx.pushDouble(series.mobileRx[i]);
+            mobileTx.pushDouble(series.mobileTx[i]);
+        }
+
+        WritableMap result = Arguments.createMap();
+        result.putArray("start", start);
+        result.putArray("end", end);
+        result.putArray("wifiRx", wifiRx);
+        result.putArray("wifiTx", wifiTx);
+        result.putArray("mobileRx", mobileRx);
+        result.putArray("mobileTx", mobileTx);
+        CollectorMetrics.get().recordSerialization(started, series.size(),
+                6 * NUMBER_CHARS * series.size());
+        return result;
+    }
+
+    /**
+     * Per-process report body: {@code Apps} in the server's {Identifier, TotalRx, TotalTx}
+     * shape and {@code Registrations} with the display data needed if the server is
+     * missing any of those apps. The server stores {@code IconHash} as the icon's data URI,
+     * so the local hash is resolved to the encoded icon here.
+     */
+    static WritableMap toReportDelta(String reportId, long since, AppUsageRows rows,
+            IconCache iconCache) {
+        long started = CollectorMetrics.start();
+        WritableArray apps = Arguments.createArray();
+        WritableArray registrations = Arguments.createArray();
+        int chars = length(reportId) + NUMBER_CHARS;
+        for (int i = 0; i < rows.size(); i++) {
+            WritableMap app = Arguments.createMap();
+            app.putString("Identifier", rows.packageName(i));
+            app.putDouble("TotalRx", rows.wifiRx(i) + rows.mobileRx(i));
+            app.putDouble("TotalTx", rows.wifiTx(i) + rows.mobileTx(i));
+            apps.pushMap(app);
+
+            WritableMap registration = Arguments.createMap();
+            registration.putString("Identifier", rows.packageName(i));
+            registration.putString("DisplayName", rows.appName(i));
+            String iconDataUri = iconCache.getIconDataUri(rows.iconHash(i));
+            registration.putString("IconHash", iconDataUri);
+            registrations.pushMap(registration);
+            chars += "IdentifierTotalRxTotalTxIdentifierDisplayNameIconHash".length()
+                    + 2 * NUMBER_CHARS + 2 * length(rows.packageName(i))
+                    + length(rows.appName(i)) + length(iconDataUri);
+        }
+
+        WritableMap delta = Arguments.createMap();
+        delta.putString("reportId", reportId);
+        delta.putDouble("since", since);
+        delta.putArray("Apps", apps);
+        delta.putArray("Registrations", registrations);
+        CollectorMetrics.get().recordSerialization(started, rows.size(), chars);
+        return delta;
+    }
+
+    /**
+     * Body for {@code /api/v1/traffic/total-usage}.
+     */
+    static String toTotalReportJson(long timestamp, long totalRx, long totalTx) throws JSONException {
+        String iso = isoTimestamp(timestamp);
+        JSONObject payload = new JSONObject();
+        payload.put("Timestamp", iso);
+        payload.put("Date", iso.substring(0, 10));
+        payload.put("TotalRx", Math.max(0, totalRx));
+        payload.put("TotalTx", Math.max(0, totalTx));
+        return payload.toString();
+    }
+
+    /**
+     * @param totals [wifiRx, wifiTx, mobileRx, mobileTx]
+     */
+    static String totalsToJson(long[] totals) throws JSONException {
+        JSONObject totalObj = new JSONObject();
+        totalObj.put("wifi", transportToJson(totals[0], totals[1]));
+        totalObj.put("mobile", transportToJson(totals[2], totals[3]));
+        totalObj.put("totalBytes", totals[0] + totals[1] + totals[2] + totals[3]);
+        return totalObj.toString();
+    }
+
+    /**
+     * @param totals [wifiRx, wifiTx, mobileRx, mobileTx]
+     */
+    static WritableMap totalsToWritableMap(long[] totals) {
+        WritableMap totalObj = Arguments.createMap();
+        totalObj.putMap("wifi", transportToMap(totals[0], totals[1]));
+        totalObj.putMap("mobile", transportToMap(totals[2], totals[3]));
+        totalObj.putDouble("totalBytes", totals[0] + totals[1] + totals[2] + totals[3]);
+        return totalObj;
+    }
+
+    /**
+     * Cached first render: {computedAt, current, apps, total}. apps and total are null if
+     * never computed; computedAt is the older of the two snapshots and current is false if
+     * either was taken in an earlier window.
+     */
+    static WritableMap toCachedUsage(UsageSnapshots.Snapshot apps, UsageSnapshots.Snapshot totals,
+            String period, int count) {
+        WritableMap result = Arguments.createMap();
+        long computedAt = Long.MAX_VALUE;
+        boolean current = true;
+        if (apps != null) {
+            result.putArray("apps", toWritableArray(apps.rows));
+            computedAt = apps.computedAt;
+            current = apps.isCurrent(period, count);
+        } else {
+            result.putNull("apps");
+        }
+        if (totals != null) {
+            result.putMap("total", totalsToWritableMap(totals.totals));
+            computedAt = Math.min(computedAt, totals.computedAt);
+            current &= totals.isCurrent(period, count);
+        } else {
+            result.putNull("total");
+        }
+        result.putDouble("computedAt", computedAt);
+        result.putBoolean("current", current);
+        return result;
+    }
+
+    /**
+     * Per-SIM and per-app usage: {merged, subscriptions, apps}.
+     *
+     * @param subscriberTotals per subscription [mobileRx, mobileTx, tetheringRx, tetheringTx]
+     */
+    static WritableMap toSubscriptionUsage(MobileSubscriptions subscriptions,
+            long[][] subscriberTotals, AppUsageRows rows) {
+        WritableArray array = Arguments.createArray();
+        for (int i = 0; i < subscriptions.subscriptions.size(); i++) {
+            MobileSubscriptions.Subscription subscription = subscriptions.subscriptions.get(i);
+            long[] totals = subscriberTotals[i];
+            WritableMap map = Arguments.createMap();
+            map.putInt("subscriptionId", subscription.subscriptionId);
+            map.putInt("slotIndex", subscription.slotIndex);
+            map.putString("displayName", subscription.displayName);
+            map.putString("carrierName", subscription.carrierName);
+            map.putMap("mobile", transportToMap(totals[0], totals[1]));
+            map.putMap("tethering", transportToMap(totals[2], totals[3]));
+            array.pushMap(map);
+        }
+        WritableMap result = Arguments.createMap();
+        result.putBoolean("merged", subscriptions.merged);
+        result.putArray("subscriptions", array);
+        result.putArray("apps", toWritableArray(rows));
+        return result;
+    }
+
+    /**
+     * Breakdown from {@code UsageCube.groupBy}: one {key, rx, tx, total} per non-empty value.
+     */
+    static WritableMap toBreakdown(String groupBy, String[] valueNames, long[] grouped) {
+        WritableArray groups = Arguments.createArray();
+        for (int value = 0; value < valueNames.length; value++) {
+            long rx = grouped[2 * value];
+            long tx = grouped[2 * value + 1];
+            if (rx == 0 && tx == 0) {
+                continue;
+            }
+            WritableMap group = Arguments.createMap();
+            group.putString("key", valueNames[value]);
+            group.putDouble("rx", rx);
+            group.putDouble("tx", tx);
+            group.putDouble("total", rx + tx);
+            groups.pushMap(group);
+        }
+        WritableMap result = Arguments.createMap();
+        result.putString("groupBy", groupBy);
+        result.putArray("groups", groups);
+        return result;
+    }
+
+    /**
+     * Metrics snapshot: {sinceMs, counters, phases}, where each phase holds count and
+     * mean/p50/p90/p99/max latency in milliseconds.
+     */
+    static WritableMap toWritableMap(CollectorMetrics metrics) {
+        WritableMap counters = Arguments.createMap();
+        counters.putDouble("binderCalls", metrics.binderCalls.get());
+        counters.putDouble("bucketsScanned", metrics.bucketsScanned.get());
+        counters.putDouble("rowsReturned", metrics.rowsReturned.get());
+        counters.putDouble("payloadChars", metrics.payloadChars.get());
+        counters.putDouble("requestsCoalesced", metrics.requestsCoalesced.get());
+        counters.putDouble("requestsFailed", metrics.requestsFailed.get());
+
+        WritableMap phases = Arguments.createMap();
+        for (CollectorMetrics.Phase phase : CollectorMetrics.Phase.values()) {
+            LatencyHistogram histogram = metrics.histogram(phase);
+            WritableMap stats = Arguments.createMap();
+            stats.putDouble("count", histogram.count());
+            stats.putDouble("meanMs", histogram.mean() / 1000.0);
+            stats.putDouble("p50Ms", histogram.percentile(50) / 1000.0);
+            stats.putDouble("p90Ms", histogram.percentile(90) / 1000.0);
+            stats.putDouble("p99Ms", histogram.percentile(99) / 1000.0);
+            stats.putDouble("maxMs", histogram.max() / 1000.0);
+            phases.putMap(phase.key, stats);
+        }
+
+        WritableMap result = Arguments.createMap();
+        result.putDouble("sinceMs", metrics.sinceMs());
+        result.putMap("counters", counters);
+        result.putMap("phases", phases);
+        return result;
+    }
+
+    /**
+     * One rule as {id, kind, uid, transport, thresholdBytes, label}; uid is null for
+     * device-wide rules and label is null if none was set.
+     */
+    static WritableMap toWritableMap(UsageAlertEvaluator.Rule rule, String label) {
+        WritableMap map = Arguments.createMap();
+        map.putString("id", rule.id);
+        map.putString("kind", UsageAlerts.kindName(rule.kind));
+        if (rule.uid == UsageAlertEvaluator.DEVICE) {
+            map.putNull("uid");
+        } else {
+            map.putInt("uid", rule.uid);
+        }
+        map.putString("transport", UsageAlerts.transportName(rule.transport));
+        map.putDouble("thresholdBytes", rule.thresholdBytes);
+        map.putString("label", label);
+        return map;
+    }
+
+    /**
+     * A fired rule: {rule, valueBytes, windowStart, timestamp}.
+     */
+    static WritableMap toWritableMap(UsageAlerts.Alert alert) {
+        WritableMap map = Arguments.createMap();
+        map.putMap("rule", toWritableMap(alert.rule, alert.label));
+        map.putDouble("valueBytes", alert.value);
+        map.putDouble("windowStart", alert.windowStart);
+        map.putDouble("timestamp", alert.timestamp);
+        return map;
+    }
+
+    private static JSONObject transportToJson(long rx, long tx) throws JSONException {
+        JSONObject transport = new JSONObject();
+        transport.put("rx", rx);
+        transport.put("tx", tx);
+        transport.put("total", rx + tx);
+        return transport;
+    }
+
+    private static WritableMap transportToMap(long rx, long tx) {
+        WritableMap transport = Arguments.createMap();
+        transport.putDouble("rx", rx);
+        transport.putDouble("tx", tx);
+        transport.putDouble("total", rx + tx);
+        return transport;
+    }
+
+    // Same format as JS Date.toISOString()
+    static String isoTimestamp(long timestamp) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(timestamp));
+    }
+}
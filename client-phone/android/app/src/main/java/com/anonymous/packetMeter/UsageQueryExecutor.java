@@ -0,0 +1,207 @@
+package com.anonymous.packetMeter;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.anonymous.packetMeter.core.QueryToken;
+import com.facebook.react.bridge.Promise;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs usage queries off the shared native-modules thread.
+ *
+ * Identical queries (same key) that are in flight at the same time share one computation.
+ * Callers may tag a request with an id and cancel it; the computation itself is only
+ * cancelled once no caller is waiting for it any more.
+ */
+final class UsageQueryExecutor {
+    private static final String TAG = "NetworkUsage";
+    private static final int THREADS = 2;
+    private static final int QUEUE_CAPACITY = 16;
+
+    interface Query {
+        Object run(QueryToken token) throws Exception;
+    }
+
+    private static final class Waiter {
+        final String requestId;
+        final Promise promise;
+        final InFlight flight;
+
+        Waiter(String requestId, Promise promise, InFlight flight) {
+            this.requestId = requestId;
+            this.promise = promise;
+            this.flight = flight;
+        }
+    }
+
+    private static final class InFlight {
+        final String key;
+        final QueryToken token;
+        final List<Waiter> waiters = new ArrayList<>(2);
+
+        InFlight(String key, QueryToken token) {
+            this.key = key;
+            this.token = token;
+        }
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final Map<String, InFlight> inFlight = new HashMap<>();
+    private final Map<String, Waiter> byRequestId = new HashMap<>();
+
+    UsageQueryExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        pool = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                runnable -> {
+                    Thread thread = new Thread(() -> {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }, "NetworkUsage-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Run a query, or attach to the identical one already in flight.
+     *
+     * @param requestId optional caller id usable with {@link #cancel(String)}
+     * @param timeoutMs deadline after which the query resolves with partial results, 0 for none
+     * @return false if the pool was full and the query will never run; promise is then rejected
+     */
+    boolean submit(String key, String requestId, long timeoutMs, Promise promise, Query query) {
+        InFlight flight;
+        boolean start = false;
+        synchronized (this) {
+            flight = inFlight.get(key);
+            if (flight == null) {
+                flight = new InFlight(key, new QueryToken(timeoutMs));
+                inFlight.put(key, flight);
+                start = true;
+            } else {
+                flight.token.extendDeadline(timeoutMs);
+                CollectorMetrics.get().requestsCoalesced.incrementAndGet();
+            }
+            Waiter waiter = new Waiter(requestId, promise, flight);
+            flight.waiters.add(waiter);
+            if (requestId != null) {
+                Waiter replaced = byRequestId.put(requestId, waiter);
+                if (replaced != null) {
+                    Log.w(TAG, "Duplicate usage request id " + requestId);
+                }
+            }
+        }
+
+        if (!start) {
+            return true;
+        }
+        final InFlight started = flight;
+        try {
+            pool.execute(() -> run(started, query));
+        } catch (RejectedExecutionException e) {
+            complete(started, null, e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Cancel one caller's request. Returns false if the request is unknown or already done.
+     */
+    boolean cancel(String requestId) {
+        Waiter waiter;
+        synchronized (this) {
+            waiter = byRequestId.remove(requestId);
+            if (waiter == null) {
+                return false;
+            }
+            InFlight flight = waiter.flight;
+            flight.waiters.remove(waiter);
+            if (flight.waiters.isEmpty()) {
+                flight.token.cancel();
+                if (inFlight.get(flight.key) == flight) {
+                    inFlight.remove(flight.key);
+                }
+            }
+        }
+        waiter.promise.reject("ERR_CANCELLED", "Request " + requestId + " was cancelled");
+        return true;
+    }
+
+    /**
+     * Stop the pool, cancelling every query and rejecting every caller still waiting, so no
+     * JS promise is left pending across a reload.
+     */
+    void shutdown() {
+        List<Waiter> waiters = new ArrayList<>();
+        synchronized (this) {
+            for (InFlight flight : inFlight.values()) {
+                flight.token.cancel();
+                waiters.addAll(flight.waiters);
+                flight.waiters.clear();
+            }
+            inFlight.clear();
+            byRequestId.clear();
+        }
+        pool.shutdownNow();
+        for (Waiter waiter : waiters) {
+            waiter.promise.reject("ERR_CANCELLED", "Usage module shut down");
+        }
+    }
+
+    private void run(InFlight flight, Query query) {
+        if (flight.token.isCancelled()) {
+            return;
+        }
+        CollectorMetrics metrics = CollectorMetrics.get();
+        long started = CollectorMetrics.start();
+        try {
+            Object result = query.run(flight.token);
+            metrics.record(CollectorMetrics.Phase.REQUEST, started);
+            complete(flight, result, null);
+        } catch (CancellationException e) {
+            // Every waiter already left; nothing to settle.
+        } catch (Exception e) {
+            metrics.requestsFailed.incrementAndGet();
+            complete(flight, null, e);
+        }
+    }
+
+    private void complete(InFlight flight, Object result, Exception error) {
+        List<Waiter> waiters;
+        synchronized (this) {
+            if (inFlight.get(flight.key) == flight) {
+                inFlight.remove(flight.key);
+            }
+            waiters = new ArrayList<>(flight.waiters);
+            flight.waiters.clear();
+            for (Waiter waiter : waiters) {
+                if (waiter.requestId != null && byRequestId.get(waiter.requestId) == waiter) {
+                    byRequestId.remove(waiter.requestId);
+                }
+            }
+        }
+        for (Waiter waiter : waiters) {
+            if (error == null) {
+                waiter.promise.resolve(result);
+            } else if (error instanceof RejectedExecutionException) {
+                waiter.promise.reject("ERR_BUSY", "Too many usage queries in flight", error);
+            } else {
+                waiter.promise.reject("ERR_NETWORK_USAGE", error);
+            }
+        }
+    }
+}
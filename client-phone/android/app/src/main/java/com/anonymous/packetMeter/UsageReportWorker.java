@@ -0,0 +1,159 @@
+package com.anonymous.packetMeter;
+
+import android.app.usage.NetworkStatsManager;
+import android.content.Context;
+import android.util.Log;
+
+import com.anonymous.packetMeter.core.QueryToken;
+import com.anonymous.packetMeter.core.UsagePeriods;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodic background collector: samples today's usage, uploads the total report with
+ * {@link ReportUploader} and queues the per-process report in the {@link ReportOutbox},
+ * which uploads its backlog in batches. Also the periodic tick for {@link UsageAlerts} and
+ * {@link UsageTimeSeriesStore}, which is filled on every run, with or without a device token.
+ * Runs entirely in native code, so no JS runtime is started for a report.
+ */
+public class UsageReportWorker extends Worker {
+    private static final String TAG = "NetworkUsage";
+    static final String WORK_NAME = "packetmeter.usage-report";
+
+    public UsageReportWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedule the collector every intervalMinutes (WorkManager enforces at least 15),
+     * only while a network is available and the battery is not low.
+     */
+    static void schedule(Context context, long intervalMinutes) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                UsageReportWorker.class, Math.max(15, intervalMinutes), TimeUnit.MINUTES)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 1, TimeUnit.MINUTES)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.UPDATE, request);
+    }
+
+    static void cancel(Context context) {
+        WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME);
+    }
+
+    /**
+     * Whether the collector is scheduled. Blocks on WorkManager's database; call off the UI
+     * and native-modules threads.
+     */
+    static boolean isScheduled(Context context) throws Exception {
+        for (WorkInfo info : WorkManager.getInstance(context)
+                .getWorkInfosForUniqueWork(WORK_NAME).get()) {
+            if (!info.getState().isFinished()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        CollectorConfig config = new CollectorConfig(context);
+        String deviceToken = config.getDeviceToken();
+
+        try {
+            if (!UsageAccessPermission.isGranted(context)) {
+                Log.i(TAG, "Usage report skipped: usage access not granted");
+                return Result.success();
+            }
+
+            NetworkStatsManager nsm = (NetworkStatsManager) context
+                    .getSystemService(Context.NETWORK_STATS_SERVICE);
+            long now = System.currentTimeMillis();
+
+            try {
+                UsageTimeSeriesStore.get(context).fill(nsm, QueryToken.NONE);
+            } catch (IOException e) {
+                Log.w(TAG, "Error filling usage history: " + e.getMessage());
+            }
+
+            // Building the per-process report evaluates usage alerts; without one, check them here
+            if (deviceToken == null) {
+                Log.i(TAG, "Usage report skipped: no device token");
+                UsageAlerts.get(context).check(nsm, QueryToken.NONE);
+                return Result.success();
+            }
+            if (!reportTotalUsage(nsm, config, deviceToken, now)) {
+                UsageAlerts.get(context).check(nsm, QueryToken.NONE);
+                return Result.success();
+            }
+            reportPerProcessUsage(context, nsm, config, deviceToken, now);
+            return Result.success();
+        } catch (IOException e) {
+            Log.w(TAG, "Usage report upload failed: " + e.getMessage());
+            return Result.retry();
+        } catch (Exception e) {
+            Log.e(TAG, "Usage report failed", e);
+            return Result.failure();
+        }
+    }
+
+    /**
+     * Returns false if the server rejected the device, so the per-process report is skipped.
+     */
+    private boolean reportTotalUsage(NetworkStatsManager nsm, CollectorConfig config,
+            String deviceToken, long now) throws Exception {
+        long[] range = UsagePeriods.range("day", 1);
+        long[] totals = UsageAggregator.deviceTotals(nsm, range[0], range[1]);
+
+        // Matches the JS reporter, which reports Wi-Fi traffic as the device total
+        ReportUploader.Response response = ReportUploader.post(
+                config.buildServerUrl("/api/v1/traffic/total-usage"), deviceToken,
+                UsagePayloads.toTotalReportJson(now, totals[0], totals[1]));
+        if (!response.isSuccessful()) {
+            Log.w(TAG, "Total usage report failed " + response.status + ": " + response.body);
+            return response.status != 401 && response.status != 403;
+        }
+        return true;
+    }
+
+    /**
+     * Queue today's changed per-app totals in the outbox, then upload everything pending,
+     * including reports left over from runs that could not reach the server.
+     */
+    private void reportPerProcessUsage(Context context, NetworkStatsManager nsm,
+            CollectorConfig config, String deviceToken, long now) throws Exception {
+        PerProcessReport report = PerProcessReport.build(context, nsm,
+                config.isDetailedReports(), QueryToken.NONE);
+        ReportOutbox outbox = ReportOutbox.get(context);
+        if (report.rows.size() > 0) {
+            outbox.append(now, report.rows);
+            // The outbox now owns delivery of these totals
+            ReportCursor.get(context).commit(report.reportId);
+        }
+
+        ReportOutbox.FlushResult result = outbox.flush(
+                config.buildServerUrl(ReportOutbox.BATCH_PATH), deviceToken);
+        if (result.reports > 0) {
+            Log.i(TAG, "Uploaded " + result.reports + " reports in " + result.batches + " batches");
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.anonymous.packetMeter;
+
+import android.app.usage.NetworkStatsManager;
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import com.anonymous.packetMeter.core.AppUsageJoin;
+import com.anonymous.packetMeter.core.AppUsageRows;
+import com.anonymous.packetMeter.core.QueryToken;
+import com.anonymous.packetMeter.core.UidUsageTable;
+import com.anonymous.packetMeter.core.UsagePeriods;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Last first page of apps and last device totals per window, kept on disk so the home
+ * screen can render them before a fresh scan finishes.
+ *
+ * Snapshots are small binary files under {@code filesDir/usage-snapshots}, one per
+ * period/count (and detail level for apps), rewritten whenever the module computes that
+ * page or those totals. {@link #prefetch} is started from {@code MainActivity.onCreate}:
+ * it loads the files into memory and refreshes the default window before JS asks for it.
+ */
+final class UsageSnapshots {
+    private static final String TAG = "NetworkUsage";
+    private static final String SNAPSHOT_DIR = "usage-snapshots";
+    private static final int MAGIC = 0x504d534e; // "PMSN"
+    private static final int VERSION = 1;
+    // Matches the page size the home screen asks for
+    static final int MAX_ROWS = 50;
+
+    private static UsageSnapshots instance;
+    private static boolean prefetched;
+
+    private final Context context;
+    private final File snapshotDir;
+    private final Map<String, Snapshot> memory = new HashMap<>();
+
+    /** Either rows or totals is set, depending on which kind of snapshot this is. */
+    static final class Snapshot {
+        final long computedAt;
+        final long windowStart;
+        final AppUsageRows rows;
+        // [wifiRx, wifiTx, mobileRx, mobileTx]
+        final long[] totals;
+
+        private Snapshot(long computedAt, long windowStart, AppUsageRows rows, long[] totals) {
+            this.computedAt = computedAt;
+            this.windowStart = windowStart;
+            this.rows = rows;
+            this.totals = totals;
+        }
+
+        /** False once the period has rolled over since the snapshot was taken. */
+        boolean isCurrent(String period, int count) {
+            return windowStart == UsagePeriods.range(period, count)[0];
+        }
+    }
+
+    static synchronized UsageSnapshots get(Context context) {
+        if (instance == null) {
+            instance = new UsageSnapshots(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private UsageSnapshots(Context context) {
+        this.context = context;
+        this.snapshotDir = new File(context.getFilesDir(), SNAPSHOT_DIR);
+    }
+
+    /**
+     * Load stored snapshots and recompute the default window (today, at the collector's
+     * detail level) on a background thread, once per process; activity re-creations are
+     * no-ops. Safe to call before the React instance exists.
+     */
+    static void prefetch(Context context) {
+        synchronized (UsageSnapshots.class) {
+            if (prefetched) {
+                return;
+            }
+            prefetched = true;
+        }
+        UsageSnapshots snapshots = get(context);
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            snapshots.loadAll();
+            try {
+                snapshots.refresh("day", 1, new CollectorConfig(snapshots.context).isDetailedReports());
+            } catch (Exception e) {
+                Log.w(TAG, "Usage prefetch failed: " + e.getMessage());
+            }
+        }, "NetworkUsage-prefetch");
+        thread.start();
+    }
+
+    Snapshot apps(String period, int count, boolean detailed) {
+        return read(appsKey(period, count, detailed));
+    }
+
+    Snapshot totals(String period, int count) {
+        return read(totalsKey(period, count));
+    }
+
+    /**
+     * Store the first page of apps for a window; rows beyond {@link #MAX_ROWS} are dropped.
+     */
+    void putApps(String period, int count, boolean detailed, AppUsageRows rows) {
+        AppUsageRows page = rows;
+        if (rows.size() > MAX_ROWS) {
+            page = new AppUsageRows(MAX_ROWS);
+            for (int i = 0; i < MAX_ROWS; i++) {
+                page.add(rows.packageName(i), rows.appName(i), rows.iconHash(i), rows.uid(i),
+                        rows.wifiRx(i), rows.wifiTx(i), rows.mobileRx(i), rows.mobileTx(i));
+            }
+        }
+        write(appsKey(period, count, detailed), new Snapshot(System.currentTimeMillis(),
+                UsagePeriods.range(period, count)[0], page, null));
+    }
+
+    void putTotals(String period, int count, long[] totals) {
+        write(totalsKey(period, count), new Snapshot(System.currentTimeMillis(),
+                UsagePeriods.range(period, count)[0], null, totals.clone()));
+    }
+
+    private void refresh(String period, int count, boolean detailed) throws Exception {
+        if (!UsageAccessPermission.isGranted(context)) {
+            return;
+        }
+        NetworkStatsManager nsm = (NetworkStatsManager) context
+                .getSystemService(Context.NETWORK_STATS_SERVICE);
+        // Also anchors the precise counter, so the first getPreciseTotalUsage is cheap
+        putTotals(period, count, HybridTotalCounter.get().totals(nsm, period, count));
+
+        long[] range = UsagePeriods.range(period, count);
+        UidUsageTable table = ClosedDayCache.get(context).aggregate(nsm, range[0], range[1],
+                QueryToken.NONE);
+        putApps(period, count, detailed, topRows(table, detailed));
+    }
+
+    /**
+     * The {@link #MAX_ROWS} largest listed apps of table, ranked like the module's stream.
+     */
+    private AppUsageRows topRows(UidUsageTable table, boolean detailed) {
+        AppDirectory directory = new AppDirectory(PackageIndex.get(context), IconCache.get(context));
+        AppUsageJoin.Ranking<PackageIndex.Entry> ranking =
+                AppUsageJoin.rankListed(table, directory, detailed, MAX_ROWS);
+        return ranking.rows(0, ranking.size());
+    }
+
+    private static String appsKey(String period, int count, boolean detailed) {
+        return "apps-" + period + "-" + count + (detailed ? "-detailed" : "");
+    }
+
+    private static String totalsKey(String period, int count) {
+        return "total-" + period + "-" + count;
+    }
+
+    private Snapshot read(String key) {
+        synchronized (memory) {
+            if (memory.containsKey(key)) {
+                return memory.get(key);
+            }
+        }
+        Snapshot snapshot = readFile(new File(snapshotDir, key + ".bin"));
+        synchronized (memory) {
+            // A concurrent write wins over what was on disk
+            if (!memory.containsKey(key)) {
+                memory.put(key, snapshot);
+            }
+            return memory.get(key);
+        }
+    }
+
+    private void loadAll() {
+        File[] files = snapshotDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".bin")) {
+                read(name.substring(0, name.length() - 4));
+            }
+        }
+    }
+
+    private Snapshot readFile(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("unrecognized header");
+            }
+            long computedAt = in.readLong();
+            long windowStart = in.readLong();
+            if (in.readBoolean()) {
+                return new Snapshot(computedAt, windowStart, null,
+                        new long[] { in.readLong(), in.readLong(), in.readLong(), in.readLong() });
+            }
+            int count = in.readInt();
+            if (count < 0 || count > MAX_ROWS) {
+                throw new IOException("corrupt row count " + count);
+            }
+            AppUsageRows rows = new AppUsageRows(count);
+            for (int i = 0; i < count; i++) {
+                rows.add(in.readUTF(), readNullableString(in), readNullableString(in), in.readInt(),
+                        in.readLong(), in.readLong(), in.readLong(), in.readLong());
+            }
+            return new Snapshot(computedAt, windowStart, rows, null);
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable usage snapshot " + file.getName() + ": " + e.getMessage());
+            file.delete();
+            return null;
+        }
+    }
+
+    private void write(String key, Snapshot snapshot) {
+        synchronized (memory) {
+            memory.put(key, snapshot);
+        }
+        synchronized (this) {
+            if (!snapshotDir.exists() && !snapshotDir.mkdirs()) {
+                Log.w(TAG, "Could not create snapshot dir " + snapshotDir);
+                return;
+            }
+            File file = new File(snapshotDir, key + ".bin");
+            File tmp = new File(snapshotDir, key + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(snapshot.computedAt);
+                out.writeLong(snapshot.windowStart);
+                out.writeBoolean(snapshot.totals != null);
+                if (snapshot.totals != null) {
+                    for (long value : snapshot.totals) {
+                        out.writeLong(value);
+                    }
+                } else {
+                    AppUsageRows rows = snapshot.rows;
+                    out.writeInt(rows.size());
+                    for (int i = 0; i < rows.size(); i++) {
+                        out.writeUTF(rows.packageName(i));
+                        writeNullableString(out, rows.appName(i));
+                        writeNullableString(out, rows.iconHash(i));
+                        out.writeInt(rows.uid(i));
+                        out.writeLong(rows.wifiRx(i));
+                        out.writeLong(rows.wifiTx(i));
+                        out.writeLong(rows.mobileRx(i));
+                        out.writeLong(rows.mobileTx(i));
+                    }
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Error writing usage snapshot " + key + ": " + e.getMessage());
+                tmp.delete();
+                return;
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
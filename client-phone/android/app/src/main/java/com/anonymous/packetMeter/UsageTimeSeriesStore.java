@@ -0,0 +1,407 @@
+package com.anonymous.packetMeter;
+
+import android.app.usage.NetworkStatsManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.anonymous.packetMeter.core.QueryToken;
+import com.anonymous.packetMeter.core.UidUsageTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-device per-uid usage history kept independently of NetworkStats retention.
+ *
+ * Records are fixed-width (period, uid, transport, rx, tx) rows in memory-mapped segment
+ * files under {@code filesDir/usage-history}. Recent history is stored per hour, one
+ * segment per local day; hours older than {@link #HOURLY_RETENTION_DAYS} are rolled up into
+ * per-day records, one segment per {@link #DAYS_PER_DAILY_SEGMENT} days, and daily
+ * segments older than {@link #DAILY_RETENTION_DAYS} are deleted. Days are local calendar
+ * days, as everywhere else in the module; an hour belongs to the day its start falls in.
+ *
+ * {@link UsageReportWorker} fills the store on every run, so history keeps growing while
+ * the app is not opened. Each fill is bounded, so after a long gap the store catches up
+ * over several runs; {@link #coverage} tells callers which range is actually stored.
+ */
+final class UsageTimeSeriesStore {
+    private static final String TAG = "NetworkUsage";
+    private static final String SERIES_DIR = "usage-history";
+    private static final String STATE_PREFS = "packetmeter.usage-history";
+    private static final String KEY_LAST_HOUR = "lastFilledHour";
+    private static final String KEY_FIRST_HOUR = "firstFilledHour";
+
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    private static final long SETTLE_MS = TimeUnit.HOURS.toMillis(3);
+
+    static final int HOURLY_RETENTION_DAYS = 14;
+    static final int DAILY_RETENTION_DAYS = 400;
+    static final int DAYS_PER_DAILY_SEGMENT = 32;
+    private static final int INITIAL_BACKFILL_DAYS = 30;
+    // Upper bound on binder queries issued by one fill() call; the rest is picked up next time.
+    private static final int MAX_QUERIES_PER_FILL = 96;
+
+    private static UsageTimeSeriesStore instance;
+
+    private final File seriesDir;
+    private final SharedPreferences state;
+
+    static synchronized UsageTimeSeriesStore get(Context context) {
+        if (instance == null) {
+            instance = new UsageTimeSeriesStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private UsageTimeSeriesStore(Context context) {
+        this.seriesDir = new File(context.getFilesDir(), SERIES_DIR);
+        this.state = context.getSharedPreferences(STATE_PREFS, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Append closed hours that have not been stored yet, then roll up and compact. Hours
+     * beyond the hourly retention window are stored directly as daily records. Issues at
+     * most {@link #MAX_QUERIES_PER_FILL} queries; returns true once the store is caught up.
+     */
+    synchronized boolean fill(NetworkStatsManager nsm, QueryToken token) throws IOException {
+        long now = System.currentTimeMillis();
+        long today = localDay(now);
+        long lastClosedHour = (now - SETTLE_MS) / HOUR_MS - 1;
+        long oldestHour = firstHourOf(today - INITIAL_BACKFILL_DAYS);
+        long hour = Math.max(state.getLong(KEY_LAST_HOUR, oldestHour - 1) + 1, oldestHour);
+        if (!state.contains(KEY_FIRST_HOUR)) {
+            state.edit().putLong(KEY_FIRST_HOUR, hour).commit();
+        }
+        long hourlyFrom = firstHourOf(today - HOURLY_RETENTION_DAYS);
+
+        int queries = 0;
+        while (hour <= lastClosedHour && queries < MAX_QUERIES_PER_FILL) {
+            token.throwIfCancelled();
+            long day = dayOfHour(hour);
+            if (hour < hourlyFrom) {
+                // Whole days outside the hourly window go straight to the daily tier
+                long dayEndHour = firstHourOf(day + 1);
+                if (hour == firstHourOf(day) && dayEndHour <= lastClosedHour + 1) {
+                    UidUsageTable table = UsageAggregator.aggregate(nsm,
+                            hour * HOUR_MS, dayEndHour * HOUR_MS, token);
+                    appendTable(dailySegment(day), (int) day, table);
+                    queries += 2;
+                    hour = dayEndHour;
+                    state.edit().putLong(KEY_LAST_HOUR, hour - 1).commit();
+                    continue;
+                }
+            }
+            UidUsageTable table = UsageAggregator.aggregate(nsm,
+                    hour * HOUR_MS, (hour + 1) * HOUR_MS, token);
+            appendTable(hourlySegment(day), (int) hour, table);
+            queries += 2;
+            state.edit().putLong(KEY_LAST_HOUR, hour).commit();
+            hour++;
+        }
+
+        rollUp(now);
+        return hour > lastClosedHour;
+    }
+
+    /**
+     * [from, to) of the history currently stored, or null if nothing has been stored yet.
+     * Usage outside it is missing from {@link #query} results, not zero.
+     */
+    synchronized long[] coverage() {
+        if (!state.contains(KEY_LAST_HOUR)) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        long firstKeptDay = Math.floorDiv(localDay(now) - DAILY_RETENTION_DAYS,
+                DAYS_PER_DAILY_SEGMENT) * DAYS_PER_DAILY_SEGMENT;
+        long from = Math.max(state.getLong(KEY_FIRST_HOUR, 0), firstHourOf(firstKeptDay));
+        return new long[] { from * HOUR_MS, (state.getLong(KEY_LAST_HOUR, 0) + 1) * HOUR_MS };
+    }
+
+    /**
+     * Sum stored usage per uid for records starting in [startTime, endTime).
+     * Resolution is one hour for recent history and one local day after roll-up.
+     */
+    synchronized UidUsageTable query(long startTime, long endTime) throws IOException {
+        UidUsageTable result = new UidUsageTable();
+        long startHour = Math.floorDiv(startTime, HOUR_MS);
+        long endHour = ceilDiv(endTime, HOUR_MS);
+        long firstDay = localDay(startTime);
+        long lastDay = localDay(endTime - 1);
+
+        // Daily records cover whole days, so count them only when the day lies inside the range.
+        long fromDay = firstHourOf(firstDay) < startHour ? firstDay + 1 : firstDay;
+        long toDay = firstHourOf(lastDay + 1) <= endHour ? lastDay + 1 : lastDay;
+        if (fromDay < toDay) {
+            for (long block = Math.floorDiv(fromDay, DAYS_PER_DAILY_SEGMENT);
+                    block <= Math.floorDiv(toDay - 1, DAYS_PER_DAILY_SEGMENT); block++) {
+                readInto(dailySegmentFile(block), fromDay, toDay, result);
+            }
+        }
+        for (long day = firstDay; day <= lastDay; day++) {
+            readInto(hourlySegmentFile(day), startHour, endHour, result);
+        }
+        return result;
+    }
+
+    private void rollUp(long now) throws IOException {
+        long firstHourlyDay = localDay(now) - HOURLY_RETENTION_DAYS;
+        long firstDailyBlock = Math.floorDiv(localDay(now) - DAILY_RETENTION_DAYS,
+                DAYS_PER_DAILY_SEGMENT);
+
+        File[] files = seriesDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Oldest day first, so a roll-up interrupted by a crash is always the daily segment's
+        // last period when it is retried
+        Arrays.sort(files, (a, b) -> a.getName().length() != b.getName().length()
+                ? a.getName().length() - b.getName().length()
+                : a.getName().compareTo(b.getName()));
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(".seg")) {
+                continue;
+            }
+            long index;
+            try {
+                index = Long.parseLong(name.substring(2, name.length() - 4));
+            } catch (NumberFormatException e) {
+                file.delete();
+                continue;
+            }
+            if (name.startsWith("h-") && index < firstHourlyDay) {
+                UidUsageTable day = new UidUsageTable();
+                readInto(file, Long.MIN_VALUE, Long.MAX_VALUE, day);
+                appendTable(dailySegment(index), (int) index, day);
+                file.delete();
+            } else if (name.startsWith("d-") && index < firstDailyBlock) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Write table as the records of period. A period is only ever rewritten while it is the
+     * last one in its segment: when the process dies after the append but before the fill
+     * position or roll-up is recorded. Its old records are dropped first, so the retry
+     * replaces them instead of counting the period twice.
+     */
+    private void appendTable(Segment segment, int period, UidUsageTable table) throws IOException {
+        try {
+            segment.truncatePeriod(period);
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (table.isEmpty(slot)) {
+                    continue;
+                }
+                int uid = table.uidAt(slot);
+                if (table.wifiRxAt(slot) != 0 || table.wifiTxAt(slot) != 0) {
+                    segment.append(period, uid, UidUsageTable.TRANSPORT_WIFI,
+                            table.wifiRxAt(slot), table.wifiTxAt(slot));
+                }
+                if (table.mobileRxAt(slot) != 0 || table.mobileTxAt(slot) != 0) {
+                    segment.append(period, uid, UidUsageTable.TRANSPORT_MOBILE,
+                            table.mobileRxAt(slot), table.mobileTxAt(slot));
+                }
+            }
+            segment.flush();
+        } finally {
+            segment.close();
+        }
+    }
+
+    private void readInto(File file, long fromPeriod, long toPeriod, UidUsageTable result)
+            throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        Segment segment = Segment.open(file);
+        try {
+            int count = segment.count();
+            for (int i = 0; i < count; i++) {
+                long period = segment.periodAt(i);
+                if (period < fromPeriod || period >= toPeriod) {
+                    continue;
+                }
+                result.add(segment.uidAt(i), segment.transportAt(i), segment.rxAt(i), segment.txAt(i));
+            }
+        } finally {
+            segment.close();
+        }
+    }
+
+    private Segment hourlySegment(long day) throws IOException {
+        ensureDir();
+        return Segment.open(hourlySegmentFile(day));
+    }
+
+    private Segment dailySegment(long day) throws IOException {
+        ensureDir();
+        return Segment.open(dailySegmentFile(Math.floorDiv(day, DAYS_PER_DAILY_SEGMENT)));
+    }
+
+    private File hourlySegmentFile(long day) {
+        return new File(seriesDir, "h-" + day + ".seg");
+    }
+
+    private File dailySegmentFile(long block) {
+        return new File(seriesDir, "d-" + block + ".seg");
+    }
+
+    private void ensureDir() throws IOException {
+        if (!seriesDir.exists() && !seriesDir.mkdirs()) {
+            throw new IOException("Could not create " + seriesDir);
+        }
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return -Math.floorDiv(-value, divisor);
+    }
+
+    // Local calendar day of time, numbered like epoch days
+    private static long localDay(long time) {
+        return Math.floorDiv(time + TimeZone.getDefault().getOffset(time), DAY_MS);
+    }
+
+    private static long localDayStart(long day) {
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.setTimeInMillis(day * DAY_MS);
+        Calendar local = Calendar.getInstance();
+        local.clear();
+        local.set(utc.get(Calendar.YEAR), utc.get(Calendar.MONTH), utc.get(Calendar.DAY_OF_MONTH));
+        return local.getTimeInMillis();
+    }
+
+    private static long dayOfHour(long hour) {
+        return localDay(hour * HOUR_MS);
+    }
+
+    // First hour starting in the local day
+    private static long firstHourOf(long day) {
+        return ceilDiv(localDayStart(day), HOUR_MS);
+    }
+
+    /**
+     * One memory-mapped segment file: a 16-byte header followed by 32-byte records of
+     * (int period, int uid, int transport, int reserved, long rx, long tx).
+     */
+    private static final class Segment {
+        private static final int MAGIC = 0x504d5453; // "PMTS"
+        private static final int VERSION = 1;
+        private static final int HEADER_BYTES = 16;
+        private static final int RECORD_BYTES = 32;
+        private static final int INITIAL_RECORDS = 512;
+
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private MappedByteBuffer buffer;
+        private int count;
+
+        static Segment open(File path) throws IOException {
+            return new Segment(new RandomAccessFile(path, "rw"));
+        }
+
+        private Segment(RandomAccessFile file) throws IOException {
+            this.file = file;
+            this.channel = file.getChannel();
+            long length = channel.size();
+            if (length < HEADER_BYTES) {
+                map(HEADER_BYTES + (long) INITIAL_RECORDS * RECORD_BYTES);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, 0);
+                count = 0;
+            } else {
+                map(length);
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                    close();
+                    throw new IOException("Unrecognized usage segment");
+                }
+                count = buffer.getInt(8);
+                long capacity = (length - HEADER_BYTES) / RECORD_BYTES;
+                if (count < 0 || count > capacity) {
+                    Log.w(TAG, "Truncating corrupt usage segment record count " + count);
+                    count = (int) Math.max(0, Math.min(count, capacity));
+                }
+            }
+        }
+
+        int count() {
+            return count;
+        }
+
+        int periodAt(int i) {
+            return buffer.getInt(offset(i));
+        }
+
+        int uidAt(int i) {
+            return buffer.getInt(offset(i) + 4);
+        }
+
+        int transportAt(int i) {
+            return buffer.getInt(offset(i) + 8);
+        }
+
+        long rxAt(int i) {
+            return buffer.getLong(offset(i) + 16);
+        }
+
+        long txAt(int i) {
+            return buffer.getLong(offset(i) + 24);
+        }
+
+        /** Drop the trailing records of period, if the segment ends with it. */
+        void truncatePeriod(int period) {
+            int keep = count;
+            while (keep > 0 && periodAt(keep - 1) == period) {
+                keep--;
+            }
+            if (keep != count) {
+                count = keep;
+                buffer.putInt(8, count);
+            }
+        }
+
+        void append(int period, int uid, int transport, long rx, long tx) throws IOException {
+            int offset = offset(count);
+            if (offset + RECORD_BYTES > buffer.capacity()) {
+                map((long) buffer.capacity() * 2);
+            }
+            buffer.putInt(offset, period);
+            buffer.putInt(offset + 4, uid);
+            buffer.putInt(offset + 8, transport);
+            buffer.putInt(offset + 12, 0);
+            buffer.putLong(offset + 16, rx);
+            buffer.putLong(offset + 24, tx);
+            count++;
+            // Publish the record only after its bytes are in place
+            buffer.putInt(8, count);
+        }
+
+        void flush() {
+            buffer.force();
+        }
+
+        void close() throws IOException {
+            channel.close();
+            file.close();
+        }
+
+        private void map(long size) throws IOException {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        private static int offset(int i) {
+            return HEADER_BYTES + i * RECORD_BYTES;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.anonymous.packetMeter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.anonymous.packetMeter.core.AppUsageRows;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link ReportUploader} and {@link ReportOutbox#flush} against a local HTTP server: accepted
+ * batches leave the outbox, 400/403 batches are dropped, 5xx batches stay queued for the next
+ * flush.
+ */
+public class ReportUploadTest {
+    private static final String TOKEN = "device-token";
+
+    private HttpServer server;
+    private String baseUrl;
+    private File outboxDir;
+    // Statuses for the next requests, 200 once empty
+    private final Deque<Integer> statuses = new ArrayDeque<>();
+    private final List<Request> requests = new ArrayList<>();
+
+    private static final class Request {
+        final String path;
+        final String authorization;
+        final String contentEncoding;
+        final String body;
+
+        Request(String path, String authorization, String contentEncoding, String body) {
+            this.path = path;
+            this.authorization = authorization;
+            this.contentEncoding = contentEncoding;
+            this.body = body;
+        }
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] raw = readAll(exchange.getRequestBody());
+            String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            byte[] body = "gzip".equals(encoding)
+                    ? readAll(new GZIPInputStream(new ByteArrayInputStream(raw))) : raw;
+            int status;
+            synchronized (this) {
+                requests.add(new Request(exchange.getRequestURI().getPath(),
+                        exchange.getRequestHeaders().getFirst("Authorization"), encoding,
+                        new String(body, StandardCharsets.UTF_8)));
+                status = statuses.isEmpty() ? 200 : statuses.poll();
+            }
+            byte[] response = ("{\"status\":" + status + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        outboxDir = Files.createTempDirectory("report-outbox").toFile();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        File[] files = outboxDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        outboxDir.delete();
+    }
+
+    @Test
+    public void postReturnsStatusAndBody() throws IOException {
+        statuses.add(201);
+
+        ReportUploader.Response response = ReportUploader.post(baseUrl + "/api/v1/traffic/total",
+                TOKEN, "{\"TotalRx\":1}");
+
+        assertEquals(201, response.status);
+        assertTrue(response.isSuccessful());
+        assertEquals("{\"status\":201}", response.body);
+        assertEquals("Bearer " + TOKEN, requests.get(0).authorization);
+        assertEquals("{\"TotalRx\":1}", requests.get(0).body);
+    }
+
+    @Test
+    public void postReturnsHttpErrorsAsResponses() throws IOException {
+        statuses.add(404);
+
+        ReportUploader.Response response = ReportUploader.post(baseUrl + "/missing", TOKEN, "{}");
+
+        assertEquals(404, response.status);
+        assertFalse(response.isSuccessful());
+        assertEquals("{\"status\":404}", response.body);
+    }
+
+    @Test
+    public void flushUploadsQueuedReportsAndDeletesThem() throws Exception {
+        ReportOutbox outbox = outbox();
+        outbox.append(1_700_000_000_000L, rows("com.example.a", "com.example.b"));
+        outbox.append(1_700_000_900_000L, rows("com.example.a"));
+
+        ReportOutbox.FlushResult result = outbox.flush(batchUrl(), TOKEN);
+
+        assertTrue(result.complete);
+        assertEquals(1, result.batches);
+        assertEquals(2, result.reports);
+        assertEquals(0, outbox.pendingSize()[0]);
+        Request request = requests.get(0);
+        assertEquals(ReportOutbox.BATCH_PATH, request.path);
+        assertEquals("gzip", request.contentEncoding);
+        JSONObject body = new JSONObject(request.body);
+        assertEquals(2, body.getJSONArray("Apps").length());
+        JSONArray reports = body.getJSONArray("Reports");
+        assertEquals(2, reports.length());
+        assertEquals(2, reports.getJSONObject(0).getJSONArray("Apps").length());
+        assertEquals(1, reports.getJSONObject(1).getJSONArray("Apps").length());
+    }
+
+    @Test
+    public void flushDropsBatchesTheServerRejects() throws Exception {
+        for (int status : new int[] { 400, 403 }) {
+            requests.clear();
+            statuses.add(status);
+            ReportOutbox outbox = outbox();
+            outbox.append(1_700_000_000_000L, rows("com.example.a"));
+
+            ReportOutbox.FlushResult result = outbox.flush(batchUrl(), TOKEN);
+
+            assertTrue(result.complete);
+            assertEquals(0, result.batches);
+            assertEquals(0, outbox.pendingSize()[0]);
+            assertEquals(1, requests.size());
+        }
+    }
+
+    @Test
+    public void flushKeepsBatchesOnServerErrorAndRetriesThem() throws Exception {
+        statuses.add(503);
+        ReportOutbox outbox = outbox();
+        outbox.append(1_700_000_000_000L, rows("com.example.a"));
+
+        ReportOutbox.FlushResult failed = outbox.flush(batchUrl(), TOKEN);
+
+        assertFalse(failed.complete);
+        assertEquals(0, failed.reports);
+        assertEquals(1, outbox.pendingSize()[0]);
+
+        ReportOutbox.FlushResult retried = outbox.flush(batchUrl(), TOKEN);
+
+        assertTrue(retried.complete);
+        assertEquals(1, retried.reports);
+        assertEquals(0, outbox.pendingSize()[0]);
+        assertEquals(requests.get(0).body, requests.get(1).body);
+    }
+
+    @Test(expected = IOException.class)
+    public void flushThrowsWhenTheServerIsUnreachable() throws Exception {
+        ReportOutbox outbox = outbox();
+        outbox.append(1_700_000_000_000L, rows("com.example.a"));
+        String url = batchUrl();
+        server.stop(0);
+
+        outbox.flush(url, TOKEN);
+    }
+
+    private ReportOutbox outbox() {
+        return new ReportOutbox(outboxDir, iconHash -> null);
+    }
+
+    private String batchUrl() {
+        return baseUrl + ReportOutbox.BATCH_PATH;
+    }
+
+    private static AppUsageRows rows(String... packageNames) {
+        AppUsageRows rows = new AppUsageRows(packageNames.length);
+        for (int i = 0; i < packageNames.length; i++) {
+            rows.add(packageNames[i], "App " + i, null, 10_000 + i, 1000L * (i + 1), 100L, 0L, 0L);
+        }
+        return rows;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,115 @@
+package com.anonymous.packetMeter.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of each stage between a usage source and an encoded app list, at installed-app
+ * counts from a light phone up to a work profile or emulator with thousands of uids.
+ * Run with {@code ./gradlew :usage-core:jmh}; the gc profiler reports
+ * {@code gc.alloc.rate.norm}, the bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AggregationBenchmark {
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+    private static final long START = 1_700_006_400_000L; // a UTC midnight
+    private static final int PAGE_SIZE = 50;
+    private static final int[] CUBE_TRANSPORTS = {
+            UsageCube.TRANSPORT_WIFI, UsageCube.TRANSPORT_MOBILE };
+
+    @Param({ "100", "1000", "10000" })
+    public int uids;
+
+    private SyntheticUsageSource source;
+    private UidUsageTable table;
+    private String[] packageNames;
+    private String[] appNames;
+    private AppUsageRows sortedRows;
+    private long[] hourEdges;
+
+    @Setup
+    public void setUp() throws IOException {
+        source = new SyntheticUsageSource(uids, 42);
+        table = SummaryAggregator.aggregate(source, START, START + DAY_MS, QueryToken.NONE);
+
+        packageNames = new String[uids];
+        appNames = new String[uids];
+        for (int i = 0; i < uids; i++) {
+            packageNames[i] = "com.example.app" + i;
+            appNames[i] = "App " + i;
+        }
+        sortedRows = buildRows();
+        sortedRows.sortByTotalDescending();
+
+        hourEdges = new long[25];
+        for (int i = 0; i < hourEdges.length; i++) {
+            hourEdges[i] = START + i * HOUR_MS;
+        }
+    }
+
+    @Benchmark
+    public UidUsageTable aggregateDay() throws IOException {
+        return SummaryAggregator.aggregate(source, START, START + DAY_MS, QueryToken.NONE);
+    }
+
+    @Benchmark
+    public long[] cubeByState() throws IOException {
+        UsageCube cube = UsageCube.collect(source, START, START + DAY_MS, CUBE_TRANSPORTS,
+                QueryToken.NONE);
+        return cube.groupBy(UsageCube.DIM_STATE, UsageCube.filter());
+    }
+
+    @Benchmark
+    public int[] rankFirstPage() {
+        TopKSelector top = new TopKSelector(PAGE_SIZE);
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (!table.isEmpty(slot)) {
+                top.offer(slot, table.totalAt(slot));
+            }
+        }
+        return top.drainDescending();
+    }
+
+    @Benchmark
+    public AppUsageRows buildAndSortRows() {
+        AppUsageRows rows = buildRows();
+        rows.sortByTotalDescending();
+        return rows;
+    }
+
+    @Benchmark
+    public PackedAppUsage packRows() {
+        return PackedAppUsage.pack(sortedRows);
+    }
+
+    @Benchmark
+    public UsageSeries hourlySeriesForDay() throws IOException {
+        return UsageSeries.collect(source, hourEdges, null, QueryToken.NONE);
+    }
+
+    private AppUsageRows buildRows() {
+        AppUsageRows rows = new AppUsageRows(table.size());
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (table.isEmpty(slot)) {
+                continue;
+            }
+            int app = table.uidAt(slot) - 10_000;
+            rows.add(packageNames[app], appNames[app], null, table.uidAt(slot),
+                    table.wifiRxAt(slot), table.wifiTxAt(slot),
+                    table.mobileRxAt(slot), table.mobileTxAt(slot));
+        }
+        return rows;
+    }
+}
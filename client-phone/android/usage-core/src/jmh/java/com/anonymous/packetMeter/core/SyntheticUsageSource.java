@@ -0,0 +1,95 @@
+package com.anonymous.packetMeter.core;
+
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic in-memory {@link UsageSource} shaped like NetworkStats output: summary
+ * queries return one bucket per uid and state/metered/roaming split, detail queries one
+ * bucket per uid and split for every {@link #DETAIL_BUCKET_MS} of the range. Byte counts
+ * are heavy-tailed so ranking sees a few large apps and a long tail of small ones.
+ */
+final class SyntheticUsageSource implements UsageSource {
+    static final long DETAIL_BUCKET_MS = 2 * 60 * 60 * 1000L;
+    // Foreground/background x metered/unmetered, as returned for a typical day
+    static final int SPLITS_PER_UID = 4;
+
+    private final int[] uids;
+    private final long[] rxBytes;
+    private final long[] txBytes;
+    private final UsageBucket bucket = new UsageBucket();
+
+    SyntheticUsageSource(int uidCount, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        uids = new int[uidCount];
+        rxBytes = new long[uidCount];
+        txBytes = new long[uidCount];
+        for (int i = 0; i < uidCount; i++) {
+            uids[i] = 10_000 + i;
+            rxBytes[i] = 1 + (long) Math.exp(random.nextDouble() * 22);
+            txBytes[i] = 1 + rxBytes[i] / (2 + random.nextInt(20));
+        }
+    }
+
+    @Override
+    public void querySummary(int transport, long startTime, long endTime, BucketSink sink,
+            QueryToken token) {
+        bucket.transport = transport;
+        bucket.roaming = 1;
+        bucket.startTime = startTime;
+        bucket.endTime = endTime;
+        for (int i = 0; i < uids.length; i++) {
+            for (int split = 0; split < SPLITS_PER_UID; split++) {
+                emit(i, transport, split, SPLITS_PER_UID, sink);
+            }
+        }
+    }
+
+    @Override
+    public void queryDetails(int transport, long startTime, long endTime, Integer uid,
+            BucketSink sink, QueryToken token) {
+        bucket.transport = transport;
+        bucket.roaming = 1;
+        long first = Math.floorDiv(startTime, DETAIL_BUCKET_MS) * DETAIL_BUCKET_MS;
+        int slices = (int) ((endTime - first + DETAIL_BUCKET_MS - 1) / DETAIL_BUCKET_MS);
+        for (long start = first; start < endTime; start += DETAIL_BUCKET_MS) {
+            bucket.startTime = start;
+            bucket.endTime = start + DETAIL_BUCKET_MS;
+            for (int i = 0; i < uids.length; i++) {
+                if (uid != null && uids[i] != uid) {
+                    continue;
+                }
+                emit(i, transport, 0, slices, sink);
+            }
+        }
+    }
+
+    @Override
+    public long[] queryDeviceTotal(int transport, long startTime, long endTime) {
+        long rx = 0;
+        long tx = 0;
+        int divisor = transport == UidUsageTable.TRANSPORT_MOBILE ? 3 : 1;
+        for (int i = 0; i < uids.length; i++) {
+            rx += rxBytes[i] / divisor;
+            tx += txBytes[i] / divisor;
+        }
+        return new long[] { rx, tx };
+    }
+
+    private void emit(int i, int transport, int split, int parts, BucketSink sink) {
+        long rx = rxBytes[i] / parts;
+        long tx = txBytes[i] / parts;
+        if (transport == UidUsageTable.TRANSPORT_MOBILE) {
+            rx /= 3;
+            tx /= 3;
+        }
+        if (rx == 0 && tx == 0) {
+            return;
+        }
+        bucket.uid = uids[i];
+        bucket.state = 1 + (split & 1);
+        bucket.metered = 1 + (split >> 1);
+        bucket.rxBytes = rx;
+        bucket.txBytes = tx;
+        sink.accept(bucket);
+    }
+}
@@ -0,0 +1,132 @@
+package com.anonymous.packetMeter.core;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Difference between two ranked app lists, keyed by uid (each list reports a uid once).
+ *
+ * Only rows that were added, removed, or whose totals, label or icon changed are kept, so
+ * the result is as small as the change. Ranks are row indexes in the lists, which are sorted
+ * by total bytes; rows that only moved because others grew are not listed, and clients
+ * re-sort by total after applying the diff.
+ */
+public final class AppUsageDiff {
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    /** Rows new to the current list, with their totals. */
+    public final AppUsageRows added;
+    public final int[] addedRanks;
+    /** Rows in both lists whose totals, label or icon changed, with their new values. */
+    public final AppUsageRows changed;
+    public final int[] changedRanks;
+    public final int[] changedPreviousRanks;
+    /** Rows of the previous list that are gone from the current one. */
+    public final String[] removedPackages;
+    public final int[] removedUids;
+
+    private AppUsageDiff(AppUsageRows added, int[] addedRanks, AppUsageRows changed,
+            int[] changedRanks, int[] changedPreviousRanks, String[] removedPackages,
+            int[] removedUids) {
+        this.added = added;
+        this.addedRanks = addedRanks;
+        this.changed = changed;
+        this.changedRanks = changedRanks;
+        this.changedPreviousRanks = changedPreviousRanks;
+        this.removedPackages = removedPackages;
+        this.removedUids = removedUids;
+    }
+
+    /**
+     * Diff current against previous; previous may be null, in which case every row is added.
+     * Costs O(previous + current) with one primitive uid index over previous.
+     */
+    public static AppUsageDiff between(AppUsageRows previous, AppUsageRows current) {
+        int previousSize = previous == null ? 0 : previous.size();
+        int capacity = Integer.highestOneBit(Math.max(16, previousSize * 2) - 1) << 1;
+        int mask = capacity - 1;
+        int[] keys = new int[capacity];
+        int[] rows = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        for (int row = 0; row < previousSize; row++) {
+            int uid = previous.uid(row);
+            int slot = mix(uid) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != uid) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = uid;
+            rows[slot] = row;
+        }
+
+        boolean[] kept = new boolean[previousSize];
+        AppUsageRows added = new AppUsageRows(0);
+        int[] addedRanks = new int[current.size()];
+        AppUsageRows changed = new AppUsageRows(0);
+        int[] changedRanks = new int[current.size()];
+        int[] changedPreviousRanks = new int[current.size()];
+        for (int row = 0; row < current.size(); row++) {
+            int uid = current.uid(row);
+            int slot = mix(uid) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != uid) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == EMPTY) {
+                addedRanks[added.size()] = row;
+                copyRow(current, row, added);
+                continue;
+            }
+            int before = rows[slot];
+            kept[before] = true;
+            if (!sameRow(previous, before, current, row)) {
+                changedRanks[changed.size()] = row;
+                changedPreviousRanks[changed.size()] = before;
+                copyRow(current, row, changed);
+            }
+        }
+
+        int removed = previousSize;
+        for (boolean k : kept) {
+            if (k) {
+                removed--;
+            }
+        }
+        String[] removedPackages = new String[removed];
+        int[] removedUids = new int[removed];
+        for (int row = 0, i = 0; row < previousSize; row++) {
+            if (!kept[row]) {
+                removedPackages[i] = previous.packageName(row);
+                removedUids[i++] = previous.uid(row);
+            }
+        }
+        return new AppUsageDiff(added, Arrays.copyOf(addedRanks, added.size()), changed,
+                Arrays.copyOf(changedRanks, changed.size()),
+                Arrays.copyOf(changedPreviousRanks, changed.size()), removedPackages, removedUids);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /** Number of added, changed and removed rows. */
+    public int size() {
+        return added.size() + changed.size() + removedUids.length;
+    }
+
+    private static boolean sameRow(AppUsageRows a, int i, AppUsageRows b, int j) {
+        return a.wifiRx(i) == b.wifiRx(j) && a.wifiTx(i) == b.wifiTx(j)
+                && a.mobileRx(i) == b.mobileRx(j) && a.mobileTx(i) == b.mobileTx(j)
+                && Objects.equals(a.packageName(i), b.packageName(j))
+                && Objects.equals(a.appName(i), b.appName(j))
+                && Objects.equals(a.iconHash(i), b.iconHash(j));
+    }
+
+    private static void copyRow(AppUsageRows from, int row, AppUsageRows to) {
+        to.add(from.packageName(row), from.appName(row), from.iconHash(row), from.uid(row),
+                from.wifiRx(row), from.wifiTx(row), from.mobileRx(row), from.mobileTx(row));
+    }
+
+    private static int mix(int uid) {
+        int h = uid * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,133 @@
+package com.anonymous.packetMeter.core;
+
+/**
+ * Joins per-uid totals with package metadata into {@link AppUsageRows}. Packages sharing a
+ * uid are reported once, under the first package the directory lists for it; tethered
+ * traffic becomes its own row.
+ */
+public final class AppUsageJoin {
+    /** {@code NetworkStats.Bucket.UID_TETHERING}: traffic forwarded for tethered clients. */
+    public static final int UID_TETHERING = -5;
+    public static final String TETHERING_PACKAGE = "com.android.tethering";
+    public static final String TETHERING_LABEL = "Tethering / Hotspot";
+
+    private AppUsageJoin() {
+    }
+
+    /**
+     * One row per listed uid with traffic plus tethering, sorted by total bytes descending.
+     * Stops early, with the rows resolved so far, once the token's deadline has passed.
+     */
+    public static <P> AppUsageRows collect(UidUsageTable table, PackageDirectory<P> directory,
+            boolean detailed, QueryToken token) {
+        AppUsageRows rows = new AppUsageRows(table.size());
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (table.isEmpty(slot) || table.totalAt(slot) == 0) {
+                continue;
+            }
+            token.throwIfCancelled();
+            if (token.isPastDeadline()) {
+                break;
+            }
+            P pkg = directory.listedPackage(table.uidAt(slot), detailed);
+            if (pkg != null) {
+                addApp(rows, table, slot, directory, pkg);
+            }
+        }
+        addTethering(rows, table);
+        rows.sortByTotalDescending();
+        return rows;
+    }
+
+    /**
+     * Rank the k largest listed uids with traffic, tethering included, on primitive totals.
+     * Only the directory's listed lookup runs here; labels and icons are resolved later, for
+     * the ranks a caller actually reports.
+     */
+    public static <P> Ranking<P> rankListed(UidUsageTable table, PackageDirectory<P> directory,
+            boolean detailed, int k) {
+        Object[] listed = new Object[table.capacity()];
+        TopKSelector top = new TopKSelector(k);
+        int totalApps = 0;
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (table.isEmpty(slot) || table.totalAt(slot) == 0) {
+                continue;
+            }
+            int uid = table.uidAt(slot);
+            if (uid != UID_TETHERING) {
+                listed[slot] = directory.listedPackage(uid, detailed);
+                if (listed[slot] == null) {
+                    continue;
+                }
+            }
+            top.offer(slot, table.totalAt(slot));
+            totalApps++;
+        }
+        return new Ranking<>(table, directory, listed, top.drainDescending(), totalApps);
+    }
+
+    /** Result of {@link #rankListed}: table slots by total, largest first. */
+    public static final class Ranking<P> {
+        private final UidUsageTable table;
+        private final PackageDirectory<P> directory;
+        // Listed package per slot; null for tethering and unranked slots
+        private final Object[] listed;
+        private final int[] slots;
+        /** Listed uids with traffic, tethering included, whether ranked or not. */
+        public final int totalApps;
+
+        private Ranking(UidUsageTable table, PackageDirectory<P> directory, Object[] listed,
+                int[] slots, int totalApps) {
+            this.table = table;
+            this.directory = directory;
+            this.listed = listed;
+            this.slots = slots;
+            this.totalApps = totalApps;
+        }
+
+        /** Number of ranked rows, at most k. */
+        public int size() {
+            return slots.length;
+        }
+
+        /**
+         * Rows for ranks [from, to), resolving labels and icons for those rows only.
+         */
+        @SuppressWarnings("unchecked")
+        public AppUsageRows rows(int from, int to) {
+            AppUsageRows rows = new AppUsageRows(to - from);
+            for (int i = from; i < to; i++) {
+                int slot = slots[i];
+                if (listed[slot] != null) {
+                    addApp(rows, table, slot, directory, (P) listed[slot]);
+                } else {
+                    addTethering(rows, table);
+                }
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Append the row for pkg with the totals in slot; resolves its label and icon hash.
+     */
+    public static <P> void addApp(AppUsageRows rows, UidUsageTable table, int slot,
+            PackageDirectory<P> directory, P pkg) {
+        rows.add(directory.packageName(pkg), directory.label(pkg), directory.iconHash(pkg),
+                directory.uid(pkg), table.wifiRxAt(slot), table.wifiTxAt(slot),
+                table.mobileRxAt(slot), table.mobileTxAt(slot));
+    }
+
+    /**
+     * Append tethered traffic as an app row, if the table has any.
+     */
+    public static void addTethering(AppUsageRows rows, UidUsageTable table) {
+        int slot = table.indexOf(UID_TETHERING);
+        if (slot < 0 || table.totalAt(slot) == 0) {
+            return;
+        }
+        rows.add(TETHERING_PACKAGE, TETHERING_LABEL, null, -1,
+                table.wifiRxAt(slot), table.wifiTxAt(slot),
+                table.mobileRxAt(slot), table.mobileTxAt(slot));
+    }
+}
@@ -0,0 +1,194 @@
+package com.anonymous.packetMeter.core;
+
+import java.util.Arrays;
+
+/**
+ * Columnar per-app usage result: one entry per column array for every app row.
+ * Rows are filled by {@link AppUsageJoin} and encoded for JS and the server by the app module.
+ */
+public final class AppUsageRows {
+    private int size;
+    private String[] packageNames;
+    private String[] appNames;
+    private String[] iconHashes;
+    private int[] uids;
+    private long[] wifiRx;
+    private long[] wifiTx;
+    private long[] mobileRx;
+    private long[] mobileTx;
+
+    public AppUsageRows(int expectedRows) {
+        int capacity = Math.max(8, expectedRows);
+        packageNames = new String[capacity];
+        appNames = new String[capacity];
+        iconHashes = new String[capacity];
+        uids = new int[capacity];
+        wifiRx = new long[capacity];
+        wifiTx = new long[capacity];
+        mobileRx = new long[capacity];
+        mobileTx = new long[capacity];
+    }
+
+    public void add(String packageName, String appName, String iconHash, int uid,
+            long wifiRxBytes, long wifiTxBytes, long mobileRxBytes, long mobileTxBytes) {
+        if (size == uids.length) {
+            grow();
+        }
+        packageNames[size] = packageName;
+        appNames[size] = appName;
+        iconHashes[size] = iconHash;
+        uids[size] = uid;
+        wifiRx[size] = wifiRxBytes;
+        wifiTx[size] = wifiTxBytes;
+        mobileRx[size] = mobileRxBytes;
+        mobileTx[size] = mobileTxBytes;
+        size++;
+    }
+
+    /**
+     * Append every row of other, in order.
+     */
+    public void addAll(AppUsageRows other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.packageNames[i], other.appNames[i], other.iconHashes[i], other.uids[i],
+                    other.wifiRx[i], other.wifiTx[i], other.mobileRx[i], other.mobileTx[i]);
+        }
+    }
+
+    /**
+     * The first count rows, or this instance if it has no more than that.
+     */
+    public AppUsageRows head(int count) {
+        if (size <= count) {
+            return this;
+        }
+        AppUsageRows head = new AppUsageRows(count);
+        for (int i = 0; i < count; i++) {
+            head.add(packageNames[i], appNames[i], iconHashes[i], uids[i],
+                    wifiRx[i], wifiTx[i], mobileRx[i], mobileTx[i]);
+        }
+        return head;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String packageName(int row) {
+        return packageNames[row];
+    }
+
+    public String appName(int row) {
+        return appNames[row];
+    }
+
+    public String iconHash(int row) {
+        return iconHashes[row];
+    }
+
+    public int uid(int row) {
+        return uids[row];
+    }
+
+    public long wifiRx(int row) {
+        return wifiRx[row];
+    }
+
+    public long wifiTx(int row) {
+        return wifiTx[row];
+    }
+
+    public long mobileRx(int row) {
+        return mobileRx[row];
+    }
+
+    public long mobileTx(int row) {
+        return mobileTx[row];
+    }
+
+    public long totalBytes(int row) {
+        return wifiRx[row] + wifiTx[row] + mobileRx[row] + mobileTx[row];
+    }
+
+    /**
+     * Sort rows by total bytes, largest first, comparing primitive totals only.
+     */
+    public void sortByTotalDescending() {
+        long[] totals = new long[size];
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            totals[i] = totalBytes(i);
+            order[i] = i;
+        }
+        quickSort(order, totals, 0, size - 1);
+        permute(order);
+    }
+
+    private void permute(int[] order) {
+        String[] newPackageNames = new String[packageNames.length];
+        String[] newAppNames = new String[appNames.length];
+        String[] newIconHashes = new String[iconHashes.length];
+        int[] newUids = new int[uids.length];
+        long[] newWifiRx = new long[wifiRx.length];
+        long[] newWifiTx = new long[wifiTx.length];
+        long[] newMobileRx = new long[mobileRx.length];
+        long[] newMobileTx = new long[mobileTx.length];
+        for (int i = 0; i < size; i++) {
+            int from = order[i];
+            newPackageNames[i] = packageNames[from];
+            newAppNames[i] = appNames[from];
+            newIconHashes[i] = iconHashes[from];
+            newUids[i] = uids[from];
+            newWifiRx[i] = wifiRx[from];
+            newWifiTx[i] = wifiTx[from];
+            newMobileRx[i] = mobileRx[from];
+            newMobileTx[i] = mobileTx[from];
+        }
+        packageNames = newPackageNames;
+        appNames = newAppNames;
+        iconHashes = newIconHashes;
+        uids = newUids;
+        wifiRx = newWifiRx;
+        wifiTx = newWifiTx;
+        mobileRx = newMobileRx;
+        mobileTx = newMobileTx;
+    }
+
+    private static void quickSort(int[] order, long[] totals, int lo, int hi) {
+        while (lo < hi) {
+            long pivot = totals[order[(lo + hi) >>> 1]];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (totals[order[i]] > pivot) i++;
+                while (totals[order[j]] < pivot) j--;
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller half to bound stack depth
+            if (j - lo < hi - i) {
+                quickSort(order, totals, lo, j);
+                lo = i;
+            } else {
+                quickSort(order, totals, i, hi);
+                hi = j;
+            }
+        }
+    }
+
+    private void grow() {
+        int capacity = uids.length * 2;
+        packageNames = Arrays.copyOf(packageNames, capacity);
+        appNames = Arrays.copyOf(appNames, capacity);
+        iconHashes = Arrays.copyOf(iconHashes, capacity);
+        uids = Arrays.copyOf(uids, capacity);
+        wifiRx = Arrays.copyOf(wifiRx, capacity);
+        wifiTx = Arrays.copyOf(wifiTx, capacity);
+        mobileRx = Arrays.copyOf(mobileRx, capacity);
+        mobileTx = Arrays.copyOf(mobileTx, capacity);
+    }
+}
@@ -0,0 +1,8 @@
+package com.anonymous.packetMeter.core;
+
+/**
+ * Receives buckets from a {@link UsageSource} scan, one call per non-empty bucket.
+ */
+public interface BucketSink {
+    void accept(UsageBucket bucket);
+}
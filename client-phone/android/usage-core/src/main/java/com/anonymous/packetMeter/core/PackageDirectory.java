@@ -0,0 +1,24 @@
+package com.anonymous.packetMeter.core;
+
+/**
+ * Package metadata needed to turn per-uid totals into app rows. P is the platform's handle
+ * for one installed package; the app backs this with its package index and icon cache.
+ */
+public interface PackageDirectory<P> {
+
+    /**
+     * First package of uid that is listed at this detail level, or null. Called for every uid
+     * with traffic, so it should not touch labels or icons.
+     */
+    P listedPackage(int uid, boolean detailed);
+
+    String packageName(P pkg);
+
+    /** Display label; may be loaded on first use. */
+    String label(P pkg);
+
+    /** Hash of the package icon, or null if it has none. */
+    String iconHash(P pkg);
+
+    int uid(P pkg);
+}
@@ -0,0 +1,53 @@
+package com.anonymous.packetMeter.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * String-table half of the packed columnar encoding: {@link #strings} holds each distinct
+ * string once and the per-row columns index into it, -1 for null. Numeric columns are read
+ * straight from the {@link AppUsageRows} being encoded.
+ */
+public final class PackedAppUsage {
+    public final String[] strings;
+    public final int[] packageName;
+    public final int[] appName;
+    public final int[] iconHash;
+
+    private PackedAppUsage(String[] strings, int[] packageName, int[] appName, int[] iconHash) {
+        this.strings = strings;
+        this.packageName = packageName;
+        this.appName = appName;
+        this.iconHash = iconHash;
+    }
+
+    public static PackedAppUsage pack(AppUsageRows rows) {
+        int size = rows.size();
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> stringIndex = new HashMap<>(size * 4);
+        int[] packageNames = new int[size];
+        int[] appNames = new int[size];
+        int[] iconHashes = new int[size];
+        for (int i = 0; i < size; i++) {
+            packageNames[i] = intern(rows.packageName(i), strings, stringIndex);
+            appNames[i] = intern(rows.appName(i), strings, stringIndex);
+            iconHashes[i] = intern(rows.iconHash(i), strings, stringIndex);
+        }
+        return new PackedAppUsage(strings.toArray(new String[0]), packageNames, appNames, iconHashes);
+    }
+
+    private static int intern(String value, List<String> strings, Map<String, Integer> stringIndex) {
+        if (value == null) {
+            return -1;
+        }
+        Integer index = stringIndex.get(value);
+        if (index == null) {
+            index = strings.size();
+            stringIndex.put(value, index);
+            strings.add(value);
+        }
+        return index;
+    }
+}
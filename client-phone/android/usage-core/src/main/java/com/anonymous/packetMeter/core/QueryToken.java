@@ -0,0 +1,66 @@
+package com.anonymous.packetMeter.core;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancellation flag and optional deadline shared by every caller of one in-flight query.
+ * Long-running loops poll it; cancellation aborts the query, an expired deadline lets the
+ * query return whatever it has resolved so far.
+ */
+public final class QueryToken {
+    public static final QueryToken NONE = new QueryToken(0);
+
+    private volatile boolean cancelled;
+    private volatile long deadlineNanos;
+
+    /**
+     * @param timeoutMs time budget from now, or 0 for no deadline
+     */
+    public QueryToken(long timeoutMs) {
+        this.deadlineNanos = toDeadline(timeoutMs);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throws {@link CancellationException} if every caller has given up on this query.
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Query cancelled");
+        }
+    }
+
+    public boolean isPastDeadline() {
+        long deadline = deadlineNanos;
+        return deadline != 0 && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Widen the deadline so a caller joining an in-flight query gets at least its own budget.
+     */
+    public synchronized void extendDeadline(long timeoutMs) {
+        if (deadlineNanos == 0) {
+            return;
+        }
+        long candidate = toDeadline(timeoutMs);
+        if (candidate == 0 || candidate - deadlineNanos > 0) {
+            deadlineNanos = candidate;
+        }
+    }
+
+    private static long toDeadline(long timeoutMs) {
+        if (timeoutMs <= 0) {
+            return 0;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        return deadline == 0 ? 1 : deadline;
+    }
+}
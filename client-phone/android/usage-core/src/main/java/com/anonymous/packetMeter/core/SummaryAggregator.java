@@ -0,0 +1,75 @@
+package com.anonymous.packetMeter.core;
+
+import java.io.IOException;
+
+/**
+ * Reads one summary per transport and folds every bucket into a {@link UidUsageTable}.
+ * The cost is one source query per transport plus one pass over the returned buckets,
+ * independent of how many apps are installed.
+ */
+public final class SummaryAggregator {
+
+    private SummaryAggregator() {
+    }
+
+    /**
+     * Aggregate Wi-Fi and mobile usage per uid for the given time range.
+     */
+    public static UidUsageTable aggregate(UsageSource source, long startTime, long endTime,
+            QueryToken token) throws IOException {
+        UidUsageTable table = new UidUsageTable();
+        aggregateInto(source, startTime, endTime, table, token);
+        return table;
+    }
+
+    /**
+     * Like {@link #aggregate}, adding into an existing table so callers can reuse one.
+     */
+    public static void aggregateInto(UsageSource source, long startTime, long endTime,
+            UidUsageTable table, QueryToken token) throws IOException {
+        BucketSink sink = bucket -> table.add(bucket.uid, bucket.transport,
+                bucket.rxBytes, bucket.txBytes);
+        source.querySummary(UidUsageTable.TRANSPORT_WIFI, startTime, endTime, sink, token);
+        source.querySummary(UidUsageTable.TRANSPORT_MOBILE, startTime, endTime, sink, token);
+    }
+
+    /**
+     * Aggregate usage per uid with mobile traffic split by subscriber: Wi-Fi comes from wifi,
+     * mobile from one source per subscriber, and each source is scanned once. The returned
+     * table holds every subscriber's traffic merged, ready for a single join with package
+     * metadata; subscriberTotals[i] receives subscriber i's
+     * [mobileRx, mobileTx, tetheringRx, tetheringTx] from the same scan.
+     */
+    public static UidUsageTable aggregateBySubscriber(UsageSource wifi, UsageSource[] subscribers,
+            long startTime, long endTime, long[][] subscriberTotals, QueryToken token)
+            throws IOException {
+        UidUsageTable table = new UidUsageTable();
+        wifi.querySummary(UidUsageTable.TRANSPORT_WIFI, startTime, endTime,
+                bucket -> table.add(bucket.uid, bucket.transport, bucket.rxBytes, bucket.txBytes),
+                token);
+        for (int i = 0; i < subscribers.length; i++) {
+            long[] totals = subscriberTotals[i];
+            subscribers[i].querySummary(UidUsageTable.TRANSPORT_MOBILE, startTime, endTime, bucket -> {
+                table.add(bucket.uid, bucket.transport, bucket.rxBytes, bucket.txBytes);
+                totals[0] += bucket.rxBytes;
+                totals[1] += bucket.txBytes;
+                if (bucket.uid == AppUsageJoin.UID_TETHERING) {
+                    totals[2] += bucket.rxBytes;
+                    totals[3] += bucket.txBytes;
+                }
+            }, token);
+        }
+        return table;
+    }
+
+    /**
+     * Device-wide totals for the given time range as [wifiRx, wifiTx, mobileRx, mobileTx],
+     * one device query per transport.
+     */
+    public static long[] deviceTotals(UsageSource source, long startTime, long endTime)
+            throws IOException {
+        long[] wifi = source.queryDeviceTotal(UidUsageTable.TRANSPORT_WIFI, startTime, endTime);
+        long[] mobile = source.queryDeviceTotal(UidUsageTable.TRANSPORT_MOBILE, startTime, endTime);
+        return new long[] { wifi[0], wifi[1], mobile[0], mobile[1] };
+    }
+}
@@ -0,0 +1,92 @@
+package com.anonymous.packetMeter.core;
+
+/**
+ * Keeps the k largest (total, id) pairs seen so far in a bounded min-heap of primitives,
+ * so selecting the top k of n costs O(n log k) with no boxing and no full sort.
+ * Equal totals rank the smaller id first, so the result for a smaller k is always a prefix
+ * of the result for a larger k over the same input.
+ */
+public final class TopKSelector {
+    private final long[] totals;
+    private final int[] ids;
+    private int size;
+
+    public TopKSelector(int k) {
+        totals = new long[Math.max(0, k)];
+        ids = new int[Math.max(0, k)];
+    }
+
+    public void offer(int id, long total) {
+        if (totals.length == 0) {
+            return;
+        }
+        if (size < totals.length) {
+            totals[size] = total;
+            ids[size] = id;
+            siftUp(size++);
+        } else if (total > totals[0] || (total == totals[0] && id < ids[0])) {
+            totals[0] = total;
+            ids[0] = id;
+            siftDown(0);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Empty the heap and return the ids ordered by total, largest first.
+     */
+    public int[] drainDescending() {
+        int[] ordered = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            ordered[i] = ids[0];
+            size--;
+            totals[0] = totals[size];
+            ids[0] = ids[size];
+            siftDown(0);
+        }
+        return ordered;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!below(i, parent)) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left + 1 < size && below(left + 1, left) ? left + 1 : left;
+            if (!below(smallest, i)) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    // True if entry a ranks below entry b
+    private boolean below(int a, int b) {
+        return totals[a] < totals[b] || (totals[a] == totals[b] && ids[a] > ids[b]);
+    }
+
+    private void swap(int a, int b) {
+        long total = totals[a];
+        totals[a] = totals[b];
+        totals[b] = total;
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+    }
+}
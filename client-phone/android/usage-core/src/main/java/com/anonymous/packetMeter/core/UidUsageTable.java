@@ -0,0 +1,208 @@
+package com.anonymous.packetMeter.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Per-UID rx/tx totals keyed by a primitive open-addressing hash table.
+ * Buckets are folded in place, so aggregation never boxes a uid or a counter.
+ */
+public final class UidUsageTable {
+    public static final int TRANSPORT_WIFI = 0;
+    public static final int TRANSPORT_MOBILE = 1;
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private long[] wifiRx;
+    private long[] wifiTx;
+    private long[] mobileRx;
+    private long[] mobileTx;
+    private int size;
+
+    public UidUsageTable() {
+        this(256);
+    }
+
+    public UidUsageTable(int expectedUids) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedUids * 2) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Add rx/tx bytes for a uid on the given transport.
+     */
+    public void add(int uid, int transport, long rx, long tx) {
+        int slot = slotFor(uid);
+        if (transport == TRANSPORT_WIFI) {
+            wifiRx[slot] += rx;
+            wifiTx[slot] += tx;
+        } else {
+            mobileRx[slot] += rx;
+            mobileTx[slot] += tx;
+        }
+    }
+
+    /**
+     * Add every uid of another table into this one.
+     */
+    public void addAll(UidUsageTable other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] == EMPTY) {
+                continue;
+            }
+            int slot = slotFor(other.keys[i]);
+            wifiRx[slot] += other.wifiRx[i];
+            wifiTx[slot] += other.wifiTx[i];
+            mobileRx[slot] += other.mobileRx[i];
+            mobileTx[slot] += other.mobileTx[i];
+        }
+    }
+
+    /**
+     * Remove every uid but keep the allocated capacity, so a table can be refilled in place.
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(wifiRx, 0);
+        Arrays.fill(wifiTx, 0);
+        Arrays.fill(mobileRx, 0);
+        Arrays.fill(mobileTx, 0);
+        size = 0;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == EMPTY) {
+                continue;
+            }
+            out.writeInt(keys[i]);
+            out.writeLong(wifiRx[i]);
+            out.writeLong(wifiTx[i]);
+            out.writeLong(mobileRx[i]);
+            out.writeLong(mobileTx[i]);
+        }
+    }
+
+    public static UidUsageTable readFrom(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupt usage table: " + count + " entries");
+        }
+        UidUsageTable table = new UidUsageTable(count);
+        for (int i = 0; i < count; i++) {
+            int slot = table.slotFor(in.readInt());
+            table.wifiRx[slot] = in.readLong();
+            table.wifiTx[slot] = in.readLong();
+            table.mobileRx[slot] = in.readLong();
+            table.mobileTx[slot] = in.readLong();
+        }
+        return table;
+    }
+
+    /**
+     * Returns the slot holding uid, or -1 if the uid has no traffic recorded.
+     */
+    public int indexOf(int uid) {
+        int mask = keys.length - 1;
+        int slot = mix(uid) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == uid) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /** Number of slots; iterate 0..capacity() and skip {@link #isEmpty(int)}. */
+    public int capacity() {
+        return keys.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty(int slot) {
+        return keys[slot] == EMPTY;
+    }
+
+    public int uidAt(int slot) {
+        return keys[slot];
+    }
+
+    public long wifiRxAt(int slot) {
+        return wifiRx[slot];
+    }
+
+    public long wifiTxAt(int slot) {
+        return wifiTx[slot];
+    }
+
+    public long mobileRxAt(int slot) {
+        return mobileRx[slot];
+    }
+
+    public long mobileTxAt(int slot) {
+        return mobileTx[slot];
+    }
+
+    public long totalAt(int slot) {
+        return wifiRx[slot] + wifiTx[slot] + mobileRx[slot] + mobileTx[slot];
+    }
+
+    private int slotFor(int uid) {
+        int mask = keys.length - 1;
+        int slot = mix(uid) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == uid) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+            return slotFor(uid);
+        }
+        keys[slot] = uid;
+        size++;
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        long[] oldWifiRx = wifiRx, oldWifiTx = wifiTx;
+        long[] oldMobileRx = mobileRx, oldMobileTx = mobileTx;
+
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) {
+                continue;
+            }
+            int slot = slotFor(oldKeys[i]);
+            wifiRx[slot] = oldWifiRx[i];
+            wifiTx[slot] = oldWifiTx[i];
+            mobileRx[slot] = oldMobileRx[i];
+            mobileTx[slot] = oldMobileTx[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        wifiRx = new long[capacity];
+        wifiTx = new long[capacity];
+        mobileRx = new long[capacity];
+        mobileTx = new long[capacity];
+        size = 0;
+    }
+
+    private static int mix(int uid) {
+        int h = uid * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,302 @@
+package com.anonymous.packetMeter.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Quota and spike rules checked against per-uid day totals as they change.
+ *
+ * Each {@link #update} only visits the slots the caller reports as changed; a uid whose
+ * counters did not move costs one table lookup, and its rules are found through a primitive
+ * uid index rather than a scan of the rule list. A rule fires at most once per window and
+ * stays quiet until the window rolls over.
+ */
+public final class UsageAlertEvaluator {
+    /** Rule uid matching the whole device. */
+    public static final int DEVICE = -1;
+    /** Rule transport matching Wi-Fi and mobile together. */
+    public static final int ANY_TRANSPORT = -1;
+
+    /** Fires once the bytes used in the window reach the threshold. */
+    public static final int KIND_QUOTA = 0;
+    /** Fires when the bytes added between two updates reach the threshold. */
+    public static final int KIND_SPIKE = 1;
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    public static final class Rule {
+        public final String id;
+        public final int kind;
+        public final int uid;
+        public final int transport;
+        public final long thresholdBytes;
+
+        public Rule(String id, int kind, int uid, int transport, long thresholdBytes) {
+            if (id == null || id.isEmpty()) {
+                throw new IllegalArgumentException("Rule id is required");
+            }
+            if (kind != KIND_QUOTA && kind != KIND_SPIKE) {
+                throw new IllegalArgumentException("Unknown rule kind " + kind);
+            }
+            if (transport != ANY_TRANSPORT && transport != UidUsageTable.TRANSPORT_WIFI
+                    && transport != UidUsageTable.TRANSPORT_MOBILE) {
+                throw new IllegalArgumentException("Unknown transport " + transport);
+            }
+            if (thresholdBytes <= 0) {
+                throw new IllegalArgumentException("thresholdBytes must be positive");
+            }
+            this.id = id;
+            this.kind = kind;
+            this.uid = uid;
+            this.transport = transport;
+            this.thresholdBytes = thresholdBytes;
+        }
+    }
+
+    public interface Listener {
+        /** value is the window total for quota rules and the added bytes for spike rules. */
+        void onCrossed(Rule rule, long value);
+    }
+
+    private Rule[] rules = new Rule[0];
+    private boolean[] fired = new boolean[0];
+
+    // uid -> first rule index, chained through nextRule; device rules are kept apart
+    private int[] indexKeys;
+    private int[] indexFirst;
+    private int[] nextRule = new int[0];
+    private int[] deviceRules = new int[0];
+
+    // Counters last seen per uid and for the device as [wifiRx, wifiTx, mobileRx, mobileTx]
+    private long windowStart = Long.MIN_VALUE;
+    private boolean primed;
+    private UidUsageTable seen = new UidUsageTable();
+    private final long[] device = new long[4];
+    private final long[] uidDelta = new long[4];
+    private final long[] deviceDelta = new long[4];
+
+    public UsageAlertEvaluator() {
+        buildIndex();
+    }
+
+    /**
+     * Replace the rule set. Rules keep their fired state if a rule with the same id is still
+     * present; the next update rescans the whole table to pick up uids new rules refer to.
+     */
+    public synchronized void setRules(List<Rule> newRules) {
+        Rule[] next = newRules.toArray(new Rule[0]);
+        boolean[] nextFired = new boolean[next.length];
+        for (int i = 0; i < next.length; i++) {
+            for (int j = 0; j < rules.length; j++) {
+                if (rules[j].id.equals(next[i].id)) {
+                    nextFired[i] = fired[j];
+                    break;
+                }
+            }
+        }
+        rules = next;
+        fired = nextFired;
+        buildIndex();
+        primed = false;
+    }
+
+    public synchronized Rule[] rules() {
+        return rules.clone();
+    }
+
+    public synchronized boolean isEmpty() {
+        return rules.length == 0;
+    }
+
+    /** Start of the window the fired state belongs to. */
+    public synchronized long windowStart() {
+        return windowStart;
+    }
+
+    /**
+     * Restore the fired state saved for a window, e.g. after the process was restarted, so
+     * rules that already fired do not fire again.
+     */
+    public synchronized void restore(long window, Set<String> firedIds) {
+        windowStart = window;
+        primed = false;
+        for (int i = 0; i < rules.length; i++) {
+            fired[i] = firedIds.contains(rules[i].id);
+        }
+    }
+
+    public synchronized void firedIds(Set<String> out) {
+        for (int i = 0; i < rules.length; i++) {
+            if (fired[i]) {
+                out.add(rules[i].id);
+            }
+        }
+    }
+
+    /**
+     * Evaluate rules against day totals for the window starting at window. slots lists the
+     * slots of table that may have changed since the previous update, or null to check every
+     * slot. A new window, or the first update after {@link #setRules}, checks every slot and
+     * does not evaluate spike rules, since there is no previous sample to compare with.
+     * Returns the number of rules that fired.
+     */
+    public synchronized int update(long window, UidUsageTable table, int[] slots, Listener listener) {
+        if (window != windowStart) {
+            windowStart = window;
+            Arrays.fill(fired, false);
+            primed = false;
+        }
+        boolean spikes = primed;
+        if (!primed) {
+            seen = new UidUsageTable(table.size());
+            Arrays.fill(device, 0);
+            slots = null;
+            primed = true;
+        }
+        if (rules.length == 0) {
+            return 0;
+        }
+
+        Arrays.fill(deviceDelta, 0);
+        int crossed = 0;
+        int count = slots == null ? table.capacity() : slots.length;
+        for (int i = 0; i < count; i++) {
+            int slot = slots == null ? i : slots[i];
+            if (table.isEmpty(slot) || !readDelta(table, slot)) {
+                continue;
+            }
+            int uid = table.uidAt(slot);
+            for (int r = firstRule(uid); r >= 0; r = nextRule[r]) {
+                crossed += evaluate(r, table, slot, spikes, listener);
+            }
+        }
+
+        if (deviceDelta[0] != 0 || deviceDelta[1] != 0 || deviceDelta[2] != 0 || deviceDelta[3] != 0) {
+            for (int t = 0; t < 4; t++) {
+                device[t] += deviceDelta[t];
+            }
+            for (int r : deviceRules) {
+                if (fired[r]) {
+                    continue;
+                }
+                Rule rule = rules[r];
+                long value = rule.kind == KIND_QUOTA
+                        ? bytes(device, rule.transport) : bytes(deviceDelta, rule.transport);
+                if ((rule.kind == KIND_QUOTA || spikes) && value >= rule.thresholdBytes) {
+                    fired[r] = true;
+                    crossed++;
+                    listener.onCrossed(rule, value);
+                }
+            }
+        }
+        return crossed;
+    }
+
+    /**
+     * Fold the slot's change since the last update into seen and the device delta. Returns
+     * false if its counters did not move.
+     */
+    private boolean readDelta(UidUsageTable table, int slot) {
+        int uid = table.uidAt(slot);
+        int previous = seen.indexOf(uid);
+        uidDelta[0] = table.wifiRxAt(slot) - (previous < 0 ? 0 : seen.wifiRxAt(previous));
+        uidDelta[1] = table.wifiTxAt(slot) - (previous < 0 ? 0 : seen.wifiTxAt(previous));
+        uidDelta[2] = table.mobileRxAt(slot) - (previous < 0 ? 0 : seen.mobileRxAt(previous));
+        uidDelta[3] = table.mobileTxAt(slot) - (previous < 0 ? 0 : seen.mobileTxAt(previous));
+        if (uidDelta[0] == 0 && uidDelta[1] == 0 && uidDelta[2] == 0 && uidDelta[3] == 0) {
+            return false;
+        }
+        seen.add(uid, UidUsageTable.TRANSPORT_WIFI, uidDelta[0], uidDelta[1]);
+        seen.add(uid, UidUsageTable.TRANSPORT_MOBILE, uidDelta[2], uidDelta[3]);
+        for (int t = 0; t < 4; t++) {
+            deviceDelta[t] += uidDelta[t];
+        }
+        return true;
+    }
+
+    private int evaluate(int r, UidUsageTable table, int slot, boolean spikes, Listener listener) {
+        Rule rule = rules[r];
+        if (fired[r] || (rule.kind == KIND_SPIKE && !spikes)) {
+            return 0;
+        }
+        long value;
+        if (rule.kind == KIND_SPIKE) {
+            value = bytes(uidDelta, rule.transport);
+        } else if (rule.transport == UidUsageTable.TRANSPORT_WIFI) {
+            value = table.wifiRxAt(slot) + table.wifiTxAt(slot);
+        } else if (rule.transport == UidUsageTable.TRANSPORT_MOBILE) {
+            value = table.mobileRxAt(slot) + table.mobileTxAt(slot);
+        } else {
+            value = table.totalAt(slot);
+        }
+        if (value < rule.thresholdBytes) {
+            return 0;
+        }
+        fired[r] = true;
+        listener.onCrossed(rule, value);
+        return 1;
+    }
+
+    private static long bytes(long[] counters, int transport) {
+        if (transport == UidUsageTable.TRANSPORT_WIFI) {
+            return counters[0] + counters[1];
+        }
+        if (transport == UidUsageTable.TRANSPORT_MOBILE) {
+            return counters[2] + counters[3];
+        }
+        return counters[0] + counters[1] + counters[2] + counters[3];
+    }
+
+    private int firstRule(int uid) {
+        int mask = indexKeys.length - 1;
+        int slot = mix(uid) & mask;
+        while (indexKeys[slot] != EMPTY) {
+            if (indexKeys[slot] == uid) {
+                return indexFirst[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void buildIndex() {
+        int capacity = Integer.highestOneBit(Math.max(16, rules.length * 2) - 1) << 1;
+        indexKeys = new int[capacity];
+        indexFirst = new int[capacity];
+        Arrays.fill(indexKeys, EMPTY);
+        nextRule = new int[rules.length];
+        int[] device = new int[rules.length];
+        int deviceCount = 0;
+
+        int mask = capacity - 1;
+        // Walk backwards so each chain lists rules in their original order
+        for (int r = rules.length - 1; r >= 0; r--) {
+            int uid = rules[r].uid;
+            if (uid == DEVICE) {
+                device[deviceCount++] = r;
+                continue;
+            }
+            int slot = mix(uid) & mask;
+            while (indexKeys[slot] != EMPTY && indexKeys[slot] != uid) {
+                slot = (slot + 1) & mask;
+            }
+            if (indexKeys[slot] == EMPTY) {
+                indexKeys[slot] = uid;
+                nextRule[r] = -1;
+            } else {
+                nextRule[r] = indexFirst[slot];
+            }
+            indexFirst[slot] = r;
+        }
+        deviceRules = new int[deviceCount];
+        for (int i = 0; i < deviceCount; i++) {
+            deviceRules[i] = device[deviceCount - 1 - i];
+        }
+    }
+
+    private static int mix(int uid) {
+        int h = uid * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
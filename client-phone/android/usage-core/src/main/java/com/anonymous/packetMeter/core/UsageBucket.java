@@ -0,0 +1,23 @@
+package com.anonymous.packetMeter.core;
+
+/**
+ * One usage record as reported by a {@link UsageSource}. Sources refill a single instance
+ * per scan, so sinks must copy whatever they keep.
+ *
+ * {@code state}, {@code metered}, {@code roaming} and {@code defaultNetwork} use the same
+ * values as {@code android.app.usage.NetworkStats.Bucket}; -1 means the source does not
+ * split by it.
+ */
+public final class UsageBucket {
+    public int uid;
+    /** One of the {@code UsageCube.TRANSPORT_*} values. */
+    public int transport;
+    public int state;
+    public int metered;
+    public int roaming;
+    public int defaultNetwork;
+    public long startTime;
+    public long endTime;
+    public long rxBytes;
+    public long txBytes;
+}
@@ -0,0 +1,231 @@
+package com.anonymous.packetMeter.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Usage keyed by uid x transport x state x metered x roaming x default-network, filled from
+ * one scan per transport. Only cells that saw traffic are stored, so a uid typically costs a
+ * handful of entries; any breakdown is then a pass over the stored cells rather than
+ * another query.
+ *
+ * Flag dimensions use {@link #UNKNOWN} when the source did not split by them, otherwise
+ * the {@code NetworkStats.Bucket} values (1 = no/background, 2 = yes/foreground).
+ */
+public final class UsageCube implements BucketSink {
+    public static final int TRANSPORT_WIFI = UidUsageTable.TRANSPORT_WIFI;
+    public static final int TRANSPORT_MOBILE = UidUsageTable.TRANSPORT_MOBILE;
+    public static final int TRANSPORT_COUNT = 2;
+
+    public static final int UNKNOWN = 0;
+    public static final int NO = 1;
+    public static final int YES = 2;
+    public static final int STATE_BACKGROUND = 1;
+    public static final int STATE_FOREGROUND = 2;
+
+    public static final int DIM_TRANSPORT = 0;
+    public static final int DIM_STATE = 1;
+    public static final int DIM_METERED = 2;
+    public static final int DIM_ROAMING = 3;
+    public static final int DIM_DEFAULT_NETWORK = 4;
+
+    /** Matches every value of a dimension, or every uid. */
+    public static final int ANY = Integer.MIN_VALUE;
+
+    // Cell layout: transport in bits 0-2, then two bits per flag dimension
+    private static final int[] SHIFT = { 0, 3, 5, 7, 9 };
+    private static final int[] WIDTH_MASK = { 0x7, 0x3, 0x3, 0x3, 0x3 };
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private long[] rx;
+    private long[] tx;
+    private int size;
+
+    public UsageCube() {
+        this(1024);
+    }
+
+    public UsageCube(int expectedCells) {
+        allocate(Integer.highestOneBit(Math.max(16, expectedCells * 2) - 1) << 1);
+    }
+
+    /**
+     * Scan each transport once and fold every bucket into a new cube. Transports the source
+     * cannot report on are left empty.
+     */
+    public static UsageCube collect(UsageSource source, long startTime, long endTime,
+            int[] transports, QueryToken token) throws IOException {
+        UsageCube cube = new UsageCube();
+        for (int transport : transports) {
+            token.throwIfCancelled();
+            source.querySummary(transport, startTime, endTime, cube, token);
+        }
+        return cube;
+    }
+
+    @Override
+    public void accept(UsageBucket bucket) {
+        add(bucket.uid, bucket.transport, bucket.state, bucket.metered, bucket.roaming,
+                bucket.defaultNetwork, bucket.rxBytes, bucket.txBytes);
+    }
+
+    /**
+     * Add bytes to one cell. Flag values outside 1..2 are stored as {@link #UNKNOWN}.
+     */
+    public void add(int uid, int transport, int state, int metered, int roaming, int defaultNetwork,
+            long rxBytes, long txBytes) {
+        int cell = (transport & WIDTH_MASK[DIM_TRANSPORT])
+                | flag(state) << SHIFT[DIM_STATE]
+                | flag(metered) << SHIFT[DIM_METERED]
+                | flag(roaming) << SHIFT[DIM_ROAMING]
+                | flag(defaultNetwork) << SHIFT[DIM_DEFAULT_NETWORK];
+        int slot = slotFor(((long) uid << 32) | cell);
+        rx[slot] += rxBytes;
+        tx[slot] += txBytes;
+    }
+
+    /** Number of non-empty cells. */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sum {rx, tx} over the cells matching filter.
+     */
+    public long[] sum(Filter filter) {
+        long[] result = new long[2];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY && filter.matches(keys[i])) {
+                result[0] += rx[i];
+                result[1] += tx[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sum the cells matching filter per value of one dimension. The result holds
+     * {rx, tx} pairs indexed by value: entry [2 * v] is rx and [2 * v + 1] is tx.
+     */
+    public long[] groupBy(int dimension, Filter filter) {
+        long[] result = new long[2 * (WIDTH_MASK[dimension] + 1)];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == EMPTY || !filter.matches(keys[i])) {
+                continue;
+            }
+            int value = valueOf((int) keys[i], dimension);
+            result[2 * value] += rx[i];
+            result[2 * value + 1] += tx[i];
+        }
+        return result;
+    }
+
+    /**
+     * Project the Wi-Fi and mobile cells matching filter onto a per-uid table.
+     */
+    public UidUsageTable perUid(Filter filter) {
+        UidUsageTable table = new UidUsageTable();
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == EMPTY || !filter.matches(keys[i])) {
+                continue;
+            }
+            int transport = valueOf((int) keys[i], DIM_TRANSPORT);
+            if (transport == TRANSPORT_WIFI || transport == TRANSPORT_MOBILE) {
+                table.add((int) (keys[i] >> 32), transport, rx[i], tx[i]);
+            }
+        }
+        return table;
+    }
+
+    public static Filter filter() {
+        return new Filter();
+    }
+
+    /**
+     * Cell predicate: a uid (or {@link #ANY}) plus a required value per dimension.
+     * Unset dimensions match everything.
+     */
+    public static final class Filter {
+        private int uid = ANY;
+        private int mask;
+        private int value;
+
+        private Filter() {
+        }
+
+        public Filter uid(int uid) {
+            this.uid = uid;
+            return this;
+        }
+
+        public Filter where(int dimension, int required) {
+            int bits = WIDTH_MASK[dimension] << SHIFT[dimension];
+            if (required == ANY) {
+                mask &= ~bits;
+                value &= ~bits;
+            } else {
+                mask |= bits;
+                value = (value & ~bits) | (required & WIDTH_MASK[dimension]) << SHIFT[dimension];
+            }
+            return this;
+        }
+
+        boolean matches(long key) {
+            return (uid == ANY || (int) (key >> 32) == uid) && ((int) key & mask) == value;
+        }
+    }
+
+    private static int flag(int value) {
+        return value == NO || value == YES ? value : UNKNOWN;
+    }
+
+    private static int valueOf(int cell, int dimension) {
+        return cell >>> SHIFT[dimension] & WIDTH_MASK[dimension];
+    }
+
+    private int slotFor(long key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+            return slotFor(key);
+        }
+        keys[slot] = key;
+        size++;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldRx = rx;
+        long[] oldTx = tx;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slotFor(oldKeys[i]);
+                rx[slot] = oldRx[i];
+                tx[slot] = oldTx[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        rx = new long[capacity];
+        tx = new long[capacity];
+        size = 0;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,48 @@
+package com.anonymous.packetMeter.core;
+
+import java.util.Calendar;
+
+/**
+ * Time windows for the period/count pairs accepted by the usage methods.
+ */
+public final class UsagePeriods {
+
+    private UsagePeriods() {
+    }
+
+    /**
+     * Calculates start/end time for given period and count.
+     */
+    public static long[] range(String period, int count) {
+        Calendar cal = Calendar.getInstance();
+        long end = cal.getTimeInMillis();
+
+        switch (period) {
+            case "hour":
+                // For hour period, start from the beginning of the current hour
+                // e.g., if it's 8:30, start from 8:00
+                cal.set(Calendar.MINUTE, 0);
+                cal.set(Calendar.SECOND, 0);
+                cal.set(Calendar.MILLISECOND, 0);
+                break;
+            case "day":
+                // For day period, start from midnight (00:00) of the day
+                // count=1: today's midnight, count=2: yesterday's midnight, etc.
+                cal.add(Calendar.DAY_OF_MONTH, -(count - 1));
+                cal.set(Calendar.HOUR_OF_DAY, 0);
+                cal.set(Calendar.MINUTE, 0);
+                cal.set(Calendar.SECOND, 0);
+                cal.set(Calendar.MILLISECOND, 0);
+                break;
+            case "week":
+                cal.add(Calendar.WEEK_OF_YEAR, -count);
+                break;
+            case "month":
+                cal.add(Calendar.MONTH, -count);
+                break;
+        }
+
+        long start = cal.getTimeInMillis();
+        return new long[] { start, end };
+    }
+}
@@ -0,0 +1,129 @@
+package com.anonymous.packetMeter.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * Usage histogram over consecutive hour- or day-aligned intervals in local time.
+ *
+ * One detail stream per transport is walked once and each bucket is spread over the
+ * intervals it overlaps in proportion to the overlap, so N intervals cost the same number
+ * of source queries as one.
+ */
+public final class UsageSeries {
+    // Interval i is [edges[i], edges[i + 1])
+    public final long[] edges;
+    public final long[] wifiRx;
+    public final long[] wifiTx;
+    public final long[] mobileRx;
+    public final long[] mobileTx;
+
+    private UsageSeries(long[] edges) {
+        int intervals = edges.length - 1;
+        this.edges = edges;
+        this.wifiRx = new long[intervals];
+        this.wifiTx = new long[intervals];
+        this.mobileRx = new long[intervals];
+        this.mobileTx = new long[intervals];
+    }
+
+    public int size() {
+        return edges.length - 1;
+    }
+
+    /**
+     * Interval edges covering [startTime, endTime), aligned to local hours or midnights so
+     * DST days are 23 or 25 hours long. The last interval ends at endTime.
+     */
+    public static long[] alignedEdges(long startTime, long endTime, String bucketSize) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(startTime);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        int field = Calendar.HOUR_OF_DAY;
+        if (bucketSize.equals("day")) {
+            cal.set(Calendar.HOUR_OF_DAY, 0);
+            field = Calendar.DAY_OF_MONTH;
+        }
+
+        long[] edges = new long[32];
+        int count = 0;
+        long edge = cal.getTimeInMillis();
+        while (edge < endTime) {
+            if (count == edges.length) {
+                edges = Arrays.copyOf(edges, count * 2);
+            }
+            edges[count++] = edge;
+            cal.add(field, 1);
+            edge = cal.getTimeInMillis();
+        }
+        if (count == edges.length) {
+            edges = Arrays.copyOf(edges, count + 1);
+        }
+        edges[count++] = endTime;
+        return Arrays.copyOf(edges, count);
+    }
+
+    /**
+     * Collect the histogram for the device, or for one uid when uid is non-null.
+     */
+    public static UsageSeries collect(UsageSource source, long[] edges, Integer uid,
+            QueryToken token) throws IOException {
+        UsageSeries series = new UsageSeries(edges);
+        long start = edges[0];
+        long end = edges[edges.length - 1];
+
+        source.queryDetails(UidUsageTable.TRANSPORT_WIFI, start, end, uid,
+                bucket -> series.spread(bucket.startTime, bucket.endTime, bucket.rxBytes,
+                        bucket.txBytes, series.wifiRx, series.wifiTx), token);
+        source.queryDetails(UidUsageTable.TRANSPORT_MOBILE, start, end, uid,
+                bucket -> series.spread(bucket.startTime, bucket.endTime, bucket.rxBytes,
+                        bucket.txBytes, series.mobileRx, series.mobileTx), token);
+
+        return series;
+    }
+
+    /**
+     * Add a bucket's bytes to the intervals it overlaps, pro-rated by overlap. Rounding
+     * remainders go to the last overlapped interval so the in-range share is preserved.
+     */
+    public void spread(long bucketStart, long bucketEnd, long rx, long tx, long[] rxBins, long[] txBins) {
+        long from = Math.max(bucketStart, edges[0]);
+        long to = Math.min(bucketEnd, edges[edges.length - 1]);
+        if (from >= to) {
+            return;
+        }
+        int first = intervalOf(from);
+        long span = Math.max(1, bucketEnd - bucketStart);
+        long rxLeft = rx;
+        long txLeft = tx;
+        if (to - from < span) {
+            double inRange = (double) (to - from) / span;
+            rxLeft = Math.round(rx * inRange);
+            txLeft = Math.round(tx * inRange);
+        }
+        for (int i = first; i < size() && edges[i] < bucketEnd; i++) {
+            boolean last = i + 1 == size() || edges[i + 1] >= bucketEnd;
+            if (last) {
+                rxBins[i] += rxLeft;
+                txBins[i] += txLeft;
+                break;
+            }
+            long overlap = Math.min(edges[i + 1], bucketEnd) - Math.max(edges[i], bucketStart);
+            double fraction = (double) overlap / span;
+            long rxShare = Math.round(rx * fraction);
+            long txShare = Math.round(tx * fraction);
+            rxBins[i] += rxShare;
+            txBins[i] += txShare;
+            rxLeft -= rxShare;
+            txLeft -= txShare;
+        }
+    }
+
+    private int intervalOf(long time) {
+        int index = Arrays.binarySearch(edges, time);
+        return index >= 0 ? index : -index - 2;
+    }
+}
@@ -0,0 +1,31 @@
+package com.anonymous.packetMeter.core;
+
+import java.io.IOException;
+
+/**
+ * Where usage buckets come from. The app reads {@code NetworkStatsManager}; benchmarks and
+ * tests supply synthetic sources, so everything downstream runs on a plain JVM.
+ *
+ * Implementations skip buckets with no traffic and poll the token while scanning.
+ */
+public interface UsageSource {
+
+    /**
+     * Stream summary buckets for one transport over [startTime, endTime), several per uid.
+     */
+    void querySummary(int transport, long startTime, long endTime, BucketSink sink,
+            QueryToken token) throws IOException;
+
+    /**
+     * Stream time-stamped buckets for one transport over [startTime, endTime), for every uid
+     * or only for uid when it is non-null.
+     */
+    void queryDetails(int transport, long startTime, long endTime, Integer uid, BucketSink sink,
+            QueryToken token) throws IOException;
+
+    /**
+     * Device-wide {rx, tx} for one transport over [startTime, endTime), including traffic
+     * the platform does not attribute to any uid.
+     */
+    long[] queryDeviceTotal(int transport, long startTime, long endTime) throws IOException;
+}
@@ -0,0 +1,90 @@
+package com.anonymous.packetMeter.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link PackageDirectory} over the packages of a {@link FakeUsageSource}. Every
+ * {@link #SYSTEM_EVERY}th package is a system service without a launcher entry, listed only
+ * in detailed mode. Counts lookups so tests can check that only reported rows resolve
+ * labels and icons.
+ */
+final class FakePackageDirectory implements PackageDirectory<FakePackageDirectory.Pkg> {
+    static final int SYSTEM_EVERY = 7;
+
+    static final class Pkg {
+        final String packageName;
+        final int uid;
+        final boolean listedByDefault;
+
+        Pkg(String packageName, int uid, boolean listedByDefault) {
+            this.packageName = packageName;
+            this.uid = uid;
+            this.listedByDefault = listedByDefault;
+        }
+    }
+
+    private final Map<Integer, List<Pkg>> byUid = new HashMap<>();
+    int listedLookups;
+    int labelLookups;
+    int iconLookups;
+
+    FakePackageDirectory(FakeUsageSource source) {
+        for (int i = 0; i < source.packageUids.length; i++) {
+            int uid = source.packageUids[i];
+            byUid.computeIfAbsent(uid, k -> new ArrayList<>())
+                    .add(new Pkg("com.example.app" + i, uid, i % SYSTEM_EVERY != 0));
+        }
+    }
+
+    /** Uids with at least one package listed at this detail level. */
+    int listedUids(boolean detailed) {
+        int count = 0;
+        for (int uid : byUid.keySet()) {
+            if (listedPackage(uid, detailed) != null) {
+                count++;
+            }
+        }
+        listedLookups = 0;
+        return count;
+    }
+
+    @Override
+    public Pkg listedPackage(int uid, boolean detailed) {
+        listedLookups++;
+        List<Pkg> packages = byUid.get(uid);
+        if (packages == null) {
+            return null;
+        }
+        for (Pkg pkg : packages) {
+            if (detailed || pkg.listedByDefault) {
+                return pkg;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String packageName(Pkg pkg) {
+        return pkg.packageName;
+    }
+
+    @Override
+    public String label(Pkg pkg) {
+        labelLookups++;
+        return "App " + pkg.packageName;
+    }
+
+    @Override
+    public String iconHash(Pkg pkg) {
+        iconLookups++;
+        return Integer.toHexString(pkg.packageName.hashCode());
+    }
+
+    @Override
+    public int uid(Pkg pkg) {
+        return pkg.uid;
+    }
+}
@@ -0,0 +1,104 @@
+package com.anonymous.packetMeter.core;
+
+/**
+ * In-memory {@link UsageSource} standing in for NetworkStatsManager, shaped after a device
+ * with packageCount installed packages: every {@link #SHARED_UID_EVERY}th package shares the
+ * previous package's uid, and tethered traffic is reported under
+ * {@link AppUsageJoin#UID_TETHERING}. Counts every query so tests can budget them.
+ */
+final class FakeUsageSource implements UsageSource {
+    static final int FIRST_UID = 10_000;
+    static final int SHARED_UID_EVERY = 10;
+    // Foreground/background x metered/unmetered, as returned for a typical day
+    static final int SPLITS_PER_UID = 4;
+    static final long TETHERING_RX = 7_000_000L;
+    static final long TETHERING_TX = 300_000L;
+
+    final int[] packageUids;
+    final int uidCount;
+    int summaryQueries;
+    int detailQueries;
+    int deviceQueries;
+
+    private final UsageBucket bucket = new UsageBucket();
+
+    FakeUsageSource(int packageCount) {
+        packageUids = new int[packageCount];
+        int uid = FIRST_UID - 1;
+        for (int i = 0; i < packageCount; i++) {
+            if (i == 0 || i % SHARED_UID_EVERY != 0) {
+                uid++;
+            }
+            packageUids[i] = uid;
+        }
+        uidCount = uid - FIRST_UID + 1;
+    }
+
+    static long rxBytes(int uid) {
+        return 1_000L + (uid - FIRST_UID) * 4_096L;
+    }
+
+    static long txBytes(int uid) {
+        return 100L + (uid - FIRST_UID) * 512L;
+    }
+
+    @Override
+    public void querySummary(int transport, long startTime, long endTime, BucketSink sink,
+            QueryToken token) {
+        summaryQueries++;
+        bucket.transport = transport;
+        bucket.roaming = 1;
+        bucket.defaultNetwork = -1;
+        bucket.startTime = startTime;
+        bucket.endTime = endTime;
+        for (int uid = FIRST_UID; uid < FIRST_UID + uidCount; uid++) {
+            token.throwIfCancelled();
+            for (int split = 0; split < SPLITS_PER_UID; split++) {
+                emit(uid, transport, split, rxBytes(uid), txBytes(uid), sink);
+            }
+        }
+        emit(AppUsageJoin.UID_TETHERING, transport, 0, TETHERING_RX, TETHERING_TX, sink);
+    }
+
+    @Override
+    public void queryDetails(int transport, long startTime, long endTime, Integer uid,
+            BucketSink sink, QueryToken token) {
+        detailQueries++;
+        bucket.transport = transport;
+        bucket.roaming = 1;
+        bucket.defaultNetwork = -1;
+        bucket.startTime = startTime;
+        bucket.endTime = endTime;
+        for (int u = FIRST_UID; u < FIRST_UID + uidCount; u++) {
+            if (uid == null || uid == u) {
+                emit(u, transport, 0, rxBytes(u), txBytes(u), sink);
+            }
+        }
+    }
+
+    @Override
+    public long[] queryDeviceTotal(int transport, long startTime, long endTime) {
+        deviceQueries++;
+        long rx = TETHERING_RX;
+        long tx = TETHERING_TX;
+        for (int uid = FIRST_UID; uid < FIRST_UID + uidCount; uid++) {
+            rx += rxBytes(uid);
+            tx += txBytes(uid);
+        }
+        return new long[] { rx, tx };
+    }
+
+    int totalQueries() {
+        return summaryQueries + detailQueries + deviceQueries;
+    }
+
+    // Splits the uid's bytes evenly over SPLITS_PER_UID buckets per transport
+    private void emit(int uid, int transport, int split, long rx, long tx, BucketSink sink) {
+        bucket.uid = uid;
+        bucket.state = 1 + (split & 1);
+        bucket.metered = 1 + (split >> 1);
+        bucket.rxBytes = uid == AppUsageJoin.UID_TETHERING ? rx : rx / SPLITS_PER_UID;
+        bucket.txBytes = uid == AppUsageJoin.UID_TETHERING ? tx : tx / SPLITS_PER_UID;
+        sink.accept(bucket);
+    }
+}
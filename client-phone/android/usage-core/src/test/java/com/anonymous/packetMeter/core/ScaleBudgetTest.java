@@ -0,0 +1,347 @@
+package com.anonymous.packetMeter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Per-call budgets for the app list, device totals and tethering row at 50, 500 and 2000
+ * installed packages. Query counts must not grow with the package count; wall time and
+ * allocated bytes may grow linearly, within a fixed cost per package.
+ *
+ * Time and allocation budgets are several times what a laptop JVM measures, so they only
+ * trip on a change in complexity (a query or lookup per package, a quadratic join, boxing
+ * per bucket), not on noise.
+ */
+@RunWith(Parameterized.class)
+public class ScaleBudgetTest {
+    private static final long START = 1_700_000_000_000L;
+    private static final long END = START + 24 * 60 * 60 * 1000L;
+
+    private static final int WARMUP_RUNS = 20;
+    private static final int MEASURED_RUNS = 5;
+
+    private static final long APP_USAGE_BASE_NANOS = 2_000_000L;
+    private static final long APP_USAGE_NANOS_PER_PACKAGE = 5_000L;
+    private static final long APP_USAGE_BASE_BYTES = 64 * 1024L;
+    private static final long APP_USAGE_BYTES_PER_PACKAGE = 1_536L;
+    private static final long TOTAL_USAGE_NANOS_PER_PACKAGE = 500L;
+    private static final long TOTAL_USAGE_BYTES = 1_024L;
+    private static final long TETHERING_NANOS = 200_000L;
+    private static final long TETHERING_BYTES = 1_024L;
+    private static final long REUSED_TABLE_BYTES = 1_024L;
+    private static final int TOP_K = 20;
+
+    @Parameterized.Parameters(name = "{0} packages")
+    public static Collection<Object[]> packageCounts() {
+        return Arrays.asList(new Object[][] { { 50 }, { 500 }, { 2000 } });
+    }
+
+    private final int packageCount;
+
+    public ScaleBudgetTest(int packageCount) {
+        this.packageCount = packageCount;
+    }
+
+    @Test
+    public void appUsageIssuesOneSummaryQueryPerTransport() throws IOException {
+        FakeUsageSource source = new FakeUsageSource(packageCount);
+        FakePackageDirectory directory = new FakePackageDirectory(source);
+
+        appUsage(source, directory, false);
+
+        assertEquals(2, source.summaryQueries);
+        assertEquals(0, source.detailQueries);
+        assertEquals(0, source.deviceQueries);
+        // One lookup per uid with traffic, tethering included
+        assertEquals(source.uidCount + 1, directory.listedLookups);
+    }
+
+    @Test
+    public void appUsageResolvesLabelsOnlyForReportedRows() throws IOException {
+        for (boolean detailed : new boolean[] { false, true }) {
+            FakeUsageSource source = new FakeUsageSource(packageCount);
+            FakePackageDirectory directory = new FakePackageDirectory(source);
+            int listed = directory.listedUids(detailed);
+
+            AppUsageRows rows = appUsage(source, directory, detailed);
+
+            assertEquals(listed + 1, rows.size());
+            assertEquals(listed, directory.labelLookups);
+            assertEquals(listed, directory.iconLookups);
+        }
+    }
+
+    @Test
+    public void sharedUidsAreReportedOnce() throws IOException {
+        FakeUsageSource source = new FakeUsageSource(packageCount);
+        AppUsageRows rows = appUsage(source, new FakePackageDirectory(source), true);
+
+        Set<Integer> uids = new HashSet<>();
+        for (int row = 0; row < rows.size(); row++) {
+            assertTrue("uid " + rows.uid(row) + " reported twice", uids.add(rows.uid(row)));
+            if (rows.uid(row) >= FakeUsageSource.FIRST_UID) {
+                // All split buckets of the uid folded into one row
+                long rx = FakeUsageSource.rxBytes(rows.uid(row));
+                assertEquals(rx - rx % FakeUsageSource.SPLITS_PER_UID, rows.wifiRx(row));
+            }
+        }
+        assertEquals(source.uidCount + 1, rows.size());
+        for (int row = 1; row < rows.size(); row++) {
+            assertTrue(rows.totalBytes(row - 1) >= rows.totalBytes(row));
+        }
+    }
+
+    @Test
+    public void rankListedResolvesOnlyTheRequestedRanks() throws IOException {
+        FakeUsageSource source = new FakeUsageSource(packageCount);
+        FakePackageDirectory directory = new FakePackageDirectory(source);
+        int listed = directory.listedUids(false);
+        AppUsageRows all = appUsage(source, new FakePackageDirectory(source), false);
+        UidUsageTable table = SummaryAggregator.aggregate(source, START, END, QueryToken.NONE);
+
+        AppUsageJoin.Ranking<FakePackageDirectory.Pkg> ranking =
+                AppUsageJoin.rankListed(table, directory, false, TOP_K);
+        AppUsageRows page = ranking.rows(TOP_K / 2, ranking.size());
+
+        assertEquals(source.uidCount, directory.listedLookups);
+        assertEquals(listed + 1, ranking.totalApps);
+        assertEquals(Math.min(TOP_K, listed + 1), ranking.size());
+        assertEquals(ranking.size() - TOP_K / 2, page.size());
+        assertEquals(page.size() - tetheringRows(page), directory.labelLookups);
+        for (int row = 0; row < page.size(); row++) {
+            assertEquals(all.totalBytes(TOP_K / 2 + row), page.totalBytes(row));
+        }
+    }
+
+    @Test
+    public void topKForSmallerKIsAPrefixEvenWithTies() {
+        // Every other id shares one total, so the boundary of each page falls inside a tie
+        TopKSelector small = new TopKSelector(TOP_K / 2);
+        TopKSelector large = new TopKSelector(TOP_K);
+        for (int id = packageCount - 1; id >= 0; id--) {
+            long total = id % 2 == 0 ? 1_000L : id;
+            small.offer(id, total);
+            large.offer(id, total);
+        }
+
+        int[] first = small.drainDescending();
+        int[] both = large.drainDescending();
+        assertEquals(TOP_K / 2, first.length);
+        assertTrue(Arrays.equals(first, Arrays.copyOf(both, first.length)));
+    }
+
+    @Test
+    public void tetheringIsOneRowWithItsOwnTotals() throws IOException {
+        FakeUsageSource source = new FakeUsageSource(packageCount);
+        AppUsageRows rows = appUsage(source, new FakePackageDirectory(source), false);
+
+        int tethering = -1;
+        for (int row = 0; row < rows.size(); row++) {
+            if (AppUsageJoin.TETHERING_PACKAGE.equals(rows.packageName(row))) {
+                assertEquals("tethering reported twice", -1, tethering);
+                tethering = row;
+            }
+        }
+        assertTrue(tethering >= 0);
+        assertEquals(-1, rows.uid(tethering));
+        assertEquals(FakeUsageSource.TETHERING_RX, rows.wifiRx(tethering));
+        assertEquals(FakeUsageSource.TETHERING_RX, rows.mobileRx(tethering));
+        assertEquals(FakeUsageSource.TETHERING_TX, rows.wifiTx(tethering));
+    }
+
+    @Test
+    public void addTetheringIssuesNoQueries() throws IOException {
+        FakeUsageSource source = new FakeUsageSource(packageCount);
+        UidUsageTable table = SummaryAggregator.aggregate(source, START, END, QueryToken.NONE);
+        int queries = source.totalQueries();
+
+        AppUsageRows rows = new AppUsageRows(1);
+        AppUsageJoin.addTethering(rows, table);
+
+        assertEquals(queries, source.totalQueries());
+        assertEquals(1, rows.size());
+        assertEquals(FakeUsageSource.TETHERING_RX + FakeUsageSource.TETHERING_TX,
+                rows.wifiRx(0) + rows.wifiTx(0));
+    }
+
+    @Test
+    public void totalUsageIssuesOneDeviceQueryPerTransport() throws IOException {
+        FakeUsageSource source = new FakeUsageSource(packageCount);
+
+        long[] totals = SummaryAggregator.deviceTotals(source, START, END);
+
+        assertEquals(2, source.deviceQueries);
+        assertEquals(0, source.summaryQueries);
+        assertEquals(0, source.detailQueries);
+        assertEquals(4, totals.length);
+        assertEquals(source.queryDeviceTotal(UidUsageTable.TRANSPORT_WIFI, START, END)[0], totals[0]);
+    }
+
+    @Test
+    public void subscriptionUsageScansEachSubscriberOnce() throws IOException {
+        FakeUsageSource wifi = new FakeUsageSource(packageCount);
+        FakeUsageSource[] sims = { new FakeUsageSource(packageCount), new FakeUsageSource(packageCount) };
+        long[][] simTotals = new long[sims.length][4];
+
+        UidUsageTable table = SummaryAggregator.aggregateBySubscriber(wifi, sims, START, END,
+                simTotals, QueryToken.NONE);
+
+        assertEquals(1, wifi.summaryQueries);
+        long[] device = sims[0].queryDeviceTotal(UidUsageTable.TRANSPORT_MOBILE, START, END);
+        for (int i = 0; i < sims.length; i++) {
+            assertEquals(1, sims[i].summaryQueries);
+            assertEquals(0, sims[i].detailQueries);
+            assertEquals(FakeUsageSource.TETHERING_RX, simTotals[i][2]);
+            assertEquals(FakeUsageSource.TETHERING_TX, simTotals[i][3]);
+            // Split buckets round down, so the scan may come in just under the device figure
+            assertTrue(simTotals[i][0] <= device[0]
+                    && simTotals[i][0] > device[0] - (long) FakeUsageSource.SPLITS_PER_UID * sims[i].uidCount);
+        }
+        int tethering = table.indexOf(AppUsageJoin.UID_TETHERING);
+        assertEquals(2 * FakeUsageSource.TETHERING_RX, table.mobileRxAt(tethering));
+    }
+
+    @Test
+    public void appUsageStaysWithinTimeAndAllocationBudget() throws IOException {
+        FakeUsageSource source = new FakeUsageSource(packageCount);
+        FakePackageDirectory directory = new FakePackageDirectory(source);
+        Measurement m = measure(() -> assertNotNull(appUsage(source, directory, true)));
+
+        assertWithin("wall time", m.nanos,
+                APP_USAGE_BASE_NANOS + APP_USAGE_NANOS_PER_PACKAGE * packageCount);
+        assertAllocatedWithin(m, APP_USAGE_BASE_BYTES + APP_USAGE_BYTES_PER_PACKAGE * packageCount);
+    }
+
+    @Test
+    public void rankListedStaysWithinTimeAndAllocationBudget() throws IOException {
+        FakeUsageSource source = new FakeUsageSource(packageCount);
+        FakePackageDirectory directory = new FakePackageDirectory(source);
+        UidUsageTable table = SummaryAggregator.aggregate(source, START, END, QueryToken.NONE);
+        Measurement m = measure(() -> {
+            AppUsageJoin.Ranking<FakePackageDirectory.Pkg> ranking =
+                    AppUsageJoin.rankListed(table, directory, true, TOP_K);
+            assertNotNull(ranking.rows(0, ranking.size()));
+        });
+
+        // No aggregation here, so the app list budget is an upper bound
+        assertWithin("wall time", m.nanos,
+                APP_USAGE_BASE_NANOS + APP_USAGE_NANOS_PER_PACKAGE * packageCount);
+        assertAllocatedWithin(m, APP_USAGE_BASE_BYTES + APP_USAGE_BYTES_PER_PACKAGE * packageCount);
+    }
+
+    @Test
+    public void totalUsageStaysWithinTimeAndAllocationBudget() throws IOException {
+        FakeUsageSource source = new FakeUsageSource(packageCount);
+        Measurement m = measure(() -> SummaryAggregator.deviceTotals(source, START, END));
+
+        // The fake sums every uid per device query; the platform does the same in system_server
+        assertWithin("wall time", m.nanos,
+                APP_USAGE_BASE_NANOS + TOTAL_USAGE_NANOS_PER_PACKAGE * packageCount);
+        assertAllocatedWithin(m, TOTAL_USAGE_BYTES);
+    }
+
+    @Test
+    public void reusedTableAggregatesWithinAllocationBudget() throws IOException {
+        FakeUsageSource source = new FakeUsageSource(packageCount);
+        UidUsageTable expected = SummaryAggregator.aggregate(source, START, END, QueryToken.NONE);
+        UidUsageTable table = new UidUsageTable();
+        Measurement m = measure(() -> {
+            table.clear();
+            SummaryAggregator.aggregateInto(source, START, END, table, QueryToken.NONE);
+        });
+
+        assertEquals(expected.size(), table.size());
+        int slot = table.indexOf(AppUsageJoin.UID_TETHERING);
+        assertEquals(FakeUsageSource.TETHERING_RX, table.wifiRxAt(slot));
+        // Once grown, a cleared table is refilled without reallocating
+        assertAllocatedWithin(m, REUSED_TABLE_BYTES);
+    }
+
+    @Test
+    public void addTetheringStaysWithinTimeAndAllocationBudget() throws IOException {
+        FakeUsageSource source = new FakeUsageSource(packageCount);
+        UidUsageTable table = SummaryAggregator.aggregate(source, START, END, QueryToken.NONE);
+        AppUsageRows rows = new AppUsageRows(WARMUP_RUNS + MEASURED_RUNS);
+        Measurement m = measure(() -> AppUsageJoin.addTethering(rows, table));
+
+        assertWithin("wall time", m.nanos, TETHERING_NANOS);
+        assertAllocatedWithin(m, TETHERING_BYTES);
+    }
+
+    private static AppUsageRows appUsage(FakeUsageSource source, FakePackageDirectory directory,
+            boolean detailed) throws IOException {
+        UidUsageTable table = SummaryAggregator.aggregate(source, START, END, QueryToken.NONE);
+        return AppUsageJoin.collect(table, directory, detailed, QueryToken.NONE);
+    }
+
+    private static int tetheringRows(AppUsageRows rows) {
+        int count = 0;
+        for (int row = 0; row < rows.size(); row++) {
+            if (AppUsageJoin.TETHERING_PACKAGE.equals(rows.packageName(row))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private interface Call {
+        void run() throws IOException;
+    }
+
+    /** Fastest of the measured runs, after warm-up; -1 bytes if allocation is not measurable. */
+    private static final class Measurement {
+        long nanos = Long.MAX_VALUE;
+        long bytes = Long.MAX_VALUE;
+    }
+
+    private static Measurement measure(Call call) throws IOException {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            call.run();
+        }
+        com.sun.management.ThreadMXBean threads = allocationCounter();
+        long threadId = Thread.currentThread().getId();
+        Measurement m = new Measurement();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            long bytesBefore = threads == null ? 0 : threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            call.run();
+            m.nanos = Math.min(m.nanos, System.nanoTime() - start);
+            m.bytes = threads == null ? -1
+                    : Math.min(m.bytes, threads.getThreadAllocatedBytes(threadId) - bytesBefore);
+        }
+        return m;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()
+                ? threads : null;
+    }
+
+    private void assertWithin(String what, long actual, long budget) {
+        assertTrue(what + " " + actual + " over budget " + budget + " at " + packageCount
+                + " packages", actual <= budget);
+    }
+
+    private void assertAllocatedWithin(Measurement m, long budget) {
+        Assume.assumeTrue("thread allocation counter not available", m.bytes >= 0);
+        assertWithin("allocated bytes", m.bytes, budget);
+    }
+}
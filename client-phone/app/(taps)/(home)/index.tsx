@@ -27,6 +27,7 @@ export default function HomeScreen() {
   const [isInitialLoad, setIsInitialLoad] = useState(true);
   const [showToTop, setShowToTop] = useState(false);
   const [isFetching, setIsFetching] = useState(false);
+  const [refreshing, setRefreshing] = useState(false);
   const { detailedReports } = useReporterStore();
   const listRef = useRef<FlatList<AppUsageDataAPI>>(null);
 
@@ -36,6 +37,8 @@ export default function HomeScreen() {
     hasPermission,
     checkPermission,
     getAppNetworkUsage,
+    loadMoreAppUsage,
+    refreshAppUsage,
     getTotalNetworkUsage,
     formatBytes,
   } = useNetworkUsage();
@@ -52,11 +55,18 @@ export default function HomeScreen() {
   // Reload when period or count changes
   useEffect(() => {
     if (!isInitialLoad && hasPermission) {
+      // Ignore completion of a fetch that a newer selection has superseded
+      let active = true;
       setIsFetching(true);
       Promise.all([
         getAppNetworkUsage(selectedPeriod, selectedCount, detailedReports),
         getTotalNetworkUsage(selectedPeriod, selectedCount),
-      ]).finally(() => setIsFetching(false));
+      ]).finally(() => {
+        if (active) setIsFetching(false);
+      });
+      return () => {
+        active = false;
+      };
     }
   }, [
     selectedPeriod,
@@ -112,7 +122,17 @@ export default function HomeScreen() {
     detailedReports,
   ]);
 
-  const showLoading = isFetching || isInitialLoad;
+  // Pull to refresh applies only the rows that changed since the last refresh
+  const handleRefresh = useCallback(async () => {
+    setRefreshing(true);
+    await Promise.all([
+      refreshAppUsage(),
+      getTotalNetworkUsage(selectedPeriod, selectedCount),
+    ]).finally(() => setRefreshing(false));
+  }, [refreshAppUsage, getTotalNetworkUsage, selectedPeriod, selectedCount]);
+
+  // Apps stream in largest first, so the list shows as soon as the first chunk lands
+  const showLoading = isInitialLoad || (isFetching && appUsages.length === 0);
 
   const Header = () => (
     <View>
@@ -190,6 +210,10 @@ export default function HomeScreen() {
         }
         onScroll={onScroll}
         scrollEventThrottle={16}
+        onEndReached={showLoading ? undefined : loadMoreAppUsage}
+        onEndReachedThreshold={0.5}
+        refreshing={refreshing}
+        onRefresh={showLoading ? undefined : handleRefresh}
       />
       {showLoading && (
         <View style={styles.loadingOverlay} pointerEvents="auto">
@@ -11,7 +11,8 @@ import { useColorScheme } from '@/hooks/use-color-scheme';
 import { getTheme, subscribe } from '@/hooks/theme-store';
 import React from 'react';
 // import { registerBackgroundTasks } from '@/services/expoBackgroundTasks';
-import { startBackgroundActions } from '@/services/backgroundActions';
+import { startNativeCollector } from '@/services/nativeCollector';
+import { useReporterStore } from '@/store/useReporterStore';
 import { SafeAreaProvider, SafeAreaView } from 'react-native-safe-area-context';
 
 export const unstable_settings = {
@@ -36,11 +37,20 @@ export default function RootLayout() {
   //   });
   // }, []);
 
-  // Start background actions with react-native-background-actions
+  // Background reports run natively through WorkManager, unless turned off
+  // from the settings card; wait for the persisted setting before scheduling
   React.useEffect(() => {
-    startBackgroundActions(15).catch((err) => {
-      console.error('Failed to start background actions:', err);
-    });
+    const start = () => {
+      if (!useReporterStore.getState().backgroundReports) return;
+      startNativeCollector(15).catch((err) => {
+        console.error('Failed to start native collector:', err);
+      });
+    };
+    if (useReporterStore.persist.hasHydrated()) {
+      start();
+      return;
+    }
+    return useReporterStore.persist.onFinishHydration(start);
   }, []);
 
   const theme = themeName === 'dark' ? DarkTheme : DefaultTheme;
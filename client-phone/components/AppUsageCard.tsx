@@ -2,11 +2,12 @@ import React from 'react';
 import { View, Image, StyleSheet } from 'react-native';
 import { ThemedText } from '@/components/themed-text';
 import { ThemedView } from '@/components/themed-view';
+import { useAppIconStore } from '@/store/useAppIconStore';
 
 interface AppNetworkData {
   packageName: string;
   appName: string;
-  icon: string | null;
+  iconHash: string | null;
   uid: number;
   wifi: {
     rx: number;
@@ -26,13 +27,19 @@ interface AppUsageCardProps {
   formatBytes: (bytes: number) => string;
 }
 
-export function AppUsageCard({ item, formatBytes }: AppUsageCardProps) {
+// Memoized so a refresh re-renders only the rows whose data changed
+export const AppUsageCard = React.memo(function AppUsageCard({
+  item,
+  formatBytes,
+}: AppUsageCardProps) {
+  const icon = useAppIconStore((state) =>
+    item.iconHash ? state.icons[item.iconHash] : undefined
+  );
+
   return (
     <ThemedView style={styles.appItem} lightColor="#f5f5f5" darkColor="#1f2123">
       <View style={styles.appHeader}>
-        {item.icon && (
-          <Image source={{ uri: item.icon }} style={styles.appIcon} />
-        )}
+        {icon && <Image source={{ uri: icon }} style={styles.appIcon} />}
         <View style={styles.appInfo}>
           <ThemedText style={styles.appName}>
             {item.appName.length > 20
@@ -65,7 +72,7 @@ export function AppUsageCard({ item, formatBytes }: AppUsageCardProps) {
       </View>
     </ThemedView>
   );
-}
+});
 
 const styles = StyleSheet.create({
   appItem: {
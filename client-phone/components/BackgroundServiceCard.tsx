@@ -1,9 +1,10 @@
 import React from 'react';
 import {
-  startBackgroundActions,
-  stopBackgroundActions,
-  isBackgroundActionsRunning,
-} from '@/services/backgroundActions';
+  startNativeCollector,
+  stopNativeCollector,
+  isNativeCollectorScheduled,
+} from '@/services/nativeCollector';
+import { useReporterStore } from '@/store/useReporterStore';
 import { ThemedText } from '@/components/themed-text';
 import { ThemedView } from '@/components/themed-view';
 import { View, StyleSheet, Alert } from 'react-native';
@@ -18,7 +19,7 @@ export function BackgroundServiceCard() {
 
   const checkStatus = React.useCallback(async () => {
     try {
-      const running = await isBackgroundActionsRunning();
+      const running = await isNativeCollectorScheduled();
       setIsRunning(running);
     } catch (err) {
       console.error('Failed to check background service status:', err);
@@ -37,11 +38,12 @@ export function BackgroundServiceCard() {
     setAction('start');
     setIsLoading(true);
     try {
-      await startBackgroundActions(15);
+      useReporterStore.getState().setBackgroundReports(true);
+      await startNativeCollector(15);
       await checkStatus();
       Alert.alert(
         'Background Service',
-        'Background service started successfully. Reports will be sent every 15 minutes.'
+        'Background service started successfully. Reports will be sent about every 15 minutes.'
       );
     } catch (err) {
       console.error('Failed to start background service:', err);
@@ -61,7 +63,8 @@ export function BackgroundServiceCard() {
     setAction('stop');
     setIsLoading(true);
     try {
-      await stopBackgroundActions();
+      useReporterStore.getState().setBackgroundReports(false);
+      await stopNativeCollector();
       await checkStatus();
       Alert.alert(
         'Background Service',
@@ -102,7 +105,7 @@ export function BackgroundServiceCard() {
       </View>
       <ThemedText style={styles.description}>
         {isRunning
-          ? 'Background service is actively sending reports every 15 minutes.'
+          ? 'Background service is sending reports about every 15 minutes, even while the app is closed.'
           : 'Background service is stopped. Start it to enable automatic reporting.'}
       </ThemedText>
       <View style={styles.col}>
@@ -7,8 +7,11 @@ import { useNetworkUsage } from '@/hooks/useNetworkUsage';
 import { useCameraPermissions } from 'expo-camera';
 
 export function PermissionsCard() {
-  const { checkPermission: usagePermissionCheck, openUsageSettings } =
-    useNetworkUsage();
+  const {
+    hasPermission,
+    checkPermission: usagePermissionCheck,
+    openUsageSettings,
+  } = useNetworkUsage();
 
   const [cameraPermission] = useCameraPermissions();
 
@@ -43,6 +46,14 @@ export function PermissionsCard() {
   return (
     <ThemedView style={styles.sectionCard}>
       <ThemedText type="subtitle">Permissions</ThemedText>
+      <ThemedText>
+        Usage access:{' '}
+        {hasPermission === null
+          ? 'unknown'
+          : hasPermission
+            ? 'granted'
+            : 'not granted'}
+      </ThemedText>
       <View style={styles.col}>
         <Button
           title="Check Usage Permission"
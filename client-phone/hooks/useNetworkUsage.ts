@@ -1,18 +1,82 @@
-import { useState, useCallback } from 'react';
+import { useState, useCallback, useEffect, useRef } from 'react';
 import { Alert } from 'react-native';
 import {
+  AppUsageDiffSubscription,
+  apiCancelUsageRequest,
   apiCheckPermission,
-  apiGetAppUsage,
-  apiGetTotalUsage,
+  apiCheckPermissionSync,
+  apiGetAppIcons,
+  apiGetCachedAppUsage,
+  apiGetCachedTotalUsageSync,
+  apiGetPreciseTotalUsage,
   apiOpenUsageSettings,
+  apiStreamAppUsage,
+  apiSubscribeAppUsageDiff,
+  applyAppUsageDiff,
+  subscribeUsageAccess,
 } from '@/services/networkUsageAPI';
 import { AppUsageDataAPI, TotalUsageDataAPI } from '@/types/networkUsage';
+import { useAppIconStore } from '@/store/useAppIconStore';
+
+const APP_PAGE_SIZE = 50;
+
+type AppPage = {
+  period: string;
+  count: number;
+  detailed: boolean;
+  nextCursor: number | null;
+};
+
+/**
+ * Fetch icons for hashes this session has not seen yet, in one batch.
+ */
+async function loadMissingIcons(usage: AppUsageDataAPI[]) {
+  const { icons, addIcons } = useAppIconStore.getState();
+  const missing = new Set<string>();
+  usage.forEach((app) => {
+    if (app.iconHash && !icons[app.iconHash]) {
+      missing.add(app.iconHash);
+    }
+  });
+  if (missing.size === 0) return;
+
+  try {
+    addIcons(await apiGetAppIcons(Array.from(missing)));
+  } catch (e) {
+    console.warn('Error getting app icons:', e);
+  }
+}
 
 export function useNetworkUsage() {
   const [appUsages, setAppUsages] = useState<AppUsageDataAPI[]>([]);
   const [totalUsage, setTotalUsage] = useState<TotalUsageDataAPI | null>(null);
   const [loading, setLoading] = useState(false);
-  const [hasPermission, setHasPermission] = useState<boolean | null>(null);
+  // The native module caches the state, so it can be read during render
+  const [hasPermission, setHasPermission] = useState<boolean | null>(() => {
+    try {
+      return apiCheckPermissionSync();
+    } catch {
+      return null;
+    }
+  });
+  const appRequestRef = useRef<string | null>(null);
+  const appPageRef = useRef<AppPage | null>(null);
+  const appCountRef = useRef(0);
+  // Diff subscription covering the rows currently loaded, created on first refresh
+  const diffRef = useRef<AppUsageDiffSubscription | null>(null);
+
+  useEffect(() => subscribeUsageAccess(setHasPermission), []);
+
+  useEffect(() => {
+    appCountRef.current = appUsages.length;
+  }, [appUsages]);
+
+  const dropDiffSubscription = useCallback(() => {
+    diffRef.current?.unsubscribe();
+    diffRef.current = null;
+  }, []);
+
+  useEffect(() => dropDiffSubscription, [dropDiffSubscription]);
 
   const checkPermission = useCallback(async () => {
     try {
@@ -37,12 +101,63 @@ export function useNetworkUsage() {
 
   const getAppNetworkUsage = useCallback(
     async (period: string, count: number, detailed: boolean = false) => {
+      // A newer selection supersedes any scan still running for the old one
+      const previousRequest = appRequestRef.current;
+      if (previousRequest) {
+        apiCancelUsageRequest(previousRequest).catch(() => {});
+      }
+      const requestId = `apps-${Date.now()}-${Math.random()}`;
+      appRequestRef.current = requestId;
+
+      appPageRef.current = null;
+      dropDiffSubscription();
+      setAppUsages([]);
       setLoading(true);
+
+      // Show the last result for this window until the first fresh chunk lands
+      let streamed = false;
+      apiGetCachedAppUsage(period, count, detailed)
+        .then((cached) => {
+          if (
+            streamed ||
+            appRequestRef.current !== requestId ||
+            !cached?.current ||
+            !cached.apps
+          ) {
+            return;
+          }
+          setAppUsages(cached.apps);
+          loadMissingIcons(cached.apps);
+        })
+        .catch(() => {});
+
       try {
-        const usage = await apiGetAppUsage(period, count, detailed);
-        setAppUsages(usage);
+        // Chunks render as they arrive, largest apps first
+        let usage: AppUsageDataAPI[] = [];
+        const page = await apiStreamAppUsage(
+          period,
+          count,
+          detailed,
+          (apps) => {
+            if (appRequestRef.current !== requestId) return;
+            streamed = true;
+            usage = usage.concat(apps);
+            setAppUsages(usage);
+            loadMissingIcons(apps);
+          },
+          { requestId, limit: APP_PAGE_SIZE }
+        );
+        appPageRef.current = {
+          period,
+          count,
+          detailed,
+          nextCursor: page.nextCursor,
+        };
         return usage;
       } catch (e) {
+        if ((e as { code?: string }).code === 'ERR_CANCELLED') {
+          return [];
+        }
         console.error('Error getting app network usage:', e);
         const errorMessage =
           (e as Error).message || 'Failed to get app network usage';
@@ -64,16 +179,111 @@ export function useNetworkUsage() {
         }
         return [];
       } finally {
-        setLoading(false);
+        if (appRequestRef.current === requestId) {
+          appRequestRef.current = null;
+          setLoading(false);
+        }
       }
     },
-    [openUsageSettings]
+    [openUsageSettings, dropDiffSubscription]
   );
 
+  const loadMoreAppUsage = useCallback(async () => {
+    const page = appPageRef.current;
+    if (!page || page.nextCursor === null || appRequestRef.current) {
+      return;
+    }
+    const requestId = `apps-${Date.now()}-${Math.random()}`;
+    appRequestRef.current = requestId;
+    // Claim this page so repeated end-of-list callbacks do not refetch it
+    appPageRef.current = { ...page, nextCursor: null };
+    // The next refresh subscribes again, covering the longer list
+    dropDiffSubscription();
+    try {
+      const next = await apiStreamAppUsage(
+        page.period,
+        page.count,
+        page.detailed,
+        (apps) => {
+          if (appRequestRef.current !== requestId) return;
+          // Native pages continue one ranking, but one recomputed after the paging
+          // session expires may repeat apps that were already loaded
+          setAppUsages((current) => {
+            const loaded = new Set(current.map((app) => app.uid));
+            return current.concat(apps.filter((app) => !loaded.has(app.uid)));
+          });
+          loadMissingIcons(apps);
+        },
+        { requestId, limit: APP_PAGE_SIZE, cursor: page.nextCursor }
+      );
+      if (appRequestRef.current === requestId) {
+        appPageRef.current = { ...page, nextCursor: next.nextCursor };
+      }
+    } catch (e) {
+      if ((e as { code?: string }).code !== 'ERR_CANCELLED') {
+        console.warn('Error loading more app usage:', e);
+        if (appRequestRef.current === requestId) {
+          appPageRef.current = page;
+        }
+      }
+    } finally {
+      if (appRequestRef.current === requestId) {
+        appRequestRef.current = null;
+      }
+    }
+  }, [dropDiffSubscription]);
+
+  // Update the loaded list in place: after the first refresh of a selection,
+  // only rows that changed cross the bridge and re-render
+  const refreshAppUsage = useCallback(async () => {
+    const page = appPageRef.current;
+    if (!page || appRequestRef.current) {
+      return;
+    }
+    try {
+      const subscription = diffRef.current;
+      if (subscription) {
+        await subscription.refresh();
+        return;
+      }
+      const next = await apiSubscribeAppUsageDiff(
+        page.period,
+        page.count,
+        page.detailed,
+        (diff) => {
+          setAppUsages((current) => applyAppUsageDiff(current, diff));
+          loadMissingIcons(diff.added);
+        },
+        Math.max(appCountRef.current, APP_PAGE_SIZE)
+      );
+      const current = appPageRef.current;
+      if (
+        !current ||
+        current.period !== page.period ||
+        current.count !== page.count ||
+        current.detailed !== page.detailed ||
+        diffRef.current
+      ) {
+        // Selection changed or another refresh subscribed first
+        next.unsubscribe();
+        return;
+      }
+      diffRef.current = next;
+      setAppUsages(next.apps);
+      loadMissingIcons(next.apps);
+    } catch (e) {
+      console.warn('Error refreshing app usage:', e);
+    }
+  }, []);
+
   const getTotalNetworkUsage = useCallback(
     async (period: string, count: number) => {
+      const cached = apiGetCachedTotalUsageSync(period, count);
+      if (cached) {
+        setTotalUsage(cached);
+      }
       try {
-        const usage = await apiGetTotalUsage(period, count);
+        const usage = await apiGetPreciseTotalUsage(period, count);
         setTotalUsage(usage);
         return usage;
       } catch (e) {
@@ -99,6 +309,8 @@ export function useNetworkUsage() {
     hasPermission,
     checkPermission,
     getAppNetworkUsage,
+    loadMoreAppUsage,
+    refreshAppUsage,
     getTotalNetworkUsage,
     openUsageSettings,
     formatBytes,
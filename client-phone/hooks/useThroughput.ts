@@ -0,0 +1,38 @@
+import { useEffect, useState } from 'react';
+import {
+  apiStartThroughputSampler,
+  apiStopThroughputSampler,
+  subscribeThroughput,
+} from '@/services/networkUsageAPI';
+import { ThroughputSampleAPI } from '@/types/networkUsage';
+
+// The native sampler is shared; only the last mounted user stops it
+let samplerUsers = 0;
+
+/**
+ * Latest live throughput sample for the given uids while the caller is mounted
+ */
+export function useThroughput(uids: number[], intervalMs: number = 1000) {
+  const [sample, setSample] = useState<ThroughputSampleAPI | null>(null);
+  const uidKey = uids.join(',');
+
+  useEffect(() => {
+    samplerUsers++;
+    const unsubscribe = subscribeThroughput(setSample);
+    apiStartThroughputSampler(
+      uidKey ? uidKey.split(',').map(Number) : [],
+      intervalMs
+    ).catch((e) => {
+      console.error('Error starting throughput sampler:', e);
+    });
+    return () => {
+      unsubscribe();
+      samplerUsers--;
+      if (samplerUsers === 0) {
+        apiStopThroughputSampler().catch(() => {});
+      }
+    };
+  }, [uidKey, intervalMs]);
+
+  return sample;
+}
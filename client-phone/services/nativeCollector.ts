@@ -0,0 +1,88 @@
+import { useReporterStore } from '@/store/useReporterStore';
+import {
+  apiCancelCollector,
+  apiConfigureCollector,
+  apiIsCollectorScheduled,
+  apiScheduleCollector,
+  CollectorConfig,
+} from '@/services/networkUsageAPI';
+
+let unsubscribe: (() => void) | null = null;
+
+function selectConfig(): CollectorConfig {
+  const { serverHost, serverPort, useTls, deviceToken, detailedReports } =
+    useReporterStore.getState();
+  return { serverHost, serverPort, useTls, deviceToken, detailedReports };
+}
+
+function sameConfig(a: CollectorConfig, b: CollectorConfig): boolean {
+  return (
+    a.serverHost === b.serverHost &&
+    a.serverPort === b.serverPort &&
+    a.useTls === b.useTls &&
+    a.deviceToken === b.deviceToken &&
+    a.detailedReports === b.detailedReports
+  );
+}
+
+/**
+ * Keep the native collector's settings in sync with the reporter store
+ */
+function syncCollectorConfig(): void {
+  if (unsubscribe) {
+    return;
+  }
+  let current = selectConfig();
+  apiConfigureCollector(current).catch((err) => {
+    console.error('Failed to configure native collector:', err);
+  });
+  unsubscribe = useReporterStore.subscribe(() => {
+    const next = selectConfig();
+    if (sameConfig(current, next)) {
+      return;
+    }
+    current = next;
+    apiConfigureCollector(next).catch((err) => {
+      console.error('Failed to configure native collector:', err);
+    });
+  });
+}
+
+/**
+ * Start the WorkManager collector, which reports without starting the JS runtime
+ * @param intervalMinutes - Interval in minutes (minimum 15 minutes on Android)
+ */
+export async function startNativeCollector(
+  intervalMinutes: number = 15
+): Promise<void> {
+  try {
+    syncCollectorConfig();
+    await apiScheduleCollector(intervalMinutes);
+    console.log(
+      `Native collector scheduled with ${intervalMinutes} minute interval`
+    );
+  } catch (err) {
+    console.error('Failed to schedule native collector:', err);
+  }
+}
+
+/**
+ * Stop the WorkManager collector
+ */
+export async function stopNativeCollector(): Promise<void> {
+  try {
+    await apiCancelCollector();
+    unsubscribe?.();
+    unsubscribe = null;
+    console.log('Native collector cancelled');
+  } catch (err) {
+    console.error('Failed to cancel native collector:', err);
+  }
+}
+
+/**
+ * Whether the WorkManager collector is currently scheduled
+ */
+export async function isNativeCollectorScheduled(): Promise<boolean> {
+  return apiIsCollectorScheduled();
+}
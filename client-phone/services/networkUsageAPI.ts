@@ -1,29 +1,441 @@
-import { AppUsageDataAPI, TotalUsageDataAPI } from '@/types/networkUsage';
-import { NativeModules } from 'react-native';
+import {
+  AppUsageChunkAPI,
+  AppUsageDataAPI,
+  AppUsageDiffAPI,
+  AppUsagePageAPI,
+  CachedUsageAPI,
+  CollectorMetricsAPI,
+  PackedAppUsageAPI,
+  SubscriptionUsageAPI,
+  ThroughputSampleAPI,
+  TotalUsageDataAPI,
+  UsageAlertAPI,
+  UsageAlertRuleAPI,
+  UsageBreakdownAPI,
+  UsageBreakdownFilter,
+  UsageDimension,
+  UsageHistoryAPI,
+  UsageSeriesAPI,
+} from '@/types/networkUsage';
+import type {
+  InterfaceUsageReport,
+  PerProcessReportDelta,
+} from '@/types/reports';
+import { DeviceEventEmitter, NativeModules } from 'react-native';
 
 const { NetworkUsage, UsageAccessPermission } = NativeModules;
 
+export interface UsageQueryOptions {
+  // Id that can be passed to apiCancelUsageRequest
+  requestId?: string;
+  // Resolve with the apps computed so far once this budget is spent
+  timeoutMs?: number;
+}
+
 export async function apiCheckPermission() {
   return UsageAccessPermission.hasUsageAccess();
 }
 
+// Synchronous JSI read of the cached state, with no bridge round trip
+export function apiCheckPermissionSync(): boolean {
+  return UsageAccessPermission.hasUsageAccessSync();
+}
+
+// Fires when usage access is granted or revoked, e.g. on return from settings
+export function subscribeUsageAccess(
+  listener: (granted: boolean) => void
+): () => void {
+  const subscription = DeviceEventEmitter.addListener(
+    'UsageAccessChanged',
+    (event: { granted: boolean }) => listener(event.granted)
+  );
+  return () => subscription.remove();
+}
+
 export async function apiGetAppUsage(
   period: string,
   count: number,
-  detailed: boolean
+  detailed: boolean,
+  options?: UsageQueryOptions
 ): Promise<AppUsageDataAPI[]> {
-  return JSON.parse(
-    await NetworkUsage.getAppNetworkUsage(period, count, detailed)
-  ) as AppUsageDataAPI[];
+  return NetworkUsage.getAppNetworkUsageNative(
+    period,
+    count,
+    detailed,
+    options ?? null
+  );
 }
 
-export async function apiGetTotalUsage(
+export interface AppUsagePageOptions extends UsageQueryOptions {
+  // Apps per page, ranked by total bytes
+  limit?: number;
+  // nextCursor of the previous page; 0 for the first page
+  cursor?: number;
+}
+
+// Streams one page of the app list: `onChunk` receives the apps in rank order
+// as they are resolved, and the promise settles once the page is complete
+export async function apiStreamAppUsage(
+  period: string,
+  count: number,
+  detailed: boolean,
+  onChunk: (apps: AppUsageDataAPI[], offset: number) => void,
+  options?: AppUsagePageOptions
+): Promise<AppUsagePageAPI> {
+  const requestId =
+    options?.requestId ?? `stream-${Date.now()}-${Math.random()}`;
+  const subscription = DeviceEventEmitter.addListener(
+    'NetworkUsageChunk',
+    (chunk: AppUsageChunkAPI) => {
+      if (chunk.requestId === requestId) {
+        onChunk(chunk.apps, chunk.offset);
+      }
+    }
+  );
+  try {
+    return await NetworkUsage.streamAppNetworkUsage(period, count, detailed, {
+      ...options,
+      requestId,
+    });
+  } finally {
+    subscription.remove();
+  }
+}
+
+// Reads the native snapshot only, so it resolves in milliseconds even on a cold start
+export async function apiGetCachedAppUsage(
+  period: string,
+  count: number,
+  detailed: boolean = false
+): Promise<CachedUsageAPI | null> {
+  return NetworkUsage.getCachedAppNetworkUsage(period, count, detailed);
+}
+
+// Synchronous read of the totals last computed for this window, or null if
+// none are cached for the current window
+export function apiGetCachedTotalUsageSync(
   period: string,
   count: number
+): (TotalUsageDataAPI & { computedAt: number }) | null {
+  return NetworkUsage.getCachedTotalUsageSync(period, count);
+}
+
+// Columnar variant for large lists; see unpackAppUsage
+export async function apiGetAppUsagePacked(
+  period: string,
+  count: number,
+  detailed: boolean,
+  options?: UsageQueryOptions
+): Promise<PackedAppUsageAPI> {
+  return NetworkUsage.getAppNetworkUsagePacked(
+    period,
+    count,
+    detailed,
+    options ?? null
+  );
+}
+
+export function unpackAppUsage(packed: PackedAppUsageAPI): AppUsageDataAPI[] {
+  const str = (index: number) => (index < 0 ? null : packed.strings[index]);
+  const apps: AppUsageDataAPI[] = new Array(packed.rows);
+  for (let i = 0; i < packed.rows; i++) {
+    const wifiRx = packed.wifiRx[i];
+    const wifiTx = packed.wifiTx[i];
+    const mobileRx = packed.mobileRx[i];
+    const mobileTx = packed.mobileTx[i];
+    apps[i] = {
+      packageName: str(packed.packageName[i]) ?? '',
+      appName: str(packed.appName[i]) ?? '',
+      iconHash: str(packed.iconHash[i]),
+      uid: packed.uid[i],
+      wifi: { rx: wifiRx, tx: wifiTx, total: wifiRx + wifiTx },
+      mobile: { rx: mobileRx, tx: mobileTx, total: mobileRx + mobileTx },
+      totalBytes: wifiRx + wifiTx + mobileRx + mobileTx,
+    };
+  }
+  return apps;
+}
+
+export async function apiComputeReportDelta(
+  detailed: boolean
+): Promise<PerProcessReportDelta> {
+  return NetworkUsage.computeReportDelta(detailed);
+}
+
+export async function apiCommitReportDelta(reportId: string): Promise<boolean> {
+  return NetworkUsage.commitReportDelta(reportId);
+}
+
+// One call per chart: `count` periods split into hour or day bars, for the
+// device or for a single app when `uid` is given
+export async function apiGetUsageSeries(
+  period: string,
+  bucketSize: 'hour' | 'day',
+  count: number,
+  uid?: number,
+  options?: UsageQueryOptions
+): Promise<UsageSeriesAPI> {
+  return NetworkUsage.getUsageSeries(period, bucketSize, count, {
+    ...options,
+    uid: uid ?? null,
+  });
+}
+
+export async function apiGetUsageHistory(
+  startMs: number,
+  endMs: number,
+  detailed: boolean
+): Promise<UsageHistoryAPI> {
+  return NetworkUsage.getUsageHistory(startMs, endMs, detailed);
+}
+
+export async function apiCancelUsageRequest(
+  requestId: string
+): Promise<boolean> {
+  return NetworkUsage.cancelUsageRequest(requestId);
+}
+
+export async function apiStartThroughputSampler(
+  uids: number[],
+  intervalMs: number = 1000
+): Promise<void> {
+  return NetworkUsage.startThroughputSampler(uids, intervalMs);
+}
+
+export async function apiStopThroughputSampler(): Promise<void> {
+  return NetworkUsage.stopThroughputSampler();
+}
+
+export function subscribeThroughput(
+  listener: (sample: ThroughputSampleAPI) => void
+): () => void {
+  const subscription = DeviceEventEmitter.addListener(
+    'NetworkUsageThroughput',
+    listener
+  );
+  return () => subscription.remove();
+}
+
+export interface AppUsageDiffSubscription {
+  key: string;
+  // Baseline the diffs apply to
+  apps: AppUsageDataAPI[];
+  // Recompute natively; resolves to the number of rows in the emitted diff
+  refresh: () => Promise<number>;
+  unsubscribe: () => void;
+}
+
+// Native side keeps the last list per subscription and emits only added,
+// changed and removed rows on each refresh; key is this subscription's handle
+export async function apiSubscribeAppUsageDiff(
+  period: string,
+  count: number,
+  detailed: boolean,
+  listener: (diff: AppUsageDiffAPI) => void,
+  limit?: number
+): Promise<AppUsageDiffSubscription> {
+  const baseline: { key: string; apps: AppUsageDataAPI[] } =
+    await NetworkUsage.subscribeAppUsageDiff(period, count, detailed, {
+      limit: limit ?? null,
+    });
+  const subscription = DeviceEventEmitter.addListener(
+    'NetworkUsageDiff',
+    (diff: AppUsageDiffAPI) => {
+      if (diff.key === baseline.key) listener(diff);
+    }
+  );
+  return {
+    key: baseline.key,
+    apps: baseline.apps,
+    refresh: () => NetworkUsage.refreshAppUsageDiff(baseline.key),
+    unsubscribe: () => {
+      subscription.remove();
+      NetworkUsage.unsubscribeAppUsageDiff(baseline.key).catch(() => {});
+    },
+  };
+}
+
+// Unchanged rows keep their object identity, so memoized rows skip re-rendering
+export function applyAppUsageDiff(
+  apps: AppUsageDataAPI[],
+  diff: AppUsageDiffAPI
+): AppUsageDataAPI[] {
+  const removed = new Set(diff.removed.map((app) => app.uid));
+  const changed = new Map<number, AppUsageDataAPI>();
+  diff.changed.forEach(({ rank: _rank, previousRank: _previous, ...app }) =>
+    changed.set(app.uid, app)
+  );
+  const next: AppUsageDataAPI[] = [];
+  apps.forEach((app) => {
+    if (removed.has(app.uid)) return;
+    const update = changed.get(app.uid);
+    next.push(update ?? app);
+    changed.delete(app.uid);
+  });
+  // Changed rows beyond what was loaded are new to this list
+  changed.forEach((app) => next.push(app));
+  diff.added.forEach(({ rank: _rank, ...app }) => next.push(app));
+  return next.sort((a, b) => b.totalBytes - a.totalBytes);
+}
+
+// Rules are evaluated natively as usage is collected; each fires at most once a
+// day, as an event while the app is open and as a notification otherwise
+export async function apiSetUsageAlertRules(
+  rules: UsageAlertRuleAPI[]
+): Promise<void> {
+  return NetworkUsage.setUsageAlertRules(rules);
+}
+
+export async function apiGetUsageAlertRules(): Promise<UsageAlertRuleAPI[]> {
+  return NetworkUsage.getUsageAlertRules();
+}
+
+export async function apiCheckUsageAlerts(): Promise<void> {
+  return NetworkUsage.checkUsageAlerts();
+}
+
+export function subscribeUsageAlerts(
+  listener: (alert: UsageAlertAPI) => void
+): () => void {
+  const subscription = DeviceEventEmitter.addListener(
+    'NetworkUsageAlert',
+    listener
+  );
+  return () => subscription.remove();
+}
+
+export async function apiGetAppIcons(
+  hashes: string[]
+): Promise<Record<string, string>> {
+  return NetworkUsage.getAppIcons(hashes);
+}
+
+export async function apiGetTotalUsage(
+  period: string,
+  count: number,
+  options?: UsageQueryOptions
+): Promise<TotalUsageDataAPI> {
+  return NetworkUsage.getTotalNetworkUsageNative(
+    period,
+    count,
+    options ?? null
+  );
+}
+
+// Per-SIM mobile and tethering totals plus the app list, from one scan per SIM
+export async function apiGetSubscriptionUsage(
+  period: string,
+  count: number,
+  detailed: boolean,
+  options?: UsageQueryOptions
+): Promise<SubscriptionUsageAPI> {
+  return NetworkUsage.getSubscriptionUsage(
+    period,
+    count,
+    detailed,
+    options ?? null
+  );
+}
+
+export interface CollectorConfig {
+  serverHost: string;
+  serverPort: number;
+  useTls: boolean;
+  deviceToken: string | null;
+  detailedReports: boolean;
+  // Overrides host/port/TLS, e.g. to test against a local mock server
+  baseUrl?: string | null;
+}
+
+export async function apiConfigureCollector(
+  config: CollectorConfig
+): Promise<void> {
+  return NetworkUsage.configureCollector(config);
+}
+
+export async function apiScheduleCollector(
+  intervalMinutes: number
+): Promise<void> {
+  return NetworkUsage.scheduleCollector(intervalMinutes);
+}
+
+export async function apiCancelCollector(): Promise<void> {
+  return NetworkUsage.cancelCollector();
+}
+
+export async function apiIsCollectorScheduled(): Promise<boolean> {
+  return NetworkUsage.isCollectorScheduled();
+}
+
+export interface OutboxFlushResult {
+  batches: number;
+  reports: number;
+  // False if the server rejected a batch and reports remain queued
+  complete: boolean;
+}
+
+// Uploads per-process reports queued by the native collector
+export async function apiFlushReportOutbox(): Promise<OutboxFlushResult> {
+  return NetworkUsage.flushReportOutbox();
+}
+
+export async function apiGetReportOutboxStatus(): Promise<{
+  segments: number;
+  bytes: number;
+}> {
+  return NetworkUsage.getReportOutboxStatus();
+}
+
+// Like apiGetTotalUsage, but hour/day totals stay current between NetworkStats
+// bucket updates and repeated polls are cheap
+export async function apiGetPreciseTotalUsage(
+  period: string,
+  count: number,
+  options?: UsageQueryOptions
 ): Promise<TotalUsageDataAPI> {
-  return JSON.parse(
-    await NetworkUsage.getTotalNetworkUsage(period, count)
-  ) as TotalUsageDataAPI;
+  return NetworkUsage.getPreciseTotalUsage(period, count, options ?? null);
+}
+
+// Breakdowns of the same window within 30s are sliced from one native scan
+export async function apiGetUsageBreakdown(
+  period: string,
+  count: number,
+  groupBy: UsageDimension,
+  filter?: UsageBreakdownFilter & UsageQueryOptions
+): Promise<UsageBreakdownAPI> {
+  return NetworkUsage.getUsageBreakdown(period, count, groupBy, filter ?? null);
+}
+
+// Per-interface totals in the shape of DailyUsageReportPayload.Interfaces
+export async function apiGetInterfaceUsage(
+  period: string,
+  count: number
+): Promise<InterfaceUsageReport[]> {
+  const breakdown = await apiGetUsageBreakdown(period, count, 'transport');
+  return breakdown.groups.map((group) => ({
+    Interface: group.key,
+    TotalRx: group.rx,
+    TotalTx: group.tx,
+  }));
+}
+
+export async function apiGetCollectorMetrics(): Promise<CollectorMetricsAPI> {
+  return NetworkUsage.getCollectorMetrics();
+}
+
+export function apiGetCollectorMetricsSync(): CollectorMetricsAPI {
+  return NetworkUsage.getCollectorMetricsSync();
+}
+
+export async function apiResetCollectorMetrics(): Promise<void> {
+  return NetworkUsage.resetCollectorMetrics();
+}
+
+// Logs the metrics summary to logcat every intervalSeconds; 0 stops logging
+export async function apiSetCollectorMetricsLogging(
+  intervalSeconds: number
+): Promise<void> {
+  return NetworkUsage.setCollectorMetricsLogging(intervalSeconds);
 }
 
 export async function apiOpenUsageSettings(): Promise<void> {
@@ -4,12 +4,14 @@ import type {
   DeviceStatus,
   PerProcessUsageReportRequest,
   AppsNotFoundErrorResponse,
+  PerProcessReportDelta,
   ServerErrorResponse,
 } from '@/types/reports';
-import { AppUsageDataAPI, TotalUsageDataAPI } from '@/types/networkUsage';
+import { TotalUsageDataAPI } from '@/types/networkUsage';
 import {
   apiCheckPermission,
-  apiGetAppUsage,
+  apiCommitReportDelta,
+  apiComputeReportDelta,
   apiGetTotalUsage,
 } from '@/services/networkUsageAPI';
 import axios, { AxiosError, isAxiosError } from 'axios';
@@ -244,32 +246,35 @@ export async function reportPerProcessUsage(): Promise<{
   }
 
   const { detailedReports } = useReporterStore.getState();
-  const apps = (await apiGetAppUsage('day', 1, detailedReports)) as
-    | AppUsageDataAPI[]
-    | null;
-  if (!apps || apps.length === 0) {
-    const error = 'No per-app usage data available for the selected period.';
+  let delta: PerProcessReportDelta;
+  try {
+    delta = await apiComputeReportDelta(detailedReports);
+  } catch (e) {
+    const error = 'Failed to get per-app usage data from device.';
+    console.error('Error computing per-app report:', e);
     return { ok: false, error };
   }
 
-  const appDataMap = new Map<string, AppUsageDataAPI>();
-  apps.forEach((app: AppUsageDataAPI) => {
-    const identifier = app.packageName || `uid-${app.uid}`;
-    appDataMap.set(identifier, app);
-  });
+  // Nothing changed since the last accepted report
+  if (!delta.Apps.length) {
+    return { ok: true };
+  }
 
-  const AppsReport: PerProcessUsageReportRequest['Apps'] = apps
-    .map((app: AppUsageDataAPI) => ({
-      Identifier: app.packageName || `uid-${app.uid}`,
-      TotalRx: (app.wifi?.rx ?? 0) + (app.mobile?.rx ?? 0),
-      TotalTx: (app.wifi?.tx ?? 0) + (app.mobile?.tx ?? 0),
-    }))
-    .filter((app) => app.Identifier && (app.TotalRx > 0 || app.TotalTx > 0));
+  const registrationMap = new Map<
+    string,
+    AppRegistrationRequest['Apps'][number]
+  >();
+  delta.Registrations.forEach((app) => {
+    registrationMap.set(app.Identifier, app);
+  });
 
-  if (!AppsReport.length) {
-    const error = 'All apps show zero usage for the selected period.';
-    return { ok: false, error };
-  }
+  const AppsReport: PerProcessUsageReportRequest['Apps'] = delta.Apps.map(
+    (app) => ({
+      Identifier: app.Identifier,
+      TotalRx: Math.max(0, Math.floor(app.TotalRx)),
+      TotalTx: Math.max(0, Math.floor(app.TotalTx)),
+    })
+  );
 
   const timestamp = new Date().toISOString();
   const payload: PerProcessUsageReportRequest = {
@@ -290,6 +295,7 @@ export async function reportPerProcessUsage(): Promise<{
       timeout: REQUEST_TIMEOUT_MS,
     });
 
+    await apiCommitReportDelta(delta.reportId);
     setStatus('authed');
     return { ok: true };
   } catch (err) {
@@ -334,7 +340,7 @@ export async function reportPerProcessUsage(): Promise<{
                 (
                   identifier: string
                 ): AppRegistrationRequest['Apps'][number] | null => {
-                  const app = appDataMap.get(identifier);
+                  const app = registrationMap.get(identifier);
                   if (!app) {
                     console.warn(
                       `Could not find app data for identifier: ${identifier}`
@@ -343,12 +349,8 @@ export async function reportPerProcessUsage(): Promise<{
                   }
                   return {
                     Identifier: identifier,
-                    DisplayName:
-                      app.appName ||
-                      app.packageName ||
-                      `UID ${app.uid}` ||
-                      null,
-                    IconHash: app.icon || null,
+                    DisplayName: app.DisplayName || identifier,
+                    IconHash: app.IconHash || null,
                   };
                 }
               )
@@ -370,6 +372,7 @@ export async function reportPerProcessUsage(): Promise<{
                 timeout: REQUEST_TIMEOUT_MS,
               });
 
+              await apiCommitReportDelta(delta.reportId);
               setStatus('authed');
               return { ok: true };
             } catch (retryErr) {
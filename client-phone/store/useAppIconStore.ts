@@ -0,0 +1,19 @@
+import { create } from 'zustand';
+
+type AppIconState = {
+  // iconHash -> data URI, kept for the lifetime of the JS session
+  icons: Record<string, string>;
+};
+
+type AppIconActions = {
+  addIcons: (icons: Record<string, string>) => void;
+};
+
+export const useAppIconStore = create<AppIconState & AppIconActions>()(
+  (set) => ({
+    icons: {},
+
+    addIcons: (icons) =>
+      set((state) => ({ icons: { ...state.icons, ...icons } })),
+  })
+);
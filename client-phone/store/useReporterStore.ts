@@ -13,6 +13,8 @@ type ReporterState = {
   deviceStatus: DeviceStatus;
   isSavingConfig: boolean;
   detailedReports: boolean;
+  // Native WorkManager collector; scheduled on launch while enabled
+  backgroundReports: boolean;
 };
 
 type ReporterActions = {
@@ -25,6 +27,7 @@ type ReporterActions = {
   setDeviceStatus: (status: DeviceStatus) => void;
   setIsSavingConfig: (saving: boolean) => void;
   setDetailedReports: (detailed: boolean) => void;
+  setBackgroundReports: (enabled: boolean) => void;
 };
 
 export const DEFAULT_HOST = process.env.EXPO_PUBLIC_SERVER_HOST || 'localhost';
@@ -43,6 +46,7 @@ export const useReporterStore = create<ReporterState & ReporterActions>()(
       deviceStatus: 'not_connected',
       isSavingConfig: false,
       detailedReports: false,
+      backgroundReports: true,
 
       setServerHost: (serverHost) => set({ serverHost }),
       setServerPort: (serverPort) => set({ serverPort }),
@@ -53,6 +57,7 @@ export const useReporterStore = create<ReporterState & ReporterActions>()(
       setDeviceStatus: (deviceStatus) => set({ deviceStatus }),
       setIsSavingConfig: (isSavingConfig) => set({ isSavingConfig }),
       setDetailedReports: (detailedReports) => set({ detailedReports }),
+      setBackgroundReports: (backgroundReports) => set({ backgroundReports }),
     }),
     {
       name: 'packetmeter.reporter-store',
@@ -66,6 +71,7 @@ export const useReporterStore = create<ReporterState & ReporterActions>()(
         deviceToken: state.deviceToken,
         deviceStatus: state.deviceStatus,
         detailedReports: state.detailedReports,
+        backgroundReports: state.backgroundReports,
       }),
     }
   )
@@ -1,7 +1,7 @@
 export interface AppUsageDataAPI {
   packageName: string;
   appName: string;
-  icon: string | null;
+  iconHash: string | null;
   uid: number;
   wifi: {
     rx: number;
@@ -29,3 +29,174 @@ export interface TotalUsageDataAPI {
   };
   totalBytes: number;
 }
+
+// Columnar app usage: string columns index into `strings` (-1 for null),
+// numeric columns are parallel arrays of length `rows`.
+export interface PackedAppUsageAPI {
+  rows: number;
+  strings: string[];
+  packageName: number[];
+  appName: number[];
+  iconHash: number[];
+  uid: number[];
+  wifiRx: number[];
+  wifiTx: number[];
+  mobileRx: number[];
+  mobileTx: number[];
+}
+
+// Histogram over consecutive intervals; interval i is [start[i], end[i])
+export interface UsageSeriesAPI {
+  start: number[];
+  end: number[];
+  wifiRx: number[];
+  wifiTx: number[];
+  mobileRx: number[];
+  mobileTx: number[];
+}
+
+// One page of a streamed app list; chunks arrive as NetworkUsageChunk events
+export interface AppUsagePageAPI {
+  totalApps: number;
+  nextCursor: number | null;
+}
+
+export interface AppUsageChunkAPI {
+  requestId: string;
+  offset: number;
+  apps: AppUsageDataAPI[];
+}
+
+// Last first page and totals stored natively for instant first render;
+// `current` is false if the window has rolled over since `computedAt`
+export interface CachedUsageAPI {
+  computedAt: number;
+  current: boolean;
+  apps: AppUsageDataAPI[] | null;
+  total: TotalUsageDataAPI | null;
+}
+
+// Mobile and tethered traffic of one SIM; subscriptionId is -1 for the merged
+// entry reported when SIMs cannot be told apart
+export interface SubscriptionUsageDataAPI {
+  subscriptionId: number;
+  slotIndex: number;
+  displayName: string | null;
+  carrierName: string | null;
+  mobile: {
+    rx: number;
+    tx: number;
+    total: number;
+  };
+  tethering: {
+    rx: number;
+    tx: number;
+    total: number;
+  };
+}
+
+export interface SubscriptionUsageAPI {
+  merged: boolean;
+  subscriptions: SubscriptionUsageDataAPI[];
+  apps: AppUsageDataAPI[];
+}
+
+// Usage from the on-device history store; coveredFrom/coveredTo bound the
+// range it actually holds (null while empty), usage outside it is missing
+export interface UsageHistoryAPI {
+  apps: AppUsageDataAPI[];
+  coveredFrom: number | null;
+  coveredTo: number | null;
+}
+
+// Rows that changed since the previous refresh of a subscribed window; ranks
+// are positions in the list sorted by totalBytes. Rows that only moved because
+// others grew are not included, so re-sort after applying.
+export interface AppUsageDiffAPI {
+  key: string;
+  added: (AppUsageDataAPI & { rank: number })[];
+  changed: (AppUsageDataAPI & { rank: number; previousRank: number })[];
+  removed: { packageName: string; uid: number }[];
+}
+
+// Live rates in bytes per second; `realtime` is false for apps whose rate
+// comes from the slower NetworkStats fallback
+export interface ThroughputSampleAPI {
+  timestamp: number;
+  rxRate: number;
+  txRate: number;
+  apps: {
+    uid: number;
+    rxRate: number;
+    txRate: number;
+    realtime: boolean;
+  }[];
+}
+
+export interface PhaseLatencyAPI {
+  count: number;
+  meanMs: number;
+  p50Ms: number;
+  p90Ms: number;
+  p99Ms: number;
+  maxMs: number;
+}
+
+// Native hot-path profile since launch or the last reset
+export interface CollectorMetricsAPI {
+  sinceMs: number;
+  counters: {
+    binderCalls: number;
+    bucketsScanned: number;
+    rowsReturned: number;
+    payloadChars: number;
+    requestsCoalesced: number;
+    requestsFailed: number;
+  };
+  phases: Record<
+    'query' | 'metadata' | 'icons' | 'serialization' | 'request',
+    PhaseLatencyAPI
+  >;
+}
+
+export type UsageDimension =
+  | 'transport'
+  | 'state'
+  | 'metered'
+  | 'roaming'
+  | 'defaultNetwork';
+
+// Restricts which cells a breakdown sums; omitted dimensions match everything
+export interface UsageBreakdownFilter {
+  uid?: number;
+  // NetworkStats only reports these two transports
+  transport?: 'wifi' | 'mobile';
+  state?: 'unknown' | 'background' | 'foreground';
+  metered?: 'unknown' | 'no' | 'yes';
+  roaming?: 'unknown' | 'no' | 'yes';
+  defaultNetwork?: 'unknown' | 'no' | 'yes';
+}
+
+export interface UsageBreakdownAPI {
+  groupBy: UsageDimension;
+  groups: { key: string; rx: number; tx: number; total: number }[];
+}
+
+// quota: bytes used today; spike: bytes added between two native checks.
+// Omit uid for a device-wide rule
+export interface UsageAlertRuleAPI {
+  id: string;
+  kind: 'quota' | 'spike';
+  uid?: number | null;
+  transport?: 'wifi' | 'mobile' | 'any';
+  thresholdBytes: number;
+  // Notification title; defaults to the app name
+  label?: string | null;
+}
+
+export interface UsageAlertAPI {
+  rule: UsageAlertRuleAPI;
+  valueBytes: number;
+  windowStart: number;
+  timestamp: number;
+}
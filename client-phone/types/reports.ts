@@ -36,6 +36,15 @@ export interface AppRegistrationRequest {
   }[];
 }
 
+// Per-process report computed natively against the last committed report
+export interface PerProcessReportDelta {
+  reportId: string;
+  // Epoch ms of the last committed report for this day, 0 if none
+  since: number;
+  Apps: PerProcessUsageReportRequest['Apps'];
+  Registrations: AppRegistrationRequest['Apps'];
+}
+
 export type DeviceStatus = 'not_connected' | 'pending' | 'authed';
 
 export type ReportMode = 'total' | 'per-process';
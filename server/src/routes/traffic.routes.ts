@@ -2,6 +2,7 @@ import { Router, Request, Response } from 'express';
 import * as deviceService from '../services/device.service';
 import { requireDeviceAuth } from '../middleware/auth';
 import {
+  batchUsageReportSchema,
   dailyUsageReportSchema,
   registerAppsSchema,
   totalUsageReportSchema,
@@ -244,6 +245,145 @@ router.post(
   }
 );
 
+/**
+ * POST /api/v1/traffic/per-process/batch
+ * Submit queued per-process reports from the device outbox in one request.
+ * Bodies may be gzip-compressed (Content-Encoding: gzip).
+ */
+router.post(
+  '/per-process/batch',
+  requireDeviceAuth,
+  async (req: Request, res: Response) => {
+    try {
+      const parse = batchUsageReportSchema.safeParse(req.body);
+      if (!parse.success) {
+        return res.status(400).json({
+          success: false,
+          message: 'invalid payload',
+          error: parse.error.flatten(),
+        });
+      }
+
+      const batch = parse.data;
+      const badIndex = batch.Reports.some((report) =>
+        report.Apps.some(([index]) => index >= batch.Apps.length)
+      );
+      if (badIndex) {
+        return res.status(400).json({
+          success: false,
+          message: 'invalid payload',
+          error: 'app index out of range',
+        });
+      }
+
+      const token = req.deviceToken;
+      if (!token) {
+        return res.status(401).json({
+          success: false,
+          message: 'unauthorized - no token provided',
+        });
+      }
+
+      // Find device by token
+      const device = await deviceService.getDeviceByToken(token);
+
+      if (!device) {
+        return res
+          .status(401)
+          .json({ success: false, message: 'invalid device token' });
+      }
+
+      await deviceService.updateDeviceHealthCheck(device.id);
+
+      // Check if device is activated - require activation before allowing traffic reports
+      if (!device.isActivated) {
+        return res.status(403).json({
+          success: false,
+          message: 'device_not_activated',
+          error:
+            'Device must be approved and activated before it can send usage reports. Please wait for user approval.',
+        });
+      }
+
+      // Check user's plan
+      try {
+        const { features } = await requireSubscription(device.userId);
+        if (features.reportType !== 'per_process') {
+          return res.status(403).json({
+            success: false,
+            message: 'plan_upgrade_required',
+            error:
+              'Per-process reporting is not available on your current plan. Please upgrade to access detailed per-application usage tracking.',
+          });
+        }
+      } catch (error: unknown) {
+        logger.error('Failed to check user plan features:', error);
+        return res.status(500).json({
+          success: false,
+          message: 'internal server error',
+        });
+      }
+
+      // Check that user agent matches device type
+      const userAgent = req.header('User-Agent');
+      if (!userAgent) {
+        return res.status(400).json({
+          success: false,
+          message: 'user agent not provided',
+        });
+      }
+      const extractedDeviceType = extractDeviceTypeFromUserAgent(userAgent);
+      if (extractedDeviceType !== device.deviceType) {
+        return res.status(403).json({
+          success: false,
+          message: 'user agent does not match device type',
+        });
+      }
+
+      // The dictionary carries registration data, so apps never go missing
+      for (const app of batch.Apps) {
+        await deviceService.findOrCreateApp(
+          device.id,
+          app.Identifier,
+          app.DisplayName,
+          app.IconHash ?? undefined
+        );
+      }
+
+      // Oldest first, so a later snapshot of the same day wins
+      const reports = [...batch.Reports].sort(
+        (a, b) => Date.parse(a.Timestamp) - Date.parse(b.Timestamp)
+      );
+      for (const report of reports) {
+        await deviceService.createOrUpdateUsageReport({
+          deviceId: device.id,
+          timestamp: new Date(report.Timestamp),
+          apps: report.Apps.map(([index, totalRx, totalTx]) => ({
+            identifier: batch.Apps[index].Identifier,
+            totalRx,
+            totalTx,
+          })),
+        });
+      }
+
+      logger.debug(
+        `Device: ${device.id}, Batch: ${reports.length} reports, ${batch.Apps.length} apps`
+      );
+
+      return res.json({
+        success: true,
+        message: 'received',
+        accepted: reports.length,
+      });
+    } catch (error: unknown) {
+      logger.error('Batch traffic report error:', error);
+      return res
+        .status(500)
+        .json({ success: false, message: 'internal server error' });
+    }
+  }
+);
+
 /**
  * POST /api/v1/traffic/total-usage
  * Submit a total usage report from device
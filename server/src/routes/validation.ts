@@ -54,6 +54,27 @@ export const dailyUsageReportSchema = z.object({
   Apps: z.array(appUsageSchema),
 });
 
+// Batched per-process reports from the device outbox. Apps is the batch dictionary;
+// each report row is [index into Apps, TotalRx, TotalTx].
+export const batchUsageReportSchema = z.object({
+  Apps: z.array(appSchema),
+  Reports: z
+    .array(
+      z.object({
+        Timestamp: z.string(),
+        Date: z.string(),
+        Apps: z.array(
+          z.tuple([
+            z.number().int().nonnegative(),
+            z.number().nonnegative(),
+            z.number().nonnegative(),
+          ])
+        ),
+      })
+    )
+    .max(500),
+});
+
 export const totalUsageReportSchema = z.object({
   Timestamp: z.string(),
   Date: z.string(),